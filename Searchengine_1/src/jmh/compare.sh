@@ -0,0 +1,60 @@
+#!/usr/bin/env bash
+# Сравнение JMH-бенчмарков двух коммитов на одной машине.
+#
+#   src/jmh/compare.sh <базовый коммит> <новый коммит> [фильтр и аргументы JMH]
+#   src/jmh/compare.sh main HEAD Lemmatizer
+#
+# Каждый коммит собирается в отдельном git worktree в target/bench-compare, бенчмарки
+# запускаются по очереди с одинаковыми параметрами, итог печатается таблицей.
+# Оба коммита должны содержать профиль benchmark и src/jmh.
+set -euo pipefail
+
+if [ $# -lt 2 ]; then
+    echo "Использование: $0 <базовый коммит> <новый коммит> [аргументы JMH]" >&2
+    exit 1
+fi
+
+BASE_REF=$1
+NEW_REF=$2
+shift 2
+JMH_ARGS="$*"
+
+PROJECT_DIR=$(cd "$(dirname "$0")/../.." && pwd)
+REPO_ROOT=$(git -C "$PROJECT_DIR" rev-parse --show-toplevel)
+PREFIX=$(git -C "$PROJECT_DIR" rev-parse --show-prefix)
+OUT_DIR="$PROJECT_DIR/target/bench-compare"
+mkdir -p "$OUT_DIR"
+
+run() {
+    local ref=$1 name=$2
+    local tree="$OUT_DIR/$name"
+    rm -rf "$tree"
+    git -C "$REPO_ROOT" worktree prune
+    git -C "$REPO_ROOT" worktree add --detach "$tree" "$ref" >/dev/null
+    echo "== $ref ($(git -C "$tree" rev-parse --short HEAD))" >&2
+    (cd "$tree/$PREFIX" && mvn -q -B -Pbenchmark test-compile exec:exec \
+        -Djmh.args="$JMH_ARGS -rf csv -rff $OUT_DIR/$name.csv")
+    git -C "$REPO_ROOT" worktree remove --force "$tree"
+}
+
+run "$BASE_REF" base
+run "$NEW_REF" new
+
+# Ключ строки - имя бенчмарка и значения параметров (колонки после Unit)
+awk -F',' '
+    function key(   k, i) { k = $1; for (i = 8; i <= NF; i++) k = k " " $i; return k }
+    FNR == 1 { next }
+    { gsub(/"/, "") }
+    FILENAME ~ /base\.csv$/ { base[key()] = $5; unit[key()] = $7; next }
+    { score[key()] = $5; error[key()] = $6; order[++n] = key(); unit[key()] = $7 }
+    END {
+        printf "%-60s %14s %14s %9s  %s\n", "Benchmark", "base", "new", "change", "unit"
+        for (i = 1; i <= n; i++) {
+            k = order[i]
+            if (k in base && base[k] > 0) {
+                printf "%-60s %14.3f %14.3f %+8.1f%%  %s ±%.3f\n", k, base[k], score[k], (score[k] - base[k]) * 100 / base[k], unit[k], error[k]
+            } else {
+                printf "%-60s %14s %14.3f %9s  %s\n", k, "-", score[k], "", unit[k]
+            }
+        }
+    }' "$OUT_DIR/base.csv" "$OUT_DIR/new.csv"
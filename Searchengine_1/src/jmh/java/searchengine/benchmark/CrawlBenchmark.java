@@ -0,0 +1,162 @@
+package searchengine.benchmark;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import searchengine.Application;
+import searchengine.config.IndexingSettings;
+import searchengine.repository.PageRepository;
+import searchengine.services.SiteIndexingService;
+import searchengine.services.SiteStatisticsService;
+
+import javax.persistence.EntityManagerFactory;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Сквозной замер обхода: {@link SiteIndexingService} индексирует {@link SyntheticSite}
+ * на локальном порту, данные пишутся во встроенный Postgres. Сеть и внешняя база не нужны.
+ * <p>
+ * Параметры передаются как {@code ключ=значение}: {@code pages} (1000), {@code fanOut} (8),
+ * {@code pageSize} — примерный размер HTML в символах (8192), {@code latency} — задержка ответа, мс (20),
+ * {@code errorRate} — доля страниц с ответом 500 (0.01), {@code requestDelay} — пауза обходчика
+ * перед запросом, мс (0), {@code seed} (42).
+ * <p>
+ * Печатает время обхода, страницы в секунду, SQL-запросы на страницу (по статистике Hibernate)
+ * и пиковый объём занятой кучи (замер раз в 50 мс).
+ */
+public class CrawlBenchmark {
+
+    private static final long TIMEOUT_MINUTES = 60;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> params = parse(args);
+        int pages = Integer.parseInt(params.getOrDefault("pages", "1000"));
+        int fanOut = Integer.parseInt(params.getOrDefault("fanOut", "8"));
+        int pageSize = Integer.parseInt(params.getOrDefault("pageSize", "8192"));
+        long latency = Long.parseLong(params.getOrDefault("latency", "20"));
+        double errorRate = Double.parseDouble(params.getOrDefault("errorRate", "0.01"));
+        long requestDelay = Long.parseLong(params.getOrDefault("requestDelay", "0"));
+        long seed = Long.parseLong(params.getOrDefault("seed", "42"));
+
+        try (EmbeddedPostgres postgres = EmbeddedPostgres.start();
+             SyntheticSite site = new SyntheticSite(pages, fanOut, pageSize, latency, errorRate, seed)) {
+
+            // Аргументы командной строки важнее application.yml, свойства по умолчанию - нет:
+            // с ними замер ушёл бы в базу и на сайты из application.yml
+            String jdbcUrl = postgres.getJdbcUrl("postgres", "postgres");
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+                    .web(WebApplicationType.NONE)
+                    .run("--spring.datasource.url=" + jdbcUrl,
+                            "--spring.datasource.username=postgres",
+                            "--spring.datasource.password=",
+                            "--spring.jpa.show-sql=false",
+                            "--spring.jpa.properties.hibernate.generate_statistics=true",
+                            "--logging.level.root=WARN",
+                            "--logging.level.org.hibernate=WARN",
+                            "--logging.level.searchengine=WARN",
+                            "--logging.file.name=target/crawl-benchmark.log",
+                            "--indexing-settings.request-delay=" + requestDelay,
+                            "--indexing-settings.distributed=false",
+                            "--indexing-settings.import-snapshots-on-startup=false",
+                            "--indexing-settings.sites[0].url=" + site.getUrl(),
+                            "--indexing-settings.sites[0].name=Синтетический сайт");
+
+            try {
+                // Полная индексация очищает таблицы, поэтому с любой другой базой замер не запускается
+                String actualUrl = context.getEnvironment().getProperty("spring.datasource.url");
+                if (!jdbcUrl.equals(actualUrl)) {
+                    throw new IllegalStateException("Замер запускается только на встроенной базе " + jdbcUrl
+                            + ", а приложение подключено к " + actualUrl);
+                }
+                List<IndexingSettings.SiteConfig> sites = context.getBean(IndexingSettings.class).getSites();
+                if (sites.size() != 1 || !site.getUrl().equals(sites.get(0).getUrl())) {
+                    throw new IllegalStateException("Замер обходит только синтетический сайт " + site.getUrl());
+                }
+                SiteIndexingService indexingService = context.getBean(SiteIndexingService.class);
+                Statistics statistics = context.getBean(EntityManagerFactory.class)
+                        .unwrap(SessionFactory.class)
+                        .getStatistics();
+                HeapSampler heap = new HeapSampler();
+
+                System.gc();
+                heap.start();
+                statistics.clear();
+                long start = System.nanoTime();
+                indexingService.startIndexing();
+                long deadline = start + TimeUnit.MINUTES.toNanos(TIMEOUT_MINUTES);
+                while (indexingService.isIndexingInProgress() && System.nanoTime() < deadline) {
+                    Thread.sleep(20);
+                }
+                long elapsed = System.nanoTime() - start;
+                heap.interrupt();
+                heap.join();
+                long statements = statistics.getPrepareStatementCount();
+
+                long indexed = context.getBean(PageRepository.class).count();
+                int failed = context.getBean(SiteStatisticsService.class).snapshot().stream()
+                        .mapToInt(SiteStatisticsService.SiteCounters::getErrors)
+                        .sum();
+                double seconds = elapsed / 1e9;
+
+                System.out.printf("Параметры:             pages=%d fanOut=%d pageSize=%d latency=%dms errorRate=%.3f requestDelay=%dms seed=%d%n",
+                        pages, fanOut, pageSize, latency, errorRate, requestDelay, seed);
+                System.out.printf("Время обхода:          %.2f с%n", seconds);
+                System.out.printf("Страниц сохранено:     %d из %d (ошибок обхода %d, сервер отдал 500: %d, всего запросов %d)%n",
+                        indexed, pages - site.getFailingPages(), failed, site.getErrors(), site.getRequests());
+                System.out.printf("Страниц в секунду:     %.1f%n", indexed / seconds);
+                System.out.printf("SQL-запросов:          %d (%.1f на страницу)%n",
+                        statements, indexed == 0 ? 0.0 : (double) statements / indexed);
+                System.out.printf("Пик занятой кучи:      %d МБ%n", heap.peak() / (1024 * 1024));
+            } finally {
+                context.close();
+            }
+        }
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> params = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Ожидается параметр вида ключ=значение: " + arg);
+            }
+            params.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        return params;
+    }
+
+    private static class HeapSampler extends Thread {
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private final AtomicLong peak = new AtomicLong();
+
+        HeapSampler() {
+            super("heap-sampler");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (!isInterrupted()) {
+                peak.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        long peak() {
+            return peak.get();
+        }
+    }
+}
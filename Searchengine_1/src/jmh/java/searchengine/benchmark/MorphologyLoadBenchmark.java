@@ -0,0 +1,75 @@
+package searchengine.benchmark;
+
+import org.apache.lucene.morphology.Morphology;
+import org.apache.lucene.morphology.english.EnglishLetterDecoderEncoder;
+import org.apache.lucene.morphology.english.EnglishLuceneMorphology;
+import org.apache.lucene.morphology.russian.RussianLetterDecoderEncoder;
+import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
+import searchengine.services.MappedMorphology;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Время загрузки и удерживаемая куча словарей морфологии (русский и английский):
+ * загрузка библиотекой в кучу против {@link MappedMorphology}. Для отображения в память
+ * замеряются первый запуск (сборка файлов) и повторный (файлы уже есть).
+ * <p>
+ * Параметр: каталог файлов словарей (по умолчанию {@code target/morphology}, перед замером очищается).
+ * Каждый способ лучше запускать в отдельной JVM, но порядок замеров выбран так, чтобы
+ * загруженные ранее классы и словари не влияли на следующие: куча - первой.
+ */
+public class MorphologyLoadBenchmark {
+
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Paths.get(args.length > 0 ? args[0] : "target/morphology");
+        Files.createDirectories(dir);
+        for (String name : List.of("russian.morph", "english.morph")) {
+            Files.deleteIfExists(dir.resolve(name));
+        }
+
+        measure("В куче", () -> List.of(new RussianLuceneMorphology(), new EnglishLuceneMorphology()));
+        measure("Сборка и отображение", () -> mapped(dir));
+        measure("Отображение в память", () -> mapped(dir));
+        System.out.printf("Размер файлов:         %d КБ%n",
+                (Files.size(dir.resolve("russian.morph")) + Files.size(dir.resolve("english.morph"))) / 1024);
+    }
+
+    private static List<Morphology> mapped(Path dir) throws Exception {
+        return List.of(
+                MappedMorphology.open(dir.resolve("russian.morph"),
+                        "/org/apache/lucene/morphology/russian/morph.info", new RussianLetterDecoderEncoder()),
+                MappedMorphology.open(dir.resolve("english.morph"),
+                        "/org/apache/lucene/morphology/english/morph.info", new EnglishLetterDecoderEncoder()));
+    }
+
+    private static void measure(String title, Loader loader) throws Exception {
+        long before = usedHeap();
+        long start = System.nanoTime();
+        List<Morphology> morphologies = loader.load();
+        long elapsed = System.nanoTime() - start;
+        long after = usedHeap();
+        // Проверка, что словари работают, и ссылка, чтобы сборщик их не освободил до замера
+        int forms = morphologies.get(0).getNormalForms("словари").size()
+                + morphologies.get(1).getNormalForms("dictionaries").size();
+        System.out.printf("%-22s %6d мс, удерживается в куче %6d КБ (форм: %d)%n",
+                title + ":", elapsed / 1_000_000, Math.max(0, after - before) / 1024, forms);
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return MEMORY.getHeapMemoryUsage().getUsed();
+    }
+
+    private interface Loader {
+        List<Morphology> load() throws Exception;
+    }
+}
@@ -0,0 +1,412 @@
+package searchengine.benchmark;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Нагрузочный тест {@code /api/search} с открытой моделью нагрузки: запросы отправляются
+ * по расписанию с фиксированной частотой, независимо от того, ответил ли сервер на предыдущие.
+ * Задержка считается от запланированного момента отправки, а не от фактического, поэтому
+ * очередь перед {@code Semaphore} в {@code SearchService} и пуле соединений попадает в
+ * результат (учёт coordinated omission).
+ * <p>
+ * Источник запросов: журнал {@code queries=файл} (строка — запрос, через табуляцию можно указать
+ * адрес сайта) или смесь из {@code words} слов словаря с частотами по закону Ципфа. Словарь
+ * задаётся файлом {@code vocabulary=файл} (слово в строке, от частых к редким); без него берутся
+ * проиндексированные леммы из базы приложения, от частых к редким.
+ * <p>
+ * С {@code indexing=true} на время теста создаётся нагрузка записью: страницы уже проиндексированного
+ * сайта по одной переиндексируются через {@code /api/indexPage} (страница заново скачивается с сайта).
+ * Полная индексация не запускается: она очистила бы индекс, по которому идёт поиск.
+ * Адреса страниц тоже читаются из базы.
+ * <p>
+ * Параметры {@code ключ=значение}: {@code url} (http://localhost:8080), {@code rate} — запросов
+ * в секунду, можно списком ступеней через запятую (20), {@code duration} и {@code warmup} — секунды
+ * на ступень (60 и 10), {@code zipf} — показатель распределения (1.0), {@code words} — максимум
+ * слов в запросе (3), {@code site}, {@code limit} (10), {@code timeout} — секунды (30),
+ * {@code maxInFlight} (10000), {@code indexing} — переиндексировать страницы во время теста (false),
+ * {@code seed} (42); база приложения, из которой только читаются леммы и адреса страниц:
+ * {@code db} (jdbc:postgresql://localhost:5432/postgres), {@code dbUser} (postgres), {@code dbPassword} (1111).
+ */
+public class SearchLoadTest {
+
+    private static final long HIGHEST_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(5);
+
+    private final String baseUrl;
+    private final String site;
+    private final int limit;
+    private final Duration timeout;
+    private final int maxInFlight;
+    private final QuerySource queries;
+    private final HttpClient client;
+
+    SearchLoadTest(String baseUrl, String site, int limit, Duration timeout, int maxInFlight, QuerySource queries) {
+        this.baseUrl = baseUrl;
+        this.site = site;
+        this.limit = limit;
+        this.timeout = timeout;
+        this.maxInFlight = maxInFlight;
+        this.queries = queries;
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(Executors.newFixedThreadPool(16))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> params = parse(args);
+        String url = params.getOrDefault("url", "http://localhost:8080");
+        int warmup = Integer.parseInt(params.getOrDefault("warmup", "10"));
+        int duration = Integer.parseInt(params.getOrDefault("duration", "60"));
+        boolean indexing = Boolean.parseBoolean(params.getOrDefault("indexing", "false"));
+        Random random = new Random(Long.parseLong(params.getOrDefault("seed", "42")));
+
+        IndexedData indexed = new IndexedData(
+                params.getOrDefault("db", "jdbc:postgresql://localhost:5432/postgres"),
+                params.getOrDefault("dbUser", "postgres"),
+                params.getOrDefault("dbPassword", "1111"),
+                params.get("site"));
+
+        QuerySource queries;
+        if (params.containsKey("queries")) {
+            queries = QuerySource.replay(Files.readAllLines(Path.of(params.get("queries"))));
+        } else {
+            List<String> vocabulary = params.containsKey("vocabulary")
+                    ? Files.readAllLines(Path.of(params.get("vocabulary")))
+                    : indexed.lemmas();
+            queries = QuerySource.zipf(vocabulary,
+                    Double.parseDouble(params.getOrDefault("zipf", "1.0")),
+                    Integer.parseInt(params.getOrDefault("words", "3")),
+                    random);
+        }
+
+        SearchLoadTest test = new SearchLoadTest(url, params.get("site"),
+                Integer.parseInt(params.getOrDefault("limit", "10")),
+                timeout(params),
+                Integer.parseInt(params.getOrDefault("maxInFlight", "10000")),
+                queries);
+
+        PageWriter writer = null;
+        if (indexing) {
+            writer = test.new PageWriter(indexed.pageUrls(), random);
+            writer.start();
+        }
+        Files.createDirectories(Path.of("target"));
+        try {
+            System.out.printf("%-8s %-10s %10s %10s %10s %10s %10s %8s%n",
+                    "rate/s", "indexing", "done/s", "p50 ms", "p99 ms", "p999 ms", "max ms", "errors");
+            for (String rate : params.getOrDefault("rate", "20").split(",")) {
+                long indexedBefore = writer == null ? 0 : writer.indexed.get();
+                long failedBefore = writer == null ? 0 : writer.failed.get();
+                Result result = test.run(Double.parseDouble(rate.trim()), warmup, duration);
+                result.print(System.out, indexing);
+                if (writer != null) {
+                    System.out.printf("         переиндексировано страниц: %d, ошибок: %d%n",
+                            writer.indexed.get() - indexedBefore, writer.failed.get() - failedBefore);
+                }
+                try (PrintStream out = new PrintStream(Files.newOutputStream(
+                        Path.of("target", "search-load-" + rate.trim() + (indexing ? "-indexing" : "") + ".hgrm")))) {
+                    result.latency.outputPercentileDistribution(out, 1000.0);
+                }
+            }
+        } finally {
+            if (writer != null) {
+                writer.interrupt();
+                writer.join(timeout(params).toMillis());
+            }
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Одна ступень нагрузки: прогрев, затем замер. Запрос с номером {@code i} запланирован
+     * на {@code start + i / rate}; если отправитель отстал, запрос уходит сразу, но задержка
+     * всё равно считается от запланированного времени.
+     */
+    Result run(double rate, int warmupSeconds, int durationSeconds) throws InterruptedException {
+        Result result = new Result(rate, durationSeconds);
+        AtomicInteger inFlight = new AtomicInteger();
+        long period = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long start = System.nanoTime();
+        long measureStart = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureStart + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        for (long i = 0; ; i++) {
+            long intended = start + i * period;
+            if (intended >= end) break;
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            boolean measured = intended >= measureStart;
+            if (inFlight.get() >= maxInFlight) {
+                if (measured) result.dropped.incrementAndGet();
+                continue;
+            }
+            inFlight.incrementAndGet();
+            client.sendAsync(searchRequest(queries.next()), HttpResponse.BodyHandlers.ofString())
+                    .whenComplete((response, e) -> {
+                        inFlight.decrementAndGet();
+                        if (!measured) return;
+                        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intended);
+                        result.latency.recordValue(Math.min(micros, HIGHEST_LATENCY_MICROS));
+                        if (e != null) {
+                            result.failed.incrementAndGet();
+                        } else if (response.statusCode() == 429) {
+                            result.shed.incrementAndGet();
+                        } else if (response.statusCode() != 200) {
+                            result.httpErrors.incrementAndGet();
+                        } else if (response.body().contains("\"result\":false")) {
+                            result.rejected.incrementAndGet();
+                        } else {
+                            result.ok.incrementAndGet();
+                        }
+                    });
+        }
+
+        // Ждём ответы на уже отправленные запросы, но не дольше таймаута
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        result.unfinished = inFlight.get();
+        return result;
+    }
+
+    private HttpRequest searchRequest(Query query) {
+        StringBuilder uri = new StringBuilder(baseUrl).append("/api/search?query=")
+                .append(URLEncoder.encode(query.text, StandardCharsets.UTF_8))
+                .append("&limit=").append(limit);
+        String querySite = query.site != null ? query.site : site;
+        if (querySite != null) {
+            uri.append("&site=").append(URLEncoder.encode(querySite, StandardCharsets.UTF_8));
+        }
+        return HttpRequest.newBuilder(URI.create(uri.toString())).timeout(timeout).GET().build();
+    }
+
+    private static Duration timeout(Map<String, String> params) {
+        return Duration.ofSeconds(Long.parseLong(params.getOrDefault("timeout", "30")));
+    }
+
+    /**
+     * Переиндексирует случайные страницы по одной: {@code /api/indexPage} отклоняет запрос,
+     * пока предыдущий не закончился, поэтому следующий отправляется после ответа.
+     */
+    final class PageWriter extends Thread {
+        private final List<String> pageUrls;
+        private final Random random;
+        final AtomicLong indexed = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+
+        PageWriter(List<String> pageUrls, Random random) {
+            super("page-writer");
+            setDaemon(true);
+            this.pageUrls = pageUrls;
+            this.random = new Random(random.nextLong());
+        }
+
+        @Override
+        public void run() {
+            while (!isInterrupted()) {
+                String pageUrl = pageUrls.get(random.nextInt(pageUrls.size()));
+                HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/indexPage?url="
+                                + URLEncoder.encode(pageUrl, StandardCharsets.UTF_8)))
+                        .timeout(timeout)
+                        .POST(HttpRequest.BodyPublishers.noBody())
+                        .build();
+                try {
+                    HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                    if (response.statusCode() == 200 && response.body().contains("\"result\":true")) {
+                        indexed.incrementAndGet();
+                    } else {
+                        failed.incrementAndGet();
+                    }
+                } catch (IOException e) {
+                    failed.incrementAndGet();
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Данные уже проиндексированных сайтов, прочитанные из базы приложения; база только читается.
+     */
+    static final class IndexedData {
+        private final String url;
+        private final String user;
+        private final String password;
+        private final String site;
+
+        IndexedData(String url, String user, String password, String site) {
+            this.url = url;
+            this.user = user;
+            this.password = password;
+            this.site = site;
+        }
+
+        /** Леммы от частых к редким. */
+        List<String> lemmas() throws SQLException {
+            List<String> lemmas = query("SELECT l.lemma FROM lemma l JOIN site s ON s.id = l.site_id "
+                    + "WHERE CAST(? AS TEXT) IS NULL OR s.url = ? GROUP BY l.lemma ORDER BY SUM(l.frequency) DESC, l.lemma");
+            if (lemmas.isEmpty()) {
+                throw new IllegalStateException("В базе нет проиндексированных лемм" + (site == null ? "" : " сайта " + site));
+            }
+            return lemmas;
+        }
+
+        /** Адреса успешно загруженных страниц. */
+        List<String> pageUrls() throws SQLException {
+            List<String> pages = query("SELECT s.url || p.path FROM page p JOIN site s ON s.id = p.site_id "
+                    + "WHERE (CAST(? AS TEXT) IS NULL OR s.url = ?) AND p.code = 200 ORDER BY p.id");
+            if (pages.isEmpty()) {
+                throw new IllegalStateException("В базе нет страниц для переиндексации" + (site == null ? "" : " сайта " + site));
+            }
+            return pages;
+        }
+
+        private List<String> query(String sql) throws SQLException {
+            List<String> values = new ArrayList<>();
+            try (Connection connection = DriverManager.getConnection(url, user, password)) {
+                connection.setReadOnly(true);
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    statement.setString(1, site);
+                    statement.setString(2, site);
+                    try (ResultSet rs = statement.executeQuery()) {
+                        while (rs.next()) {
+                            values.add(rs.getString(1));
+                        }
+                    }
+                }
+            }
+            return values;
+        }
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> params = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Ожидается параметр вида ключ=значение: " + arg);
+            }
+            params.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        return params;
+    }
+
+    static final class Query {
+        final String text;
+        final String site;
+
+        Query(String text, String site) {
+            this.text = text;
+            this.site = site;
+        }
+    }
+
+    /**
+     * Поток запросов. Вызывается только из потока-отправителя, поэтому синхронизация не нужна.
+     */
+    interface QuerySource {
+        Query next();
+
+        static QuerySource replay(List<String> lines) {
+            List<Query> log = new ArrayList<>();
+            for (String line : lines) {
+                if (line.isBlank()) continue;
+                String[] parts = line.split("\t", 2);
+                log.add(new Query(parts[0].trim(), parts.length > 1 ? parts[1].trim() : null));
+            }
+            if (log.isEmpty()) {
+                throw new IllegalArgumentException("Журнал запросов пуст");
+            }
+            int[] position = {0};
+            return () -> log.get(position[0]++ % log.size());
+        }
+
+        /**
+         * Слова выбираются с вероятностью, обратной рангу в степени {@code exponent}:
+         * частые слова запрашивают часто, длинный хвост редких — изредка.
+         */
+        static QuerySource zipf(List<String> vocabulary, double exponent, int maxWords, Random random) {
+            if (vocabulary.isEmpty()) {
+                throw new IllegalArgumentException("Словарь пуст");
+            }
+            double[] cumulative = new double[vocabulary.size()];
+            double sum = 0;
+            for (int rank = 0; rank < cumulative.length; rank++) {
+                sum += 1 / Math.pow(rank + 1, exponent);
+                cumulative[rank] = sum;
+            }
+            double total = sum;
+            return () -> {
+                int words = 1 + random.nextInt(maxWords);
+                StringBuilder query = new StringBuilder();
+                for (int i = 0; i < words; i++) {
+                    int index = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+                    String word = vocabulary.get(index >= 0 ? index : -index - 1);
+                    if (query.length() > 0) query.append(' ');
+                    query.append(word.trim());
+                }
+                return new Query(query.toString(), null);
+            };
+        }
+    }
+
+    static final class Result {
+        final double rate;
+        final int durationSeconds;
+        final Histogram latency = new ConcurrentHistogram(HIGHEST_LATENCY_MICROS, 3);
+        final AtomicLong ok = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong shed = new AtomicLong();
+        final AtomicLong httpErrors = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong dropped = new AtomicLong();
+        int unfinished;
+
+        Result(double rate, int durationSeconds) {
+            this.rate = rate;
+            this.durationSeconds = durationSeconds;
+        }
+
+        void print(PrintStream out, boolean indexing) {
+            long completed = latency.getTotalCount();
+            long errors = rejected.get() + shed.get() + httpErrors.get() + failed.get() + dropped.get() + unfinished;
+            long total = completed + dropped.get() + unfinished;
+            out.printf("%-8.1f %-10s %10.1f %10.2f %10.2f %10.2f %10.2f %7.2f%%%n",
+                    rate, indexing ? "да" : "нет",
+                    (double) completed / durationSeconds,
+                    latency.getValueAtPercentile(50) / 1000.0,
+                    latency.getValueAtPercentile(99) / 1000.0,
+                    latency.getValueAtPercentile(99.9) / 1000.0,
+                    latency.getMaxValue() / 1000.0,
+                    total == 0 ? 0.0 : errors * 100.0 / total);
+            if (errors > 0) {
+                out.printf("         ошибки: result=false %d, 429 %d, другие HTTP %d, сбой соединения/таймаут %d, не отправлено %d, без ответа %d%n",
+                        rejected.get(), shed.get(), httpErrors.get(), failed.get(), dropped.get(), unfinished);
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package searchengine.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Детерминированный синтетический сайт на встроенном HTTP-сервере JDK.
+ * <p>
+ * Страницы {@code /page/0 .. /page/(pages-1)} образуют дерево: у страницы {@code i} дочерние
+ * {@code i*fanOut+1 .. i*fanOut+fanOut}, поэтому любая страница достижима с главной за
+ * log<sub>fanOut</sub>(pages) переходов. Ещё две ссылки на странице ведут на уже
+ * встречавшиеся страницы — обходчик должен отсеивать такие повторы. Текст страниц собирается
+ * из русских слов в разных формах генератором с зерном, зависящим от номера страницы,
+ * так что один и тот же набор параметров всегда даёт один и тот же сайт.
+ */
+public class SyntheticSite implements AutoCloseable {
+
+    private static final String[] WORDS = {
+            "поиск", "поиска", "поисковый", "поисковая", "поисковые", "индекс", "индекса", "индексы",
+            "индексация", "индексации", "страница", "страницы", "страниц", "страницам", "сайт", "сайта",
+            "сайты", "сайтов", "лемма", "леммы", "лемм", "слово", "слова", "слов", "словами", "текст",
+            "текста", "тексты", "запрос", "запроса", "запросы", "результат", "результаты", "ссылка",
+            "ссылки", "ссылок", "библиотека", "библиотеки", "книга", "книги", "книгой", "город",
+            "города", "городе", "городской", "новости", "новость", "история", "истории", "работа",
+            "работает", "работали", "быстрый", "быстро", "медленно", "большой", "большая", "новый",
+            "новая", "новые", "старый", "русский", "русского", "язык", "языка", "данные", "данных",
+            "база", "базы", "таблица", "таблицы", "робот", "робота", "обход", "обхода", "загрузка",
+            "загрузки", "читать", "читает", "прочитал", "найти", "нашёл", "искать", "ищет", "строить",
+            "строит", "построил", "хранить", "хранит", "время", "времени", "день", "дня", "год", "года",
+            "человек", "люди", "людей", "место", "места", "вопрос", "вопросы", "ответ", "ответы",
+            "и", "в", "на", "с", "по", "для", "из", "о", "что", "как", "это", "не", "но", "уже"
+    };
+
+    private final int pages;
+    private final int fanOut;
+    private final int pageSize;
+    private final long latencyMillis;
+    private final double errorRate;
+    private final long seed;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    public SyntheticSite(int pages, int fanOut, int pageSize, long latencyMillis, double errorRate, long seed)
+            throws IOException {
+        this.pages = pages;
+        this.fanOut = fanOut;
+        this.pageSize = pageSize;
+        this.latencyMillis = latencyMillis;
+        this.errorRate = errorRate;
+        this.seed = seed;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.executor = Executors.newFixedThreadPool(64);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /** Число страниц, которые сервер отдаёт с ошибкой. */
+    public int getFailingPages() {
+        int failing = 0;
+        for (int i = 0; i < pages; i++) {
+            if (isFailing(i)) failing++;
+        }
+        return failing;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try (exchange) {
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            int page = pageNumber(exchange.getRequestURI().getPath());
+            if (page < 0 || page >= pages) {
+                send(exchange, 404, "<html><body>Страница не найдена</body></html>");
+            } else if (isFailing(page)) {
+                errors.incrementAndGet();
+                send(exchange, 500, "<html><body>Внутренняя ошибка сервера</body></html>");
+            } else {
+                send(exchange, 200, render(page));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static int pageNumber(String path) {
+        if (path.equals("/") || path.isEmpty()) return 0;
+        if (!path.startsWith("/page/")) return -1;
+        try {
+            return Integer.parseInt(path.substring("/page/".length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private boolean isFailing(int page) {
+        // Главная страница всегда доступна, иначе обход не начнётся
+        return page != 0 && (mix(seed * 31 + page) >>> 11) * 0x1.0p-53 < errorRate;
+    }
+
+    /** Перемешивание SplitMix64: соседние номера страниц дают независимые значения. */
+    private static long mix(long value) {
+        long z = value + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private String render(int page) {
+        Random random = new Random(mix(seed + page));
+        StringBuilder html = new StringBuilder(pageSize + 1024);
+        String title = sentence(random, 6);
+        html.append("<!DOCTYPE html><html lang=\"ru\"><head><meta charset=\"UTF-8\"><title>")
+                .append(title).append("</title></head><body>")
+                .append("<nav><a href=\"/\">Главная</a> <a href=\"/page/1\">Разделы</a></nav>")
+                .append("<h1>").append(title).append("</h1>");
+
+        while (html.length() < pageSize) {
+            html.append("<p>");
+            int sentences = 3 + random.nextInt(4);
+            for (int s = 0; s < sentences; s++) {
+                html.append(sentence(random, 6 + random.nextInt(10))).append(' ');
+            }
+            html.append("</p>");
+        }
+
+        html.append("<ul>");
+        for (int i = 1; i <= fanOut; i++) {
+            long child = (long) page * fanOut + i;
+            if (child < pages) {
+                link(html, (int) child);
+            }
+        }
+        if (page > 0) {
+            link(html, random.nextInt(page));
+            link(html, (page - 1) / fanOut);
+        }
+        html.append("</ul><footer>Синтетический сайт для замеров обхода</footer></body></html>");
+        return html.toString();
+    }
+
+    private static void link(StringBuilder html, int target) {
+        html.append("<li><a href=\"/page/").append(target).append("\">Страница ").append(target).append("</a></li>");
+    }
+
+    private static String sentence(Random random, int words) {
+        StringBuilder sentence = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            if (i == 0) {
+                sentence.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+            } else {
+                sentence.append(' ').append(word);
+            }
+        }
+        return sentence.append('.').toString();
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package searchengine.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.lucene.morphology.english.EnglishLuceneMorphology;
+import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import searchengine.config.IndexingState;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Общие данные бенчмарков: страницы корпуса из {@code src/jmh/resources/corpus}
+ * и сервисы, собранные без контекста Spring.
+ */
+final class BenchmarkFixtures {
+
+    static final String SITE_URL = "https://example.ru";
+    static final List<String> PAGES = List.of("news", "catalog", "article");
+    /** Запрос к каждой странице корпуса: слова в разных формах, которые на странице есть. */
+    static final Map<String, String> QUERIES = Map.of(
+            "news", "библиотеки и читальные залы",
+            "catalog", "палатку для зимнего похода",
+            "article", "леммы поискового индекса"
+    );
+
+    private static final int COMBINED_LENGTH = 100_000;
+
+    private BenchmarkFixtures() {
+    }
+
+    static String html(String page) {
+        try (InputStream in = BenchmarkFixtures.class.getResourceAsStream("/corpus/" + page + ".html")) {
+            if (in == null) {
+                throw new IllegalArgumentException("Нет страницы в корпусе: " + page);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static Document document(String page) {
+        return Jsoup.parse(html(page), SITE_URL + "/" + page);
+    }
+
+    static String text(String page) {
+        return document(page).body().text();
+    }
+
+    /** Все страницы корпуса подряд, повторённые до ~100 тыс. символов. */
+    static String combinedText() {
+        StringBuilder combined = new StringBuilder();
+        while (combined.length() < COMBINED_LENGTH) {
+            for (String name : PAGES) {
+                combined.append(text(name)).append('\n');
+            }
+        }
+        return combined.toString();
+    }
+
+    static Lemmatizer lemmatizer() {
+        try {
+            return new Lemmatizer(new RussianLuceneMorphology(), new EnglishLuceneMorphology(),
+                    new IndexingState(), new EngineMetrics(new SimpleMeterRegistry()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
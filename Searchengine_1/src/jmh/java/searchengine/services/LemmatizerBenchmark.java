@@ -0,0 +1,37 @@
+package searchengine.services;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Lemmatizer#extractLemmasWithRank(String)} на текстах страниц корпуса.
+ * {@code combined} — все страницы подряд, повторённые до ~100 тыс. символов:
+ * такой текст длиннее порога разбиения и идёт через fork-join.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-XX:+AlwaysPreTouch"})
+public class LemmatizerBenchmark {
+
+    @Param({"news", "catalog", "article", "combined"})
+    public String page;
+
+    private Lemmatizer lemmatizer;
+    private String text;
+
+    @Setup
+    public void setUp() {
+        lemmatizer = BenchmarkFixtures.lemmatizer();
+        text = page.equals("combined") ? BenchmarkFixtures.combinedText() : BenchmarkFixtures.text(page);
+    }
+
+    @Benchmark
+    public Map<String, Integer> extractLemmasWithRank() {
+        return lemmatizer.extractLemmasWithRank(text);
+    }
+}
@@ -0,0 +1,62 @@
+package searchengine.services;
+
+import org.openjdk.jmh.annotations.*;
+import searchengine.model.Lemma;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Расчёт абсолютной релевантности страниц {@code JpaSearchBackend.calculateRelevance}.
+ * Ранги берутся из массива в памяти вместо {@code IndexRepository}, поэтому замеряется
+ * только вычисление, без обращений к базе.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-XX:+AlwaysPreTouch"})
+public class RelevanceBenchmark {
+
+    @Param({"100", "10000"})
+    public int pageCount;
+
+    @Param({"1", "3"})
+    public int lemmaCount;
+
+    private List<Integer> pageIds;
+    private List<Lemma> lemmas;
+    private float[][] ranks;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        pageIds = new ArrayList<>(pageCount);
+        for (int i = 0; i < pageCount; i++) {
+            pageIds.add(i);
+        }
+        lemmas = new ArrayList<>(lemmaCount);
+        for (int i = 0; i < lemmaCount; i++) {
+            Lemma lemma = new Lemma();
+            lemma.setId(i);
+            lemma.setLemma("лемма" + i);
+            lemmas.add(lemma);
+        }
+        ranks = new float[pageCount][lemmaCount];
+        for (float[] pageRanks : ranks) {
+            for (int i = 0; i < pageRanks.length; i++) {
+                pageRanks[i] = 1 + random.nextInt(20);
+            }
+        }
+    }
+
+    @Benchmark
+    public Map<Integer, Double> calculateRelevance() {
+        return JpaSearchBackend.calculateRelevance(pageIds, lemmas,
+                (pageId, lemma) -> ranks[pageId][lemma.getId()]);
+    }
+}
@@ -0,0 +1,70 @@
+package searchengine.services;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Построение сниппета {@link SnippetBuilder}: {@code createSnippet} целиком (разбиение текста на слова,
+ * лемматизация каждого слова) и отдельно {@code buildSnippet} по уже найденным словам.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-XX:+AlwaysPreTouch"})
+public class SnippetBenchmark {
+
+    @Param({"news", "catalog", "article"})
+    public String page;
+
+    private SnippetBuilder snippetBuilder;
+    private String text;
+    private List<String> queryLemmas;
+    private List<String> words;
+    private List<String> cleanWords;
+    private List<SnippetBuilder.WordInfo> foundWords;
+    private Set<String> matchedForms;
+
+    @Setup
+    public void setUp() {
+        Lemmatizer lemmatizer = BenchmarkFixtures.lemmatizer();
+        snippetBuilder = new SnippetBuilder(lemmatizer);
+
+        text = BenchmarkFixtures.document(page).text();
+        queryLemmas = new ArrayList<>(lemmatizer.getQueryLemmas(BenchmarkFixtures.QUERIES.get(page)).keySet());
+
+        // Промежуточные данные createSnippet для замера buildSnippet отдельно
+        String content = text;
+        words = new ArrayList<>();
+        cleanWords = new ArrayList<>();
+        new TextTokenizer().tokenize(content, (buffer, length, start, end) -> {
+            words.add(content.substring(start, end));
+            cleanWords.add(new String(buffer, 0, length));
+        });
+        foundWords = new ArrayList<>();
+        matchedForms = new HashSet<>();
+        for (int i = 0; i < cleanWords.size(); i++) {
+            String word = cleanWords.get(i);
+            if (word.isEmpty()) continue;
+            for (String lemma : lemmatizer.getWordLemmas(word)) {
+                if (queryLemmas.contains(lemma)) {
+                    foundWords.add(new SnippetBuilder.WordInfo(i, word, lemma));
+                    matchedForms.add(word);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public String createSnippet() {
+        return snippetBuilder.createSnippet(text, queryLemmas);
+    }
+
+    @Benchmark
+    public String buildSnippet() {
+        return SnippetBuilder.buildSnippet(words, cleanWords, foundWords, matchedForms);
+    }
+}
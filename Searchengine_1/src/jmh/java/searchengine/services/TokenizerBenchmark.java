@@ -0,0 +1,53 @@
+package searchengine.services;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Разбиение текста на слова для лемматизации: {@link TextTokenizer} против прежнего
+ * разбиения регулярными выражениями ({@code split("\\s+")} и {@code replaceAll("[^а-яё]", "")}
+ * для каждого слова). Оба варианта отдают русские слова строками, как их получает морфология;
+ * сама морфология не вызывается, чтобы замер касался только разбиения.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-XX:+AlwaysPreTouch"})
+public class TokenizerBenchmark {
+
+    @Param({"news", "catalog", "article", "combined"})
+    public String page;
+
+    private String text;
+
+    @Setup
+    public void setUp() {
+        text = page.equals("combined") ? BenchmarkFixtures.combinedText() : BenchmarkFixtures.text(page);
+    }
+
+    @Benchmark
+    public List<String> regexSplit() {
+        return Arrays.stream(text.toLowerCase().split("\\s+"))
+                .map(word -> word.replaceAll("[^а-яё]", "").trim())
+                .filter(word -> !word.isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<String> tokenizer() {
+        List<String> words = new ArrayList<>();
+        new TextTokenizer().tokenizeWords(text, (buffer, length, script, start, end) -> {
+            if (script == TextTokenizer.Script.CYRILLIC) {
+                words.add(new String(buffer, 0, length));
+            }
+        });
+        return words;
+    }
+}
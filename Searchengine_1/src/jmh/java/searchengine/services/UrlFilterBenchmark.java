@@ -0,0 +1,52 @@
+package searchengine.services;
+
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Фильтрация ссылок при обходе, как в {@code SiteIndexingTask.isValidUrl}: правила
+ * {@link SiteIndexingService#isCrawlableUrl(String, String)} и проверка по множеству
+ * посещённых адресов. Ссылки берутся со страниц корпуса, половина из них уже посещена.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-XX:+AlwaysPreTouch"})
+public class UrlFilterBenchmark {
+
+    private String[] links;
+    private Set<String> visitedUrls;
+
+    @Setup
+    public void setUp() {
+        List<String> all = new ArrayList<>();
+        for (String page : BenchmarkFixtures.PAGES) {
+            for (Element link : BenchmarkFixtures.document(page).select("a[href]")) {
+                all.add(link.absUrl("href"));
+            }
+        }
+        links = all.toArray(new String[0]);
+
+        visitedUrls = ConcurrentHashMap.newKeySet();
+        for (int i = 0; i < links.length; i += 2) {
+            visitedUrls.add(links[i]);
+        }
+    }
+
+    @Benchmark
+    public int filterPageLinks() {
+        int accepted = 0;
+        for (String link : links) {
+            if (SiteIndexingService.isCrawlableUrl(link, BenchmarkFixtures.SITE_URL) && !visitedUrls.contains(link)) {
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+}
@@ -3,9 +3,11 @@ package searchengine;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import searchengine.config.IndexingSettings;
 
 @SpringBootApplication
+@EnableScheduling
 @EnableConfigurationProperties(IndexingSettings.class)
 public class Application {
     public static void main(String[] args) {
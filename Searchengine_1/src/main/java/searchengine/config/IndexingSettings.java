@@ -16,6 +16,34 @@ public class IndexingSettings {
     private List<SiteConfig> sites;
     private String userAgent;
     private String referer;
+    /** Доля страниц сайта, начиная с которой лемма считается стоп-леммой. */
+    private double stopLemmaRatio = 0.7;
+    /** Минимальное число страниц сайта, после которого статистика стоп-лемм считается надёжной. */
+    private int stopLemmaMinPages = 50;
+    /** На скольких страницах сайта должен встретиться блок текста, чтобы считаться частью шаблона. */
+    private int templateBlockMinPages = 3;
+    /** Пауза перед каждым запросом к индексируемому сайту, мс. */
+    private long requestDelay = 500;
+    /** Каталог снимков индекса сайтов. */
+    private String snapshotPath = "data/snapshots";
+    /** Загружать при запуске снимки сайтов, которых ещё нет в базе. */
+    private boolean importSnapshotsOnStartup = false;
+    /** Каталог словарей морфологии, упакованных для отображения в память; пусто - словари загружаются в кучу. */
+    private String morphologyCachePath = "data/morphology";
+    /** Вероятность перехода по ссылке в PageRank. */
+    private double pageRankDamping = 0.85;
+    /** Наибольшее число итераций PageRank. */
+    private int pageRankIterations = 50;
+    /** Обходить сайты вместе с другими экземплярами приложения через общую очередь в базе. */
+    private boolean distributed = false;
+    /** Сколько адресов экземпляр берёт из общей очереди за раз. */
+    private int frontierBatchSize = 20;
+    /** Пауза перед новой попыткой, если в общей очереди нет адресов для экземпляра, мс. */
+    private long frontierPollInterval = 1000;
+    /** Период отметки экземпляра и продления аренды его хостов, мс. */
+    private long frontierHeartbeatInterval = 10_000;
+    /** Через сколько без продления аренда хоста истекает, а экземпляр считается упавшим, мс. */
+    private long frontierLeaseTimeout = 60_000;
 
 
     @Getter
@@ -1,28 +1,83 @@
 package searchengine.config;
 
-import org.apache.lucene.morphology.LuceneMorphology;
+import org.apache.lucene.morphology.LetterDecoderEncoder;
+import org.apache.lucene.morphology.Morphology;
+import org.apache.lucene.morphology.english.EnglishLetterDecoderEncoder;
+import org.apache.lucene.morphology.english.EnglishLuceneMorphology;
+import org.apache.lucene.morphology.russian.RussianLetterDecoderEncoder;
 import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import searchengine.services.MappedMorphology;
 
 import java.io.IOException;
+import java.nio.file.Paths;
 
+/**
+ * Словари морфологии. Если задан {@code indexing-settings.morphology-cache-path}, словарь
+ * отображается в память из упакованного файла ({@link MappedMorphology}); при первом запуске
+ * или ошибке чтения файла словарь загружается библиотекой целиком в кучу.
+ */
 @Configuration
 public class LuceneConfig {
     private static final Logger logger = LoggerFactory.getLogger(LuceneConfig.class);
 
+    private static final String RUSSIAN_DICTIONARY = "/org/apache/lucene/morphology/russian/morph.info";
+    private static final String ENGLISH_DICTIONARY = "/org/apache/lucene/morphology/english/morph.info";
+
     @Bean
-    public LuceneMorphology russianLuceneMorphology() {
+    public Morphology russianLuceneMorphology(IndexingSettings indexingSettings) {
+        long start = System.nanoTime();
         try {
-            LuceneMorphology morphology = new RussianLuceneMorphology(
-            );
-            logger.info("LuceneMorphology bean успешно создан");
+            Morphology morphology = mapped(indexingSettings, "russian", RUSSIAN_DICTIONARY, new RussianLetterDecoderEncoder());
+            if (morphology == null) {
+                morphology = new RussianLuceneMorphology();
+            }
+            logger.info("LuceneMorphology bean успешно создан ({}) за {} мс", describe(morphology), elapsedMillis(start));
             return morphology;
         } catch (IOException e) {
             logger.error("Ошибка создания LuceneMorphology", e);
             throw new RuntimeException("Инициализация морфологии завершилась ошибкой", e);
         }
     }
-}
\ No newline at end of file
+
+    @Bean
+    public Morphology englishLuceneMorphology(IndexingSettings indexingSettings) {
+        long start = System.nanoTime();
+        try {
+            Morphology morphology = mapped(indexingSettings, "english", ENGLISH_DICTIONARY, new EnglishLetterDecoderEncoder());
+            if (morphology == null) {
+                morphology = new EnglishLuceneMorphology();
+            }
+            logger.info("Английская LuceneMorphology bean успешно создан ({}) за {} мс", describe(morphology), elapsedMillis(start));
+            return morphology;
+        } catch (IOException e) {
+            logger.error("Ошибка создания английской LuceneMorphology", e);
+            throw new RuntimeException("Инициализация английской морфологии завершилась ошибкой", e);
+        }
+    }
+
+    private static Morphology mapped(IndexingSettings indexingSettings, String language, String dictionary,
+                                     LetterDecoderEncoder decoderEncoder) {
+        String cachePath = indexingSettings.getMorphologyCachePath();
+        if (cachePath == null || cachePath.isBlank()) {
+            return null;
+        }
+        try {
+            return MappedMorphology.open(Paths.get(cachePath, language + ".morph"), dictionary, decoderEncoder);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Словарь {} не удалось отобразить в память, загружаем в кучу: {}", language, e.getMessage());
+            return null;
+        }
+    }
+
+    private static String describe(Morphology morphology) {
+        return morphology instanceof MappedMorphology ? "отображение в память" : "в куче";
+    }
+
+    private static long elapsedMillis(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}
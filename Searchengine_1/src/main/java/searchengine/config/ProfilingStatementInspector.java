@@ -0,0 +1,20 @@
+package searchengine.config;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import searchengine.services.SearchProfiler;
+
+/**
+ * Считает SQL-запросы, выполненные в потоке профилируемого поиска.
+ * Подключается через {@code hibernate.session_factory.statement_inspector}.
+ */
+public class ProfilingStatementInspector implements StatementInspector {
+
+    @Override
+    public String inspect(String sql) {
+        SearchProfiler profiler = SearchProfiler.current();
+        if (profiler != null) {
+            profiler.statementExecuted();
+        }
+        return sql;
+    }
+}
@@ -0,0 +1,49 @@
+package searchengine.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Отдельный пул для поисковых запросов: поиск не занимает потоки Tomcat,
+ * и медленные запросы не мешают статистике и веб-интерфейсу.
+ */
+@Configuration
+public class SearchExecutorConfig {
+
+    /**
+     * Потоков столько, сколько запросов может быть допущено одновременно; ожидающие своей
+     * очереди запросы потоков не занимают (см. {@link searchengine.services.SearchConcurrencyLimiter}).
+     */
+    @Bean
+    public ThreadPoolTaskExecutor searchExecutor(SearchSettings searchSettings) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(searchSettings.getMaxConcurrency());
+        executor.setMaxPoolSize(searchSettings.getMaxConcurrency());
+        executor.setQueueCapacity(searchSettings.getMaxConcurrency());
+        executor.setThreadNamePrefix("search-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(searchSettings.getQueryTimeout());
+        return executor;
+    }
+
+    /**
+     * Поиск по отдельным сайтам при запросе без {@code site}. Очередь ограничена
+     * {@code siteQueueSize}: при переполнении задача отклоняется ({@code TaskRejectedException}),
+     * и запрос получает 429, как при переполнении очереди допуска.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor siteSearchExecutor(SearchSettings searchSettings) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(searchSettings.getSiteParallelism());
+        executor.setMaxPoolSize(searchSettings.getSiteParallelism());
+        executor.setQueueCapacity(searchSettings.getSiteQueueSize());
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setThreadNamePrefix("search-site-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(searchSettings.getQueryTimeout());
+        return executor;
+    }
+}
@@ -0,0 +1,82 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Настройки допуска поисковых запросов: адаптивный предел одновременных запросов,
+ * очередь ожидания и тайм-аут SQL.
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "search-settings")
+public class SearchSettings {
+
+    /**
+     * Реализация поиска: {@code jpa} - SQL по таблице search_index, {@code lucene} - индекс Lucene,
+     * {@code postings} - сжатые списки страниц лемм.
+     */
+    private String backend = "jpa";
+    /** Вести индекс Lucene при индексации, даже если поиск выполняет другая реализация. */
+    private boolean luceneIndexing = false;
+    /** Каталог индекса Lucene, по подкаталогу на сайт. */
+    private String luceneIndexPath = "data/lucene";
+    /** Вести сжатые списки страниц лемм при индексации, даже если поиск выполняет другая реализация. */
+    private boolean postingIndexing = false;
+    /** Период вливания накопленных изменений в сжатые списки, мс. */
+    private long postingCompactionInterval = 10_000;
+    /** Сколько лемм обрабатывается за один проход вливания. */
+    private int postingCompactionBatch = 500;
+    /**
+     * Сколько страниц с наибольшими рангами входит в горячую часть сжатого списка; запрос
+     * сначала считается по горячим частям. 0 - не выделять горячие части.
+     */
+    private int postingHotTierSize = 1000;
+    /** Исправлять опечатки в леммах запроса, если в запросе не указан {@code fuzzy}. */
+    private boolean fuzzy = false;
+    /** Наибольшее расстояние Дамерау-Левенштейна до исправления, 1 или 2. */
+    private int fuzzyMaxDistance = 2;
+    /** Лемма, встречающаяся не больше чем на стольких страницах сайта, тоже проверяется на опечатку. */
+    private int fuzzyRareFrequency = 1;
+    /** По скольким первым символам лемм строится словарь опечаток; меньше - меньше памяти. */
+    private int fuzzyPrefixLength = 7;
+    /** Вес PageRank в релевантности: она умножается на {@code 1 + pageRankWeight * ln(1 + PageRank)}; 0 - не учитывать. */
+    private double pageRankWeight = 0.2;
+    /** Число подсказок {@code /api/suggest}, если {@code limit} не указан. */
+    private int suggestLimit = 10;
+    /** Наибольший {@code limit} запроса {@code /api/search}; больший уменьшается до него. */
+    private int maxLimit = 100;
+    /** Начальный предел одновременно выполняемых запросов. */
+    private int initialConcurrency = 5;
+    /** Нижняя граница предела. */
+    private int minConcurrency = 1;
+    /** Верхняя граница предела; вместе с {@code siteParallelism} должна быть меньше пула соединений с базой. */
+    private int maxConcurrency = 8;
+    /** Сколько запросов может ждать свободного места, остальные сразу получают 429. */
+    private int queueSize = 20;
+    /** Сколько запрос ждёт в очереди, мс. */
+    private long queueTimeout = 500;
+    /** Во сколько раз задержка может превысить обычную, прежде чем предел начнёт снижаться. */
+    private double latencyTolerance = 2.0;
+    /** Сколько сайтов обрабатывается параллельно при поиске по всем сайтам. */
+    private int siteParallelism = 4;
+    /** Сколько задач поиска по сайтам может ждать свободного потока; при переполнении запрос получает 429. */
+    private int siteQueueSize = 64;
+    /**
+     * Тайм-аут поиска, с; SQL-запрос, не уложившийся в него, отменяется на сервере базы.
+     * Транзакции получают остаток времени в целых секундах, округлённый вниз, но не меньше секунды,
+     * поэтому последний SQL-запрос может пережить тайм-аут меньше чем на секунду.
+     */
+    private int queryTimeout = 5;
+
+    /**
+     * Пишутся ли строки search_index. Поиску по сжатым спискам они не нужны: списки ведутся
+     * из тех же записей, а при удалении страницы её леммы получаются из сохранённого текста.
+     */
+    public boolean writesSearchIndex() {
+        return !"postings".equals(backend);
+    }
+}
@@ -1,8 +1,13 @@
 package searchengine.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import searchengine.dto.response.IndexingResponse;
+import searchengine.services.IndexSnapshotService;
+import searchengine.services.IndexingProgressService;
 import searchengine.services.SiteIndexingService;
 import java.util.Map;
 
@@ -11,6 +16,8 @@ import java.util.Map;
 @RequestMapping("/api")
 public class IndexingController {
     private final SiteIndexingService siteIndexingService;
+    private final IndexingProgressService indexingProgressService;
+    private final IndexSnapshotService indexSnapshotService;
 
     @GetMapping("/startIndexing")
     public Map<String, Object> startIndexing() {
@@ -26,4 +33,19 @@ public class IndexingController {
     public Map<String, Object> indexPage(@RequestParam String url) {
         return siteIndexingService.indexPage(url).getBody();
     }
+
+    @GetMapping(value = "/indexing/progress", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter indexingProgress() {
+        return indexingProgressService.subscribe();
+    }
+
+    @PostMapping("/snapshot/export")
+    public ResponseEntity<Map<String, Object>> exportSnapshot(@RequestParam String site) {
+        return indexSnapshotService.exportSite(site);
+    }
+
+    @PostMapping("/snapshot/import")
+    public ResponseEntity<Map<String, Object>> importSnapshot(@RequestParam String file) {
+        return indexSnapshotService.importSnapshot(file);
+    }
 }
\ No newline at end of file
@@ -1,9 +1,20 @@
 package searchengine.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import searchengine.config.SearchSettings;
 import searchengine.dto.response.SearchResponse;
+import searchengine.dto.response.SuggestResponse;
+import searchengine.services.SearchOverloadedException;
 import searchengine.services.SearchService;
+import searchengine.services.SuggestService;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @RequiredArgsConstructor
 @RestController
@@ -11,13 +22,74 @@ import searchengine.services.SearchService;
 public class SearchController {
 
     private final SearchService searchService;
+    private final SearchSettings searchSettings;
+    private final SuggestService suggestService;
 
+    /**
+     * Поток Tomcat освобождается сразу: ответ отправляется, когда поиск завершится в своём пуле.
+     * Если ответа нет дольше ожидания в очереди и тайм-аута поиска вместе взятых, клиент получает 503,
+     * а ещё не начатый поиск отменяется; так же отменяется поиск при разрыве соединения.
+     * Отрицательный {@code offset} и {@code limit} не больше 0 дают 400, {@code limit} больше
+     * {@code search-settings.maxLimit} уменьшается до него.
+     */
     @GetMapping("/search")
-    public SearchResponse search(
+    public DeferredResult<ResponseEntity<SearchResponse>> search(
             @RequestParam String query,
             @RequestParam(required = false) String site,
             @RequestParam(defaultValue = "0") int offset,
-            @RequestParam(defaultValue = "10") int limit) {
-        return searchService.search(query, site, offset, limit);
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestParam(defaultValue = "false") boolean profile,
+            @RequestParam(required = false) Boolean fuzzy) {
+        long timeout = searchSettings.getQueueTimeout() + searchSettings.getQueryTimeout() * 1000L + 1000;
+        DeferredResult<ResponseEntity<SearchResponse>> deferred = new DeferredResult<>(timeout);
+        if (offset < 0 || limit <= 0) {
+            SearchResponse response = new SearchResponse();
+            response.setResult(false);
+            response.setError("Параметр offset не может быть отрицательным, а limit должен быть больше 0");
+            deferred.setResult(ResponseEntity.badRequest().body(response));
+            return deferred;
+        }
+        int pageSize = Math.min(limit, searchSettings.getMaxLimit());
+        CompletableFuture<SearchResponse> result = searchService.search(query, site, offset, pageSize, profile, fuzzy);
+
+        deferred.onTimeout(() -> {
+            result.cancel(false);
+            SearchResponse response = new SearchResponse();
+            response.setResult(false);
+            response.setError("Поиск не уложился в отведённое время");
+            deferred.setErrorResult(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response));
+        });
+        deferred.onError(error -> result.cancel(false));
+        result.whenComplete((response, error) -> {
+            if (error == null) {
+                deferred.setResult(ResponseEntity.ok(response));
+            } else {
+                deferred.setErrorResult(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error);
+            }
+        });
+        return deferred;
+    }
+
+    /**
+     * Подсказки по началу запроса из словарей в памяти, без обращения к базе и очереди поиска.
+     */
+    @GetMapping("/suggest")
+    public ResponseEntity<SuggestResponse> suggest(
+            @RequestParam String prefix,
+            @RequestParam(required = false) String site,
+            @RequestParam(required = false) Integer limit) {
+        SuggestResponse response = suggestService.suggest(prefix, site, limit);
+        return response.isResult() ? ResponseEntity.ok(response) : ResponseEntity.badRequest().body(response);
+    }
+
+    @ExceptionHandler(SearchOverloadedException.class)
+    public ResponseEntity<SearchResponse> overloaded(SearchOverloadedException e) {
+        SearchResponse response = new SearchResponse();
+        response.setResult(false);
+        response.setError(e.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(response);
     }
 }
\ No newline at end of file
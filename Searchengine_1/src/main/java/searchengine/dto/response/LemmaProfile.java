@@ -0,0 +1,20 @@
+package searchengine.dto.response;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class LemmaProfile {
+    private String lemma;
+    private String site;
+    /** Частота леммы, по которой решается, стоп-лемма ли она. */
+    private int frequency;
+    /**
+     * Длина прочитанного поиском списка вхождений: записей индекса, документов Lucene или страниц
+     * сжатого списка; null, если список леммы не читался.
+     */
+    private Long postings;
+    private long sitePages;
+    private boolean stopLemma;
+}
@@ -0,0 +1,20 @@
+package searchengine.dto.response;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+import java.util.Map;
+
+@Getter
+@Setter
+public class SearchProfile {
+    private double wallTimeMs;
+    private int statements;
+    /** Время SQL-запросов, выполненных только для профиля; в этапы и их число запросов не входит. */
+    private double profilingTimeMs;
+    private List<SearchStageProfile> stages;
+    private List<LemmaProfile> lemmas;
+    /** Порядок проверки лемм по сайтам: от самой редкой на сайте. */
+    private Map<String, List<String>> evaluationOrder;
+}
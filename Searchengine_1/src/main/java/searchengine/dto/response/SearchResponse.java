@@ -1,9 +1,11 @@
 package searchengine.dto.response;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Getter;
 import lombok.Setter;
 
 import java.util.List;
+import java.util.Map;
 @Getter
 @Setter
 public class SearchResponse {
@@ -11,4 +13,9 @@ public class SearchResponse {
     private String error;
     private int count;
     private List<SearchResult> data;
+    /** Исправленные опечатки: лемма запроса - лемма, по которой шёл поиск. */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Map<String, String> corrections;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private SearchProfile profile;
 }
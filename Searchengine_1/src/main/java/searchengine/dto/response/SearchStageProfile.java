@@ -0,0 +1,21 @@
+package searchengine.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SearchStageProfile {
+    private String name;
+    /** Сайт, по которому выполнялся этап; null у этапов всего запроса. */
+    private String site;
+    private double timeMs;
+    private int statements;
+    private long rows;
+    /** Этапы поиска по отдельным сайтам внутри этого этапа; сайты могут выполняться параллельно. */
+    private List<SearchStageProfile> stages;
+}
@@ -0,0 +1,21 @@
+package searchengine.dto.search;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Страница в выдаче: только то, что нужно для результата поиска, без HTML.
+ */
+@Getter
+@AllArgsConstructor
+public class PageSummary {
+    private final Integer id;
+    private final Integer siteId;
+    private final String siteUrl;
+    private final String siteName;
+    private final String path;
+    /** Заголовок; {@code null} у страниц, сохранённых до появления колонки. */
+    private final String title;
+    /** Текст страницы, у старых страниц - HTML. */
+    private final String text;
+}
@@ -0,0 +1,12 @@
+package searchengine.dto.statistics;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class IndexingProgress {
+    private long timestamp;
+    private boolean full;
+    private List<SiteProgress> sites;
+}
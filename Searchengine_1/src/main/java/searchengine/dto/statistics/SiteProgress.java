@@ -0,0 +1,17 @@
+package searchengine.dto.statistics;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SiteProgress {
+    private String url;
+    private String name;
+    private String status;
+    private int pages;
+    private int queued;
+    private int errors;
+    private double pagesPerSecond;
+    private Long etaSeconds;
+}
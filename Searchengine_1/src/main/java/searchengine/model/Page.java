@@ -11,6 +11,8 @@ import javax.persistence.Index;
 @Entity
 @Table(name = "page", indexes = {
         @Index(name = "idx_path", columnList = "path")
+}, uniqueConstraints = {
+        @UniqueConstraint(name = "uc_page_site_path", columnNames = {"site_id", "path"})
 })
 public class Page {
 
@@ -18,7 +20,7 @@ public class Page {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Integer id;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "site_id", nullable = false)
     private Site site;
 
@@ -31,6 +33,18 @@ public class Page {
     @Column(nullable = false, columnDefinition = "VARCHAR")
     private String content;
 
+    @Column(columnDefinition = "TEXT")
+    private String title;
+
+    @Column(columnDefinition = "TEXT")
+    private String text;  // текст страницы, из которого получены леммы; по нему строится сниппет
+
+    @Column(name = "page_rank", nullable = false)
+    private float pageRank = 1;  // PageRank по внутренним ссылкам; у средней страницы сайта 1
+
+    @Column(name = "in_links", nullable = false)
+    private int inLinks;  // число страниц сайта, ссылающихся на эту
+
     public Page(Site site, String replace, int i, String s) {
     }
 
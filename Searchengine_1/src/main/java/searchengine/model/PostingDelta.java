@@ -0,0 +1,33 @@
+package searchengine.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.persistence.*;
+
+/**
+ * Изменение списка страниц леммы, ещё не влитое в {@link PostingList}:
+ * страница с рангом добавлена, ранг 0 - страница удалена.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "posting_delta")
+public class PostingDelta {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "site_id", nullable = false)
+    private int siteId;
+
+    @Column(name = "lemma_id", nullable = false)
+    private int lemmaId;
+
+    @Column(name = "page_id", nullable = false)
+    private int pageId;
+
+    @Column(nullable = false)
+    private int ranking;
+}
@@ -0,0 +1,41 @@
+package searchengine.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.persistence.*;
+
+/**
+ * Сжатый список страниц одной леммы: номера страниц по возрастанию в виде разностей
+ * и ранги, упакованные {@link searchengine.services.Postings}. Изменения копятся
+ * в {@link PostingDelta} и периодически вливаются в список.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "posting_list")
+public class PostingList {
+
+    @Id
+    @Column(name = "lemma_id")
+    private Integer lemmaId;
+
+    @Column(name = "site_id", nullable = false)
+    private int siteId;
+
+    @Column(name = "page_count", nullable = false)
+    private int pageCount;
+
+    @Column(nullable = false)
+    private byte[] data;
+
+    /**
+     * Горячая часть длинного списка в том же формате: страницы с наибольшими рангами.
+     * У списков не длиннее {@code postingHotTierSize} её нет, они читаются целиком.
+     */
+    private byte[] hot;
+
+    /** Наибольший ранг страниц, не попавших в горячую часть; 0, если её нет. */
+    @Column(name = "cold_max_rank", nullable = false)
+    private int coldMaxRank;
+}
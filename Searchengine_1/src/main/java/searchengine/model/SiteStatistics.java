@@ -0,0 +1,37 @@
+package searchengine.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Сохранённый снимок счётчиков сайта, которые ведёт
+ * {@link searchengine.services.SiteStatisticsService}.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "site_statistics")
+public class SiteStatistics {
+
+    @Id
+    @Column(name = "site_id")
+    private Integer siteId;
+
+    @Column(nullable = false)
+    private int pages;
+
+    @Column(nullable = false)
+    private int lemmas;
+
+    @Column(nullable = false)
+    private long bytes;
+
+    @Column(nullable = false)
+    private int errors;
+
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+}
@@ -15,11 +15,24 @@ public interface IndexRepository extends JpaRepository<SearchIndex, Long> {
     @Query("SELECT si.page FROM SearchIndex si WHERE si.lemma.lemma IN :lemmas")
     List<Page> findPagesByLemmas(@Param("lemmas") List<String> lemmas);
 
-    @Query("SELECT si.ranking FROM SearchIndex si WHERE si.page = :page AND si.lemma = :lemma")
-    Float findRankByPageAndLemma(@Param("page") Page page, @Param("lemma") Lemma lemma);
+    @Query("SELECT si.ranking FROM SearchIndex si WHERE si.page.id = :pageId AND si.lemma = :lemma")
+    Float findRankByPageIdAndLemma(@Param("pageId") Integer pageId, @Param("lemma") Lemma lemma);
 
     List<SearchIndex> findByPage(Page page);
 
     @Query("SELECT DISTINCT si.page FROM SearchIndex si WHERE si.lemma.lemma IN :lemmas AND si.page.site = :site")
     List<Page> findPagesByLemmasAndSite(@Param("lemmas") List<String> lemmas, @Param("site") Site site);
+
+    /**
+     * Номера страниц, на которых встречаются все {@code lemmaCount} различных текстов лемм из списка.
+     */
+    @Query("SELECT si.page.id FROM SearchIndex si WHERE si.lemma IN :lemmas " +
+            "GROUP BY si.page.id HAVING COUNT(DISTINCT si.lemma.lemma) = :lemmaCount")
+    List<Integer> findPageIdsContainingAll(@Param("lemmas") List<Lemma> lemmas, @Param("lemmaCount") long lemmaCount);
+
+    /**
+     * Число записей индекса каждой леммы: пары (текст леммы, число записей).
+     */
+    @Query("SELECT si.lemma.lemma, COUNT(si) FROM SearchIndex si WHERE si.lemma IN :lemmas GROUP BY si.lemma.lemma")
+    List<Object[]> countByLemmas(@Param("lemmas") List<Lemma> lemmas);
 }
\ No newline at end of file
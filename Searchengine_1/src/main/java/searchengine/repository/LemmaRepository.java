@@ -7,6 +7,7 @@ import org.springframework.data.repository.query.Param;
 import searchengine.model.Lemma;
 import searchengine.model.Site;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -18,6 +19,8 @@ public interface LemmaRepository extends JpaRepository<Lemma, Long> {
 
     List<Lemma> findAllByLemmaAndSite(String lemma, Site site);
     List<Lemma> findAllByLemma(String lemma);
+    List<Lemma> findAllByLemmaInAndSite(Collection<String> lemmas, Site site);
+    List<Lemma> findAllByIdIn(Collection<Integer> ids);
 
     @Modifying
     @Query(value = "INSERT INTO lemma (lemma, site_id, frequency) VALUES (:lemma, :siteId, 1) " +
@@ -4,9 +4,12 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import searchengine.dto.search.PageSummary;
 import searchengine.model.Page;
 import searchengine.model.Site;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -15,6 +18,20 @@ public interface PageRepository extends JpaRepository<Page, Long> {
 
     boolean existsBySiteAndPath(Site site, String path);
 
-    @Query("SELECT p FROM Page p WHERE p.site.id = :siteId AND p.path = :path")
+    @Query("SELECT p FROM Page p JOIN FETCH p.site WHERE p.site.id = :siteId AND p.path = :path")
     Optional<Page> findBySiteAndPath(@Param("siteId") int siteId, @Param("path") String path);
+
+    List<Page> findByIdIn(Collection<Integer> ids);
+
+    /** Объём HTML страниц сайта в байтах, как его считает {@code SiteStatisticsService}. */
+    @Query(value = "SELECT COALESCE(SUM(OCTET_LENGTH(content)), 0) FROM page WHERE site_id = :siteId", nativeQuery = true)
+    long sumContentBytesBySiteId(@Param("siteId") int siteId);
+
+    /**
+     * Данные страниц для выдачи одним запросом, без HTML. У страниц, сохранённых до появления
+     * колонок title и text, вместо текста возвращается HTML, а заголовок пуст.
+     */
+    @Query("SELECT new searchengine.dto.search.PageSummary(p.id, s.id, s.url, s.name, p.path, p.title, COALESCE(p.text, p.content)) " +
+            "FROM Page p JOIN p.site s WHERE p.id IN :ids")
+    List<PageSummary> findSummariesByIdIn(@Param("ids") Collection<Integer> ids);
 }
\ No newline at end of file
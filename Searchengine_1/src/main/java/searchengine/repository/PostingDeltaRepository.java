@@ -0,0 +1,25 @@
+package searchengine.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import searchengine.model.PostingDelta;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface PostingDeltaRepository extends JpaRepository<PostingDelta, Long> {
+    List<PostingDelta> findAllByLemmaIdInOrderById(Collection<Integer> lemmaIds);
+
+    List<PostingDelta> findAllByLemmaIdOrderById(int lemmaId);
+
+    List<PostingDelta> findAllBySiteIdOrderById(int siteId);
+
+    boolean existsByLemmaIdIn(Collection<Integer> lemmaIds);
+
+    /** Леммы с невлитыми изменениями, начиная с самых давних. */
+    @Query("SELECT d.lemmaId FROM PostingDelta d GROUP BY d.lemmaId ORDER BY MIN(d.id)")
+    List<Integer> findPendingLemmaIds(Pageable pageable);
+}
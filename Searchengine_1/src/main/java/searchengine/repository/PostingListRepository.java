@@ -0,0 +1,22 @@
+package searchengine.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import searchengine.model.PostingList;
+
+import javax.persistence.LockModeType;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface PostingListRepository extends JpaRepository<PostingList, Integer> {
+    List<PostingList> findAllByLemmaIdIn(Collection<Integer> lemmaIds);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT pl FROM PostingList pl WHERE pl.lemmaId = :lemmaId")
+    Optional<PostingList> findForUpdate(@Param("lemmaId") int lemmaId);
+}
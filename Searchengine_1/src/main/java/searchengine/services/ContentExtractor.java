@@ -0,0 +1,224 @@
+package searchengine.services;
+
+import lombok.RequiredArgsConstructor;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import searchengine.config.IndexingSettings;
+import searchengine.model.Site;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Извлекает из страницы основной текст для лемматизации, отбрасывая шаблонные части сайта.
+ * <ul>
+ *     <li>удаляются служебные и навигационные элементы (скрипты, меню, шапка, подвал, формы);</li>
+ *     <li>текст делится на блоки по блочным элементам, блоки с высокой долей текста ссылок
+ *     (списки ссылок, хлебные крошки) отбрасываются;</li>
+ *     <li>для каждого сайта считается, на скольких страницах встретился блок: блок, встреченный
+ *     на {@link IndexingSettings#getTemplateBlockMinPages()} страницах и больше, считается частью
+ *     шаблона и дальше не индексируется.</li>
+ * </ul>
+ * Страницы различаются по адресу, который уникален в пределах сайта, поэтому повторная
+ * индексация страницы не увеличивает счётчики её блоков. Страницы, обойдённые до того, как блок
+ * набрал порог, сохраняют его в тексте: их не больше {@code templateBlockMinPages - 1}.
+ * В распределённом режиме страницы сайта обходят разные экземпляры, поэтому счётчики хранятся
+ * не в памяти, а в общей таблице {@code template_block}; её очищает полная индексация вместе с сайтами.
+ * Исходный документ не изменяется: ссылки для обхода берутся из него полностью.
+ */
+@Service
+@RequiredArgsConstructor
+public class ContentExtractor {
+
+    private static final String BOILERPLATE_SELECTOR = "script, style, noscript, template, iframe, svg, "
+            + "nav, header, footer, aside, form, "
+            + "[role=navigation], [role=banner], [role=contentinfo], [aria-hidden=true]";
+    private static final double MAX_LINK_DENSITY = 0.5;
+    private static final int MAX_BLOCKS_PER_SITE = 100_000;
+
+    private final IndexingSettings indexingSettings;
+    private final JdbcTemplate jdbcTemplate;
+
+    /** Хеш блока -> страницы сайта, на которых он встретился. */
+    private final Map<Integer, Map<Long, BlockPages>> siteBlocks = new ConcurrentHashMap<>();
+
+    public String extractText(Site site, String pageUrl, Document document) {
+        Element body = document.body().clone();
+        body.select(BOILERPLATE_SELECTOR).remove();
+
+        BlockCollector collector = new BlockCollector();
+        NodeTraversor.traverse(collector, body);
+        collector.flush();
+
+        int minPages = indexingSettings.getTemplateBlockMinPages();
+        Set<Long> sharedTemplates = indexingSettings.isDistributed()
+                ? sharedTemplates(site, pageUrl, collector.blocks, minPages) : null;
+        Map<Long, BlockPages> knownBlocks = siteBlocks.computeIfAbsent(site.getId(), id -> new ConcurrentHashMap<>());
+        StringBuilder result = new StringBuilder();
+        for (String block : collector.blocks) {
+            long hash = blockHash(block);
+            if (sharedTemplates != null ? sharedTemplates.contains(hash)
+                    : isTemplate(knownBlocks, hash, pageUrl, minPages)) continue;
+            if (result.length() > 0) {
+                result.append('\n');
+            }
+            result.append(block);
+        }
+        return result.toString();
+    }
+
+    public void clear() {
+        siteBlocks.clear();
+    }
+
+    private static boolean isTemplate(Map<Long, BlockPages> knownBlocks, long hash, String pageUrl, int minPages) {
+        BlockPages pages = knownBlocks.get(hash);
+        if (pages == null) {
+            if (knownBlocks.size() >= MAX_BLOCKS_PER_SITE) return false;
+            pages = knownBlocks.computeIfAbsent(hash, key -> new BlockPages());
+        }
+        return pages.seenOn(pageUrl, minPages);
+    }
+
+    /**
+     * Шаблонные блоки страницы по счётчикам {@code template_block}. Адрес страницы записывается
+     * только у блоков, ещё не набравших порог, так что у блока в таблице не больше
+     * {@code minPages} строк. Экземпляры, одновременно обходящие страницы с одним блоком,
+     * могут прочитать одно и то же число страниц: тогда блок станет шаблонным на странице позже.
+     */
+    private Set<Long> sharedTemplates(Site site, String pageUrl, List<String> blocks, int minPages) {
+        Set<Long> hashes = new LinkedHashSet<>();
+        for (String block : blocks) {
+            hashes.add(blockHash(block));
+        }
+        if (hashes.isEmpty()) return hashes;
+
+        Map<Long, Integer> counts = new HashMap<>();
+        Set<Long> seen = new HashSet<>();
+        List<Object> args = new ArrayList<>(List.of(pageUrl, site.getId()));
+        args.addAll(hashes);
+        jdbcTemplate.query("SELECT block_hash, COUNT(*), BOOL_OR(page_url = ?) FROM template_block " +
+                "WHERE site_id = ? AND block_hash IN (" + String.join(", ", Collections.nCopies(hashes.size(), "?")) + ") " +
+                "GROUP BY block_hash", rs -> {
+            counts.put(rs.getLong(1), rs.getInt(2));
+            if (rs.getBoolean(3)) seen.add(rs.getLong(1));
+        }, args.toArray());
+
+        Set<Long> templates = new HashSet<>();
+        List<Long> added = new ArrayList<>();
+        for (long hash : hashes) {
+            int count = counts.getOrDefault(hash, 0);
+            if (count < minPages && !seen.contains(hash)) {
+                added.add(hash);
+                count++;
+            }
+            if (count >= minPages) templates.add(hash);
+        }
+        if (!added.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO template_block (site_id, block_hash, page_url) VALUES (?, ?, ?) " +
+                    "ON CONFLICT DO NOTHING", added, added.size(), (statement, hash) -> {
+                statement.setInt(1, site.getId());
+                statement.setLong(2, hash);
+                statement.setString(3, pageUrl);
+            });
+        }
+        return templates;
+    }
+
+    private static long blockHash(String text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /** Адреса страниц с блоком; когда их набирается порог, блок становится шаблонным и адреса не нужны. */
+    private static class BlockPages {
+        private Set<String> pageUrls = new HashSet<>();
+
+        synchronized boolean seenOn(String pageUrl, int minPages) {
+            if (pageUrls == null) return true;
+            pageUrls.add(pageUrl);
+            if (pageUrls.size() < minPages) return false;
+            pageUrls = null;
+            return true;
+        }
+    }
+
+    /** Схлопывает пробельные символы (включая неразрывный пробел) в один пробел и обрезает края. */
+    private static String collapseWhitespace(CharSequence text) {
+        StringBuilder result = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c) || c == '\u00a0') {
+                space = result.length() > 0;
+            } else {
+                if (space) result.append(' ');
+                result.append(c);
+                space = false;
+            }
+        }
+        return result.toString();
+    }
+
+    private static class BlockCollector implements NodeVisitor {
+        private final StringBuilder block = new StringBuilder();
+        private final List<String> blocks = new ArrayList<>();
+        private int linkChars;
+        private int linkDepth;
+
+        @Override
+        public void head(Node node, int depth) {
+            if (node instanceof TextNode) {
+                String text = ((TextNode) node).text();
+                block.append(text);
+                if (linkDepth > 0) {
+                    linkChars += text.trim().length();
+                }
+            } else if (node instanceof Element) {
+                Element element = (Element) node;
+                if (element.isBlock()) {
+                    flush();
+                } else if (element.nameIs("br")) {
+                    block.append(' ');
+                }
+                if (element.nameIs("a")) {
+                    linkDepth++;
+                }
+            }
+        }
+
+        @Override
+        public void tail(Node node, int depth) {
+            if (node instanceof Element) {
+                Element element = (Element) node;
+                if (element.nameIs("a")) {
+                    linkDepth--;
+                }
+                if (element.isBlock()) {
+                    flush();
+                }
+            }
+        }
+
+        void flush() {
+            String text = collapseWhitespace(block);
+            int links = linkChars;
+            block.setLength(0);
+            linkChars = 0;
+            if (text.isEmpty() || (double) links / text.length() > MAX_LINK_DENSITY) {
+                return;
+            }
+            blocks.add(text);
+        }
+    }
+}
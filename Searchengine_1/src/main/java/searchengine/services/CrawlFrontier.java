@@ -0,0 +1,370 @@
+package searchengine.services;
+
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.IndexingSettings;
+import searchengine.model.Site;
+
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Общая очередь обхода в базе для распределённой индексации ({@code indexing-settings.distributed}).
+ * Несколько экземпляров приложения с одной базой разбирают её вместе:
+ * <ul>
+ *     <li>адреса - строки {@code crawl_frontier}; повторный адрес сайта отсекает уникальный ключ;</li>
+ *     <li>хост в каждый момент обходит один экземпляр: он арендует его в {@code crawl_host},
+ *     поэтому нагрузка на сайт такая же, как при обходе одним экземпляром;</li>
+ *     <li>адреса своих хостов экземпляр берёт пачками через {@code FOR UPDATE SKIP LOCKED},
+ *     так что его потоки не ждут друг друга и не получают одних и тех же адресов;</li>
+ *     <li>раз в {@code frontierHeartbeatInterval} экземпляр отмечается в {@code crawl_worker}
+ *     и продлевает аренду своих хостов. Хост упавшего экземпляра через {@code frontierLeaseTimeout}
+ *     достаётся другому, и взятые, но не выполненные адреса возвращаются в очередь.</li>
+ * </ul>
+ * Хостов экземпляр держит не больше своей доли: хостов с невыполненными адресами, делённых на
+ * число живых экземпляров. Лишние хосты он перестаёт разбирать и отпускает, когда взятые с них
+ * адреса выполнены. Время аренды считается по часам базы.
+ */
+@Service
+@RequiredArgsConstructor
+public class CrawlFrontier {
+
+    private static final Logger logger = LoggerFactory.getLogger(CrawlFrontier.class);
+
+    static final int QUEUED = 0;
+    static final int LEASED = 1;
+    static final int DONE = 2;
+    /** Корневой адрес сайта, завершение которого уже выполняется, см. {@link #claimFinish}. */
+    static final int FINISHED = 3;
+
+    private static final String INSERT_URL =
+            "INSERT INTO crawl_frontier (site_id, url, host, depth) VALUES (?, ?, ?, ?) ON CONFLICT DO NOTHING";
+    private static final String LEASE_URLS =
+            "UPDATE crawl_frontier SET status = " + LEASED + ", lease_owner = ? WHERE id IN (" +
+            "SELECT f.id FROM crawl_frontier f JOIN crawl_host h ON h.host = f.host " +
+            "WHERE h.lease_owner = ? AND h.lease_until > now() AND f.status = " + QUEUED + "%s " +
+            "ORDER BY f.id LIMIT ? FOR UPDATE OF f SKIP LOCKED) " +
+            "RETURNING id, site_id, url, depth";
+    private static final String ACQUIRE_HOST =
+            "UPDATE crawl_host SET lease_owner = ?, lease_until = now() + ? * INTERVAL '1 millisecond' WHERE host = (" +
+            "SELECT h.host FROM crawl_host h WHERE (h.lease_owner IS NULL OR h.lease_until < now()) " +
+            "AND EXISTS (SELECT 1 FROM crawl_frontier f WHERE f.host = h.host AND f.status < " + DONE + ") " +
+            "ORDER BY h.host LIMIT 1 FOR UPDATE SKIP LOCKED) " +
+            "RETURNING host";
+    private static final String RENEW_ENTRY_HOST =
+            "UPDATE crawl_host h SET lease_until = now() + ? * INTERVAL '1 millisecond' FROM crawl_frontier f " +
+            "WHERE f.id = ? AND f.status = " + LEASED + " AND f.lease_owner = ? " +
+            "AND h.host = f.host AND h.lease_owner = ? AND h.lease_until > now()";
+    private static final String PENDING_HOSTS =
+            "SELECT COUNT(*) FROM crawl_host h " +
+            "WHERE EXISTS (SELECT 1 FROM crawl_frontier f WHERE f.host = h.host AND f.status < " + DONE + ")";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final IndexingSettings indexingSettings;
+
+    private final String workerId = createWorkerId();
+    /** Хосты сверх доли экземпляра: новые адреса с них не берутся. */
+    private final Set<String> draining = ConcurrentHashMap.newKeySet();
+    /** Невыполненные адреса очереди на момент последней отметки экземпляра. */
+    private volatile long pendingUrls;
+
+    public String getWorkerId() {
+        return workerId;
+    }
+
+    /** Есть ли невыполненные адреса, то есть идёт ли распределённая индексация. */
+    public boolean hasPending() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM crawl_frontier WHERE status < ?)", Boolean.class, DONE));
+    }
+
+    /**
+     * Число невыполненных адресов всей очереди для метрики {@code crawler.frontier.size}.
+     * Считается раз в {@code frontierHeartbeatInterval}, так что метрика не нагружает базу.
+     */
+    public long pendingUrls() {
+        return pendingUrls;
+    }
+
+    /**
+     * Очищает очередь и аренды хостов перед полной индексацией.
+     */
+    public void clear() {
+        jdbcTemplate.update("DELETE FROM crawl_frontier");
+        jdbcTemplate.update("DELETE FROM crawl_host");
+        draining.clear();
+    }
+
+    /**
+     * Ставит в очередь главную страницу сайта.
+     */
+    public void seed(Site site) {
+        jdbcTemplate.update("INSERT INTO crawl_host (host) VALUES (?) ON CONFLICT DO NOTHING", host(site.getUrl()));
+        enqueue(site, List.of(site.getUrl()), 0);
+    }
+
+    /**
+     * Ставит в очередь адреса сайта; уже известные сайту адреса пропускаются.
+     *
+     * @return сколько адресов добавлено
+     */
+    public int enqueue(Site site, Collection<String> urls, int depth) {
+        if (urls.isEmpty()) return 0;
+        String host = host(site.getUrl());
+        int[][] counts = jdbcTemplate.batchUpdate(INSERT_URL, new ArrayList<>(urls), urls.size(), (statement, url) -> {
+            statement.setInt(1, site.getId());
+            statement.setString(2, url);
+            statement.setString(3, host);
+            statement.setInt(4, depth);
+        });
+        int added = 0;
+        for (int[] batch : counts) {
+            for (int count : batch) {
+                added += Math.max(count, 0);
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Берёт до {@code limit} адресов с хостов экземпляра. Если на них свободных адресов нет,
+     * отпускает исчерпанные хосты и, пока хостов меньше доли экземпляра, арендует свободный.
+     */
+    List<Entry> lease(int limit) {
+        List<Entry> entries = leaseOwn(limit);
+        if (!entries.isEmpty()) return entries;
+
+        jdbcTemplate.update("UPDATE crawl_host SET lease_owner = NULL, lease_until = NULL WHERE lease_owner = ? " +
+                "AND NOT EXISTS (SELECT 1 FROM crawl_frontier f WHERE f.host = crawl_host.host AND f.status < ?)",
+                workerId, DONE);
+        if (ownedHosts() >= share()) return List.of();
+
+        String host = new TransactionTemplate(transactionManager).execute(status -> acquireHost());
+        return host == null ? List.of() : leaseOwn(limit);
+    }
+
+    private List<Entry> leaseOwn(int limit) {
+        List<String> excluded = new ArrayList<>(draining);
+        List<Object> args = new ArrayList<>(List.of(workerId, workerId));
+        args.addAll(excluded);
+        args.add(limit);
+        String filter = excluded.isEmpty() ? ""
+                : " AND f.host NOT IN (" + String.join(", ", Collections.nCopies(excluded.size(), "?")) + ")";
+        return jdbcTemplate.query(String.format(LEASE_URLS, filter),
+                (rs, rowNum) -> new Entry(rs.getLong(1), rs.getInt(2), rs.getString(3), rs.getInt(4)),
+                args.toArray());
+    }
+
+    private String acquireHost() {
+        String host = jdbcTemplate.query(ACQUIRE_HOST, rs -> rs.next() ? rs.getString(1) : null,
+                workerId, indexingSettings.getFrontierLeaseTimeout());
+        if (host == null) return null;
+
+        // Адреса, взятые прежним владельцем хоста и не выполненные им
+        int requeued = jdbcTemplate.update("UPDATE crawl_frontier SET status = ?, lease_owner = NULL " +
+                "WHERE host = ? AND status = ? AND lease_owner <> ?", QUEUED, host, LEASED, workerId);
+        logger.info("Экземпляр {} арендовал хост {}, возвращено в очередь адресов: {}", workerId, host, requeued);
+        return host;
+    }
+
+    private int ownedHosts() {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM crawl_host WHERE lease_owner = ? AND lease_until > now()", Integer.class, workerId);
+        return count == null ? 0 : count;
+    }
+
+    /** Доля хостов экземпляра: хосты с невыполненными адресами на живые экземпляры, не меньше 1. */
+    private int share() {
+        Integer hosts = jdbcTemplate.queryForObject(PENDING_HOSTS, Integer.class);
+        Integer workers = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM crawl_worker WHERE heartbeat > now() - ? * INTERVAL '1 millisecond'",
+                Integer.class, indexingSettings.getFrontierLeaseTimeout());
+        int live = Math.max(workers == null ? 0 : workers, 1);
+        return Math.max(1, ((hosts == null ? 0 : hosts) + live - 1) / live);
+    }
+
+    /**
+     * Взят ли адрес всё ещё этим экземпляром: аренду могли отобрать или очередь - очистить.
+     * Аренда хоста при этом продлевается на {@code frontierLeaseTimeout}, но только если она
+     * ещё не истекла: истёкшую аренду мог получить другой экземпляр, даже если этот жив, а
+     * отметки в {@link #heartbeat} запаздывают. Так сохранение страницы сразу после проверки
+     * укладывается в аренду; если всё же нет, повтор страницы отсекает уникальный ключ
+     * {@code page (site_id, path)}, а {@link #complete} не примет адрес от прежнего владельца.
+     */
+    boolean owns(Entry entry) {
+        return jdbcTemplate.update(RENEW_ENTRY_HOST,
+                indexingSettings.getFrontierLeaseTimeout(), entry.id, workerId, workerId) > 0;
+    }
+
+    /**
+     * Отмечает адрес выполненным. Ссылки страницы сохраняются для расчёта PageRank
+     * после обхода сайта.
+     *
+     * @param pageId сохранённая страница или null, если страницу загрузить не удалось
+     */
+    void complete(Entry entry, Integer pageId, Collection<String> links) {
+        int updated = jdbcTemplate.update("UPDATE crawl_frontier SET status = ?, lease_owner = NULL, page_id = ?, links = ? " +
+                "WHERE id = ? AND lease_owner = ?", DONE, pageId, links.isEmpty() ? null : String.join("\n", links),
+                entry.id, workerId);
+        if (updated == 0) {
+            logger.warn("Аренда адреса {} потеряна до его выполнения", entry.url);
+        }
+    }
+
+    /**
+     * Забирает завершение сайта, если все его адреса выполнены. Корневой адрес переводится
+     * в {@link #FINISHED} одним запросом, поэтому завершение получает ровно один экземпляр.
+     * Новые адреса ставятся в очередь до выполнения страницы, на которой они найдены,
+     * так что выполненная очередь больше не пополнится.
+     */
+    boolean claimFinish(Site site) {
+        return jdbcTemplate.update("UPDATE crawl_frontier SET status = ? " +
+                "WHERE site_id = ? AND depth = 0 AND status = ? " +
+                "AND NOT EXISTS (SELECT 1 FROM crawl_frontier WHERE site_id = ? AND status < ?) " +
+                "AND EXISTS (SELECT 1 FROM site WHERE id = ? AND status = 'INDEXING')",
+                FINISHED, site.getId(), DONE, site.getId(), DONE, site.getId()) > 0;
+    }
+
+    /** Сохранённые страницы сайта с их ссылками, как их видел обход. */
+    void forEachPage(Site site, PageLinks consumer) {
+        jdbcTemplate.query("SELECT url, page_id, links FROM crawl_frontier WHERE site_id = ? AND page_id IS NOT NULL", rs -> {
+            String links = rs.getString(3);
+            consumer.accept(rs.getString(1), rs.getInt(2), links == null ? List.of() : Arrays.asList(links.split("\n")));
+        }, site.getId());
+    }
+
+    /** Число адресов сайта, которые не удалось загрузить. */
+    int errors(Site site) {
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM crawl_frontier " +
+                "WHERE site_id = ? AND status >= ? AND page_id IS NULL", Integer.class, site.getId(), DONE);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Останавливает распределённую индексацию: невыполненные адреса удаляются, хосты
+     * освобождаются. Адреса, которые экземпляры уже обходят, они не сохранят, см. {@link #owns}.
+     */
+    public void stop() {
+        int removed = jdbcTemplate.update("DELETE FROM crawl_frontier WHERE status < ?", DONE);
+        jdbcTemplate.update("UPDATE crawl_host SET lease_owner = NULL, lease_until = NULL");
+        draining.clear();
+        logger.info("Распределённая индексация остановлена, удалено адресов из очереди: {}", removed);
+    }
+
+    /**
+     * Отметка экземпляра и продление аренды его хостов. Заодно удаляются отметки упавших
+     * экземпляров, выравнивается число хостов экземпляра по его доле и пересчитывается
+     * {@link #pendingUrls()}.
+     */
+    @Scheduled(fixedDelayString = "${indexing-settings.frontier-heartbeat-interval:10000}")
+    public void heartbeat() {
+        if (!indexingSettings.isDistributed()) return;
+
+        long timeout = indexingSettings.getFrontierLeaseTimeout();
+        try {
+            jdbcTemplate.update("INSERT INTO crawl_worker (worker_id, heartbeat) VALUES (?, now()) " +
+                    "ON CONFLICT (worker_id) DO UPDATE SET heartbeat = now()", workerId);
+            jdbcTemplate.update("DELETE FROM crawl_worker WHERE heartbeat < now() - ? * INTERVAL '1 millisecond'", timeout);
+            jdbcTemplate.update("UPDATE crawl_host SET lease_until = now() + ? * INTERVAL '1 millisecond' " +
+                    "WHERE lease_owner = ?", timeout, workerId);
+            rebalance();
+            Long pending = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM crawl_frontier WHERE status < ?", Long.class, DONE);
+            pendingUrls = pending == null ? 0 : pending;
+        } catch (DataAccessException e) {
+            logger.warn("Не удалось продлить аренду хостов экземпляра {}: {}", workerId, e.getMessage());
+        }
+    }
+
+    private void rebalance() {
+        List<String> hosts = jdbcTemplate.queryForList(
+                "SELECT host FROM crawl_host WHERE lease_owner = ? ORDER BY host", String.class, workerId);
+        draining.retainAll(hosts);
+        int share = share();
+        List<String> active = new ArrayList<>(hosts);
+        active.removeAll(draining);
+        while (active.size() > share) {
+            draining.add(active.remove(active.size() - 1));
+        }
+        // Доля могла вырасти, если другие экземпляры закончили работу или упали
+        for (Iterator<String> it = draining.iterator(); it.hasNext() && active.size() < share; ) {
+            active.add(it.next());
+            it.remove();
+        }
+        for (String host : new ArrayList<>(draining)) {
+            int released = jdbcTemplate.update("UPDATE crawl_host SET lease_owner = NULL, lease_until = NULL " +
+                    "WHERE host = ? AND lease_owner = ? " +
+                    "AND NOT EXISTS (SELECT 1 FROM crawl_frontier f WHERE f.host = ? AND f.status = ?)",
+                    host, workerId, host, LEASED);
+            if (released > 0) {
+                draining.remove(host);
+                logger.info("Экземпляр {} отпустил хост {} сверх своей доли {}", workerId, host, share);
+            }
+        }
+    }
+
+    /**
+     * Выход экземпляра из обхода: взятые адреса возвращаются в очередь, хосты освобождаются.
+     */
+    public void leave() {
+        try {
+            int requeued = jdbcTemplate.update("UPDATE crawl_frontier SET status = ?, lease_owner = NULL " +
+                    "WHERE status = ? AND lease_owner = ?", QUEUED, LEASED, workerId);
+            jdbcTemplate.update("UPDATE crawl_host SET lease_owner = NULL, lease_until = NULL WHERE lease_owner = ?", workerId);
+            jdbcTemplate.update("DELETE FROM crawl_worker WHERE worker_id = ?", workerId);
+            logger.info("Экземпляр {} вышел из обхода, возвращено в очередь адресов: {}", workerId, requeued);
+        } catch (DataAccessException e) {
+            logger.warn("Экземпляр {} не смог освободить аренды: {}", workerId, e.getMessage());
+        }
+    }
+
+    static String host(String url) {
+        try {
+            return new URL(url).getHost();
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException("Некорректный адрес сайта: " + url, e);
+        }
+    }
+
+    private static String createWorkerId() {
+        String name;
+        try {
+            name = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            name = "worker";
+        }
+        if (name.length() > 80) name = name.substring(0, 80);
+        return name + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    /** Адрес, взятый из очереди. */
+    static final class Entry {
+        final long id;
+        final int siteId;
+        final String url;
+        final int depth;
+
+        Entry(long id, int siteId, String url, int depth) {
+            this.id = id;
+            this.siteId = siteId;
+            this.url = url;
+            this.depth = depth;
+        }
+    }
+
+    interface PageLinks {
+        void accept(String url, int pageId, List<String> links);
+    }
+}
@@ -14,27 +14,27 @@ import searchengine.repository.LemmaRepository;
 import searchengine.repository.PageRepository;
 import searchengine.repository.SiteRepository;
 
-import javax.persistence.EntityManager;
-import javax.persistence.PersistenceContext;
 import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
 public class DatabaseService {
     private static final Logger logger = LoggerFactory.getLogger(DatabaseService.class);
+    private static final String INSERT_PAGE = "INSERT INTO page (site_id, path, code, content, title, text) " +
+            "VALUES (?, ?, ?, ?, ?, ?) ON CONFLICT (site_id, path) DO NOTHING RETURNING id";
 
-    @PersistenceContext
-    private final EntityManager entityManager;
     private final IndexingState indexingState;
     private final JdbcTemplate jdbcTemplate;
     private final SiteRepository siteRepository;
     private final LemmaRepository lemmaRepository;
     private final IndexRepository indexRepository;
+    private final SiteStatisticsService siteStatisticsService;
 
     @Transactional
     public void truncateAllTables() {
         if (!indexingState.isStopRequested()) {
             jdbcTemplate.execute("TRUNCATE TABLE search_index, page, lemma, site CASCADE");
+            siteStatisticsService.clear();
         }
     }
 
@@ -42,6 +42,7 @@ public class DatabaseService {
     public void saveSite(Site site) {
         try {
             siteRepository.save(site);
+            siteStatisticsService.updateSite(site);
             logger.info("Сохранен сайт: {}", site.getUrl());
         } catch (DataAccessException e) {
             logger.error("Ошибка доступа к данным при сохранении сайта '{}': {}", site.getUrl(), e.getMessage(), e);
@@ -49,14 +50,32 @@ public class DatabaseService {
         }
     }
 
+    /**
+     * Сохраняет страницу, если у сайта ещё нет страницы с тем же путём. В распределённом режиме
+     * один адрес могут одновременно обходить два экземпляра: прежний, у которого истекла аренда,
+     * и новый владелец хоста (см. {@link CrawlFrontier#owns}). Повтор отсекает уникальный ключ
+     * {@code (site_id, path)}, и странице присваивается id уже сохранённой.
+     *
+     * @return true, если страница добавлена
+     */
     @Transactional(rollbackFor = Exception.class, timeout = 5)
-    public void savePage(Page page) {
+    public boolean savePage(Page page) {
         if (indexingState.isStopRequested()) {
             throw new RuntimeException("Индексация прервана");
         }
-        entityManager.persist(page);
-        entityManager.flush();
-        entityManager.clear();
+        Integer siteId = page.getSite().getId();
+        Integer id = jdbcTemplate.query(INSERT_PAGE, rs -> rs.next() ? rs.getInt(1) : null,
+                siteId, page.getPath(), page.getCode(), page.getContent(), page.getTitle(), page.getText());
+        boolean inserted = id != null;
+        if (!inserted) {
+            id = jdbcTemplate.queryForObject("SELECT id FROM page WHERE site_id = ? AND path = ?",
+                    Integer.class, siteId, page.getPath());
+        }
+        page.setId(id);
+        if (inserted) {
+            siteStatisticsService.pageIndexed(page.getSite(), page.getContent());
+        }
+        return inserted;
     }
 
     @Transactional
@@ -74,7 +93,11 @@ public class DatabaseService {
             lemma.setSite(site);
         }
 
-        return lemmaRepository.save(lemma);
+        Lemma saved = lemmaRepository.save(lemma);
+        if (optionalLemma.isEmpty()) {
+            siteStatisticsService.lemmaAdded(site);
+        }
+        return saved;
     }
 
     @Transactional
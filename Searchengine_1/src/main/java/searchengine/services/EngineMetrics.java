@@ -0,0 +1,171 @@
+package searchengine.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Метрики обхода, индексации и поиска. Публикуются через Spring Boot Actuator,
+ * в формате Prometheus доступны по адресу {@code /actuator/prometheus}.
+ * <p>
+ * Все длительности передаются в наносекундах, измеренных через {@link System#nanoTime()}.
+ * Скорость индексации (страниц в секунду) считается из счётчика {@code crawler.pages}
+ * функцией {@code rate()} на стороне Prometheus.
+ */
+@Component
+public class EngineMetrics {
+
+    public enum SearchStage {
+        LEMMATIZE, CORRECT, RETRIEVE, SCORE, SNIPPET
+    }
+
+    private final MeterRegistry registry;
+    private final Map<String, Timer> fetchTimers = new ConcurrentHashMap<>();
+    private final Map<Integer, Counter> statusCounters = new ConcurrentHashMap<>();
+    private final Map<SearchStage, Timer> searchStageTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> searchRejectedCounters = new ConcurrentHashMap<>();
+    private final Timer parseTimer;
+    private final Timer lemmatizationTimer;
+    private final Timer dbWriteTimer;
+    private final Timer searchTimer;
+    private final Counter pagesCounter;
+    private final Counter fetchErrorCounter;
+    private final Counter searchTimeoutCounter;
+
+    public EngineMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.parseTimer = Timer.builder("crawler.parse")
+                .description("Разбор HTML страницы")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.lemmatizationTimer = Timer.builder("indexing.lemmatization")
+                .description("Лемматизация текста страницы")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.dbWriteTimer = Timer.builder("indexing.db.write")
+                .description("Запись страницы, лемм и индекса в базу")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.searchTimer = Timer.builder("search.request")
+                .description("Полное время поискового запроса")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.pagesCounter = Counter.builder("crawler.pages")
+                .description("Проиндексированные страницы")
+                .register(registry);
+        this.fetchErrorCounter = Counter.builder("crawler.fetch.errors")
+                .description("Страницы, которые не удалось загрузить")
+                .register(registry);
+        this.searchTimeoutCounter = Counter.builder("search.timeouts")
+                .description("Поисковые запросы, прерванные по тайм-ауту SQL")
+                .register(registry);
+    }
+
+    public void recordFetch(String host, long nanos) {
+        fetchTimers.computeIfAbsent(host, key -> Timer.builder("crawler.fetch")
+                        .description("Загрузка страницы по HTTP")
+                        .tag("host", key)
+                        .publishPercentileHistogram()
+                        .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordHttpStatus(int status) {
+        statusCounters.computeIfAbsent(status, key -> Counter.builder("crawler.http.responses")
+                        .description("Ответы сайтов по HTTP-кодам")
+                        .tag("status", String.valueOf(key))
+                        .register(registry))
+                .increment();
+    }
+
+    public void recordFetchError() {
+        fetchErrorCounter.increment();
+    }
+
+    public void recordParse(long nanos) {
+        parseTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordLemmatization(long nanos) {
+        lemmatizationTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordDbWrite(long nanos) {
+        dbWriteTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordPageIndexed() {
+        pagesCounter.increment();
+    }
+
+    public void recordSearchStage(SearchStage stage, long nanos) {
+        searchStageTimers.computeIfAbsent(stage, key -> Timer.builder("search.stage")
+                        .description("Этапы поискового запроса")
+                        .tag("stage", key.name().toLowerCase())
+                        .publishPercentileHistogram()
+                        .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordSearch(long nanos) {
+        searchTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param reason {@code queue_full} - очередь заполнена, {@code queue_timeout} - ожидание в очереди истекло
+     */
+    public void recordSearchRejected(String reason) {
+        searchRejectedCounters.computeIfAbsent(reason, key -> Counter.builder("search.rejected")
+                        .description("Поисковые запросы, отклонённые с ответом 429")
+                        .tag("reason", key)
+                        .register(registry))
+                .increment();
+    }
+
+    public void recordSearchTimeout() {
+        searchTimeoutCounter.increment();
+    }
+
+    /**
+     * Регистрирует состояние ограничителя поисковых запросов: текущий предел,
+     * число выполняемых и ожидающих в очереди запросов.
+     */
+    public void registerSearchLimiter(Supplier<Number> limit, Supplier<Number> inFlight, Supplier<Number> waiting) {
+        Gauge.builder("search.concurrency.limit", limit)
+                .description("Адаптивный предел одновременных поисковых запросов")
+                .register(registry);
+        Gauge.builder("search.concurrency.inflight", inFlight)
+                .description("Выполняемые поисковые запросы")
+                .register(registry);
+        Gauge.builder("search.queue.size", waiting)
+                .description("Поисковые запросы, ожидающие в очереди")
+                .register(registry);
+    }
+
+    /**
+     * Регистрирует суммарный размер файлов индекса Lucene.
+     */
+    public void registerLuceneIndexSize(Supplier<Number> indexSize) {
+        Gauge.builder("search.lucene.index.size", indexSize)
+                .description("Размер индекса Lucene")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    /**
+     * Регистрирует размер очереди обхода: число задач, ожидающих выполнения в пуле индексации,
+     * а в распределённом режиме - невыполненных адресов общей очереди {@code crawl_frontier}.
+     */
+    public void registerFrontierSize(Supplier<Number> frontierSize) {
+        Gauge.builder("crawler.frontier.size", frontierSize)
+                .description("Задачи обхода, ожидающие выполнения")
+                .register(registry);
+    }
+}
@@ -0,0 +1,266 @@
+package searchengine.services;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+
+/**
+ * Словарь лемм сайта для поиска с опечатками по схеме SymSpell. Для каждой леммы заранее
+ * перечисляются все варианты её начала длиной {@code prefixLength} с удалёнными
+ * {@code 0..maxDistance} символами; для слова запроса перечисляются такие же удаления,
+ * и совпадающие удаления дают кандидатов, у которых затем проверяется настоящее расстояние
+ * Дамерау-Левенштейна. Перебора словаря при поиске нет.
+ * <p>
+ * Всё хранится в массивах примитивов: леммы подряд в одном {@code char[]} по алфавиту,
+ * удаления - в отсортированном {@code long[]}, где старшие 32 бита - хеш удаления,
+ * младшие - номер леммы. На лемму приходится не больше {@code 1 + p + p(p-1)/2} удалений
+ * (29 при {@code p = 7}), то есть не больше 232 байт при расстоянии 2. Совпадения хешей
+ * безопасны: кандидат всё равно проверяется расстоянием.
+ */
+final class FuzzyLemmaIndex {
+
+    static final FuzzyLemmaIndex EMPTY = build(Map.of(), 2, 7);
+
+    private static final long ID_MASK = 0xFFFF_FFFFL;
+
+    private final char[] text;
+    /** Начало леммы {@code i} в {@link #text}; {@code offsets[size]} - конец последней. */
+    private final int[] offsets;
+    private final int[] frequencies;
+    private final long[] deletes;
+    private final int maxDistance;
+    private final int prefixLength;
+
+    private FuzzyLemmaIndex(char[] text, int[] offsets, int[] frequencies, long[] deletes,
+                            int maxDistance, int prefixLength) {
+        this.text = text;
+        this.offsets = offsets;
+        this.frequencies = frequencies;
+        this.deletes = deletes;
+        this.maxDistance = maxDistance;
+        this.prefixLength = prefixLength;
+    }
+
+    /**
+     * @param lemmaFrequencies леммы и число страниц, на которых они встречаются
+     * @param maxDistance      наибольшее расстояние до кандидата, 1 или 2
+     * @param prefixLength     по скольким первым символам строятся удаления
+     */
+    static FuzzyLemmaIndex build(Map<String, Integer> lemmaFrequencies, int maxDistance, int prefixLength) {
+        String[] lemmas = lemmaFrequencies.keySet().toArray(new String[0]);
+        Arrays.sort(lemmas);
+        int[] offsets = new int[lemmas.length + 1];
+        int[] frequencies = new int[lemmas.length];
+        int length = 0;
+        for (int i = 0; i < lemmas.length; i++) {
+            offsets[i] = length;
+            length += lemmas[i].length();
+            frequencies[i] = lemmaFrequencies.get(lemmas[i]);
+        }
+        offsets[lemmas.length] = length;
+        char[] text = new char[length];
+        for (int i = 0; i < lemmas.length; i++) {
+            lemmas[i].getChars(0, lemmas[i].length(), text, offsets[i]);
+        }
+
+        DeleteSink sink = new DeleteSink(lemmas.length * 8);
+        for (int i = 0; i < lemmas.length; i++) {
+            int id = i;
+            int prefix = Math.min(lemmas[i].length(), prefixLength);
+            forEachDelete(text, offsets[i], prefix, maxDistance, hash -> sink.add(((long) hash << 32) | id));
+        }
+        return new FuzzyLemmaIndex(text, offsets, frequencies, sink.sortedDistinct(), maxDistance, prefixLength);
+    }
+
+    int size() {
+        return frequencies.length;
+    }
+
+    /** Примерный объём массивов словаря в байтах. */
+    long sizeInBytes() {
+        return text.length * 2L + (offsets.length + frequencies.length) * 4L + deletes.length * 8L;
+    }
+
+    /** Число страниц с леммой или 0, если леммы на сайте нет. */
+    int frequency(String lemma) {
+        int index = indexOf(lemma);
+        return index < 0 ? 0 : frequencies[index];
+    }
+
+    /**
+     * Ближайшая к {@code word} лемма словаря, отличная от него: с наименьшим расстоянием,
+     * при равенстве - с наибольшим числом страниц. Кандидаты с числом страниц меньше
+     * {@code minFrequency} не рассматриваются.
+     *
+     * @return номер леммы или -1
+     */
+    int closest(String word, int minFrequency) {
+        char[] query = word.toCharArray();
+        int prefix = Math.min(query.length, prefixLength);
+        BitSet candidates = new BitSet();
+        forEachDelete(query, 0, prefix, maxDistance, hash -> {
+            long from = (long) hash << 32;
+            for (int i = lowerBound(from); i < deletes.length && (deletes[i] & ~ID_MASK) == from; i++) {
+                candidates.set((int) (deletes[i] & ID_MASK));
+            }
+        });
+
+        int best = -1;
+        int bestDistance = maxDistance + 1;
+        for (int id = candidates.nextSetBit(0); id >= 0; id = candidates.nextSetBit(id + 1)) {
+            if (frequencies[id] < minFrequency) continue;
+            int distance = distance(query, id, Math.min(bestDistance, maxDistance));
+            if (distance == 0 || distance > maxDistance) continue;
+            if (distance < bestDistance || distance == bestDistance && frequencies[id] > frequencies[best]) {
+                best = id;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    String lemma(int id) {
+        return new String(text, offsets[id], offsets[id + 1] - offsets[id]);
+    }
+
+    int frequency(int id) {
+        return frequencies[id];
+    }
+
+    private int indexOf(String lemma) {
+        int low = 0;
+        int high = frequencies.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int cmp = compare(middle, lemma);
+            if (cmp < 0) {
+                low = middle + 1;
+            } else if (cmp > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private int compare(int id, String lemma) {
+        int start = offsets[id];
+        int length = offsets[id + 1] - start;
+        int common = Math.min(length, lemma.length());
+        for (int i = 0; i < common; i++) {
+            char c = text[start + i];
+            char other = lemma.charAt(i);
+            if (c != other) return c - other;
+        }
+        return length - lemma.length();
+    }
+
+    private int lowerBound(long key) {
+        int low = 0;
+        int high = deletes.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (deletes[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Расстояние Дамерау-Левенштейна (с перестановкой соседних символов) между словом
+     * и леммой; если оно больше {@code limit}, возвращается {@code limit + 1}.
+     */
+    private int distance(char[] word, int id, int limit) {
+        int start = offsets[id];
+        int length = offsets[id + 1] - start;
+        if (Math.abs(length - word.length) > limit) return limit + 1;
+
+        int[] previous2 = new int[length + 1];
+        int[] previous = new int[length + 1];
+        int[] current = new int[length + 1];
+        for (int j = 0; j <= length; j++) previous[j] = j;
+        for (int i = 1; i <= word.length; i++) {
+            current[0] = i;
+            int rowMin = i;
+            for (int j = 1; j <= length; j++) {
+                char a = word[i - 1];
+                char b = text[start + j - 1];
+                int cost = a == b ? 0 : 1;
+                int value = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a == text[start + j - 2] && word[i - 2] == b) {
+                    value = Math.min(value, previous2[j - 2] + 1);
+                }
+                current[j] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+            if (rowMin > limit) return limit + 1;
+            int[] swap = previous2;
+            previous2 = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[length], limit + 1);
+    }
+
+    /**
+     * Перечисляет хеши строк, получающихся из {@code chars[from, from + length)} удалением
+     * от 0 до {@code maxDistance} символов; пустая строка не перечисляется.
+     */
+    private static void forEachDelete(char[] chars, int from, int length, int maxDistance, HashConsumer consumer) {
+        consumer.accept(hash(chars, from, length, -1, -1));
+        if (maxDistance < 1 || length < 2) return;
+        for (int i = 0; i < length; i++) {
+            consumer.accept(hash(chars, from, length, i, -1));
+            if (maxDistance < 2 || length < 3) continue;
+            for (int j = i + 1; j < length; j++) {
+                consumer.accept(hash(chars, from, length, i, j));
+            }
+        }
+    }
+
+    /** FNV-1a по символам строки без позиций {@code skip1} и {@code skip2}. */
+    private static int hash(char[] chars, int from, int length, int skip1, int skip2) {
+        int hash = 0x811C9DC5;
+        for (int i = 0; i < length; i++) {
+            if (i == skip1 || i == skip2) continue;
+            hash = (hash ^ chars[from + i]) * 0x01000193;
+        }
+        return hash;
+    }
+
+    private interface HashConsumer {
+        void accept(int hash);
+    }
+
+    /** Растущий массив удалений без упаковки в объекты. */
+    private static final class DeleteSink {
+        private long[] values;
+        private int size;
+
+        DeleteSink(int capacity) {
+            values = new long[Math.max(16, capacity)];
+        }
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[size++] = value;
+        }
+
+        long[] sortedDistinct() {
+            Arrays.sort(values, 0, size);
+            int distinct = 0;
+            for (int i = 0; i < size; i++) {
+                if (distinct == 0 || values[i] != values[distinct - 1]) {
+                    values[distinct++] = values[i];
+                }
+            }
+            return Arrays.copyOf(values, distinct);
+        }
+    }
+}
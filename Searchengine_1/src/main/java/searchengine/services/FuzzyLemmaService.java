@@ -0,0 +1,99 @@
+package searchengine.services;
+
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import searchengine.config.SearchSettings;
+import searchengine.model.Site;
+import searchengine.repository.SiteRepository;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Исправление опечаток в леммах запроса. Для каждого сайта в памяти держится
+ * {@link FuzzyLemmaIndex} по его словарю лемм; словари пересобираются при запуске,
+ * после индексации и загрузки снимка, так что исправление к базе не обращается.
+ * <p>
+ * Лемма запроса заменяется, если на сайте её нет, или она встречается не больше чем
+ * на {@code fuzzyRareFrequency} страницах, а похожая лемма - хотя бы в {@link #RARE_RATIO}
+ * раз чаще.
+ */
+@Service
+@RequiredArgsConstructor
+public class FuzzyLemmaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FuzzyLemmaService.class);
+    /** Во сколько раз замена для редкой леммы должна встречаться чаще неё самой. */
+    private static final int RARE_RATIO = 10;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SiteRepository siteRepository;
+    private final SearchSettings searchSettings;
+
+    private final Map<Integer, FuzzyLemmaIndex> indexes = new ConcurrentHashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        rebuild();
+    }
+
+    /**
+     * Пересобирает словари всех сайтов; словари удалённых сайтов выбрасываются.
+     */
+    public void rebuild() {
+        Set<Integer> ids = new HashSet<>();
+        for (Site site : siteRepository.findAll()) {
+            ids.add(site.getId());
+            rebuild(site);
+        }
+        indexes.keySet().retainAll(ids);
+    }
+
+    public void rebuild(Site site) {
+        long start = System.nanoTime();
+        Map<String, Integer> frequencies = new HashMap<>();
+        jdbcTemplate.query("SELECT lemma, frequency FROM lemma WHERE site_id = ?", rs -> {
+            frequencies.merge(rs.getString(1), rs.getInt(2), Integer::sum);
+        }, site.getId());
+        FuzzyLemmaIndex index = FuzzyLemmaIndex.build(frequencies,
+                Math.max(1, Math.min(2, searchSettings.getFuzzyMaxDistance())),
+                searchSettings.getFuzzyPrefixLength());
+        indexes.put(site.getId(), index);
+        logger.info("Словарь опечаток сайта {} собран за {} мс: {} лемм, {} КБ",
+                site.getUrl(), (System.nanoTime() - start) / 1_000_000, index.size(), index.sizeInBytes() / 1024);
+    }
+
+    /**
+     * Леммы запроса для сайта с исправленными опечатками.
+     *
+     * @param corrections сюда добавляются замены: исходная лемма - исправленная
+     */
+    public List<String> correct(Site site, List<String> queryLemmas, Map<String, String> corrections) {
+        FuzzyLemmaIndex index = indexes.getOrDefault(site.getId(), FuzzyLemmaIndex.EMPTY);
+        List<String> corrected = new ArrayList<>(queryLemmas.size());
+        for (String lemma : queryLemmas) {
+            int frequency = index.frequency(lemma);
+            String replacement = null;
+            if (frequency <= searchSettings.getFuzzyRareFrequency()) {
+                int minFrequency = frequency == 0 ? 1 : frequency * RARE_RATIO;
+                int closest = index.closest(lemma, minFrequency);
+                if (closest >= 0) {
+                    replacement = index.lemma(closest);
+                }
+            }
+            if (replacement != null && !corrected.contains(replacement)) {
+                logger.info("Лемма {} исправлена на {} ({})", lemma, replacement, site.getUrl());
+                corrections.putIfAbsent(lemma, replacement);
+                corrected.add(replacement);
+            } else if (!corrected.contains(lemma)) {
+                corrected.add(lemma);
+            }
+        }
+        return corrected;
+    }
+}
@@ -0,0 +1,483 @@
+package searchengine.services;
+
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.IndexingSettings;
+import searchengine.config.SearchSettings;
+import searchengine.model.PostingDelta;
+import searchengine.model.Site;
+import searchengine.model.Status;
+import searchengine.repository.PostingDeltaRepository;
+import searchengine.repository.SiteRepository;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.zip.CRC32C;
+import java.util.stream.Collectors;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Снимок индекса сайта в одном двоичном файле: страницы, словарь лемм и списки страниц лемм.
+ * Снимок позволяет поднять сайт на другой машине или после потери базы без повторного обхода.
+ * <p>
+ * Формат (целые и float - 4 байта, старший байт первым; строка - длина в байтах и UTF-8,
+ * у отсутствующей строки длина -1):
+ * <pre>
+ * MAGIC, VERSION
+ * url, name сайта
+ * число страниц; по странице: id, code, path, content, title, text, page_rank, in_links - по возрастанию id
+ * число лемм; по лемме: lemma, frequency, длина и байты {@link Postings#encode()} с id страниц снимка
+ * CRC32C всех предыдущих байтов
+ * </pre>
+ * При загрузке файл отображается в память, проверяется контрольная сумма, после чего строки
+ * пишутся в базу пакетами в одной транзакции с новыми id страниц и лемм. Списки страниц лемм
+ * становятся строками search_index и, если ведутся сжатые списки, строками posting_list;
+ * записи стоп-лемм затем уходят в холодный слой ({@link StopLemmaService#moveToColdTier}),
+ * а в снимок пишутся из обоих слоёв. Индексы остальных реализаций поиска строятся заново ({@link SearchBackend#siteImported}).
+ * Загрузка избавляет от обхода сайта, но её время растёт с числом строк.
+ */
+@Service
+@RequiredArgsConstructor
+public class IndexSnapshotService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexSnapshotService.class);
+
+    private static final int MAGIC = 0x53454958; // "SEIX"
+    private static final int VERSION = 2;
+    private static final String EXTENSION = ".snap";
+    private static final int BATCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final IndexingSettings indexingSettings;
+    private final SearchSettings searchSettings;
+    private final SiteRepository siteRepository;
+    private final DatabaseService databaseService;
+    private final SiteIndexingService siteIndexingService;
+    private final SiteStatisticsService siteStatisticsService;
+    private final PostingSearchBackend postingSearchBackend;
+    private final PostingDeltaRepository postingDeltaRepository;
+    private final List<SearchBackend> searchBackends;
+    private final PageRankService pageRankService;
+    private final StopLemmaService stopLemmaService;
+    private final SuggestService suggestService;
+    private final FuzzyLemmaService fuzzyLemmaService;
+
+    public ResponseEntity<Map<String, Object>> exportSite(String url) {
+        if (siteIndexingService.isIndexingInProgress()) {
+            return ResponseEntity.badRequest().body(Map.of("result", false, "error", "Индексация уже запущена"));
+        }
+        Optional<Site> site = siteRepository.findByUrl(url);
+        if (site.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("result", false, "error", "Сайт не найден: " + url));
+        }
+        try {
+            Path file = exportSite(site.get());
+            return ResponseEntity.ok(Map.of("result", true, "file", file.toString()));
+        } catch (IOException | UncheckedIOException e) {
+            logger.error("Не удалось сохранить снимок сайта {}", url, e);
+            return ResponseEntity.internalServerError().body(Map.of("result", false, "error", "Ошибка записи снимка: " + e.getMessage()));
+        }
+    }
+
+    public ResponseEntity<Map<String, Object>> importSnapshot(String fileName) {
+        if (siteIndexingService.isIndexingInProgress()) {
+            return ResponseEntity.badRequest().body(Map.of("result", false, "error", "Индексация уже запущена"));
+        }
+        Path snapshotDir = Paths.get(indexingSettings.getSnapshotPath());
+        Path file = snapshotDir.resolve(fileName).normalize();
+        if (!file.startsWith(snapshotDir) || !Files.isRegularFile(file)) {
+            return ResponseEntity.badRequest().body(Map.of("result", false, "error", "Снимок не найден: " + fileName));
+        }
+        try {
+            Site site = importSnapshot(file);
+            return ResponseEntity.ok(Map.of("result", true, "site", site.getUrl()));
+        } catch (IOException | RuntimeException e) {
+            logger.error("Не удалось загрузить снимок {}", file, e);
+            return ResponseEntity.badRequest().body(Map.of("result", false, "error", "Ошибка загрузки снимка: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Загружает снимки сайтов, которых нет в базе, если включено {@code importSnapshotsOnStartup}.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void importOnStartup() {
+        Path snapshotDir = Paths.get(indexingSettings.getSnapshotPath());
+        if (!indexingSettings.isImportSnapshotsOnStartup() || !Files.isDirectory(snapshotDir)) return;
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(snapshotDir, "*" + EXTENSION)) {
+            for (Path file : files) {
+                try {
+                    importSnapshot(file);
+                } catch (IOException | RuntimeException e) {
+                    logger.error("Снимок {} не загружен: {}", file, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Не удалось прочитать каталог снимков {}: {}", snapshotDir, e.getMessage());
+        }
+    }
+
+    /**
+     * Пишет снимок во временный файл и переименовывает его, так что недописанный снимок
+     * не попадёт на место прежнего. Данные читаются в одной транзакции REPEATABLE READ.
+     */
+    Path exportSite(Site site) throws IOException {
+        long start = System.nanoTime();
+        Path snapshotDir = Files.createDirectories(Paths.get(indexingSettings.getSnapshotPath()));
+        Path file = snapshotDir.resolve(fileName(site.getUrl()));
+        Path temp = Files.createTempFile(snapshotDir, "export-", ".tmp");
+
+        CRC32C checksum = new CRC32C();
+        try (OutputStream fileOut = Files.newOutputStream(temp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(fileOut, checksum), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, site.getUrl());
+            writeString(out, site.getName());
+
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            transaction.setReadOnly(true);
+            transaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+            transaction.executeWithoutResult(status -> {
+                try {
+                    writePages(out, site);
+                    writeLemmas(out, site);
+                    out.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            // Контрольная сумма уже посчитана, сами её байты в неё не входят
+            new DataOutputStream(fileOut).writeInt((int) checksum.getValue());
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Снимок сайта {} сохранён в {} ({} байт) за {} мс",
+                site.getUrl(), file, Files.size(file), (System.nanoTime() - start) / 1_000_000);
+        return file;
+    }
+
+    private void writePages(DataOutputStream out, Site site) throws IOException {
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM page WHERE site_id = ?", Integer.class, site.getId());
+        out.writeInt(count == null ? 0 : count);
+        streaming().query("SELECT id, code, path, content, title, text, page_rank, in_links FROM page " +
+                "WHERE site_id = ? ORDER BY id", rs -> {
+            try {
+                out.writeInt(rs.getInt("id"));
+                out.writeInt(rs.getInt("code"));
+                writeString(out, rs.getString("path"));
+                writeString(out, rs.getString("content"));
+                writeString(out, rs.getString("title"));
+                writeString(out, rs.getString("text"));
+                out.writeFloat(rs.getFloat("page_rank"));
+                out.writeInt(rs.getInt("in_links"));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, site.getId());
+    }
+
+    private void writeLemmas(DataOutputStream out, Site site) throws IOException {
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM lemma WHERE site_id = ?", Integer.class, site.getId());
+        out.writeInt(count == null ? 0 : count);
+        if (!searchSettings.writesSearchIndex()) {
+            writePostingLists(out, site);
+            return;
+        }
+
+        // Строки идут по лемме, внутри леммы - по странице; список леммы пишется, когда лемма сменилась
+        LemmaWriter writer = new LemmaWriter(out);
+        streaming().query("SELECT l.id, l.lemma, l.frequency, si.page_id, si.ranking FROM lemma l " +
+                "LEFT JOIN (SELECT lemma_id, page_id, ranking FROM search_index " +
+                "UNION ALL SELECT lemma_id, page_id, ranking FROM search_index_cold) si ON si.lemma_id = l.id " +
+                "WHERE l.site_id = ? ORDER BY l.id, si.page_id", rs -> {
+            int lemmaId = rs.getInt("id");
+            if (lemmaId != writer.lemmaId) {
+                writer.flush();
+                writer.start(lemmaId, rs.getString("lemma"), rs.getInt("frequency"));
+            }
+            int pageId = rs.getInt("page_id");
+            if (!rs.wasNull()) {
+                writer.add(pageId, Postings.quantize(rs.getFloat("ranking")));
+            }
+        }, site.getId());
+        writer.flush();
+    }
+
+    /**
+     * Списки страниц лемм без строк search_index: сжатые списки с применёнными невлитыми изменениями.
+     */
+    private void writePostingLists(DataOutputStream out, Site site) {
+        Map<Integer, List<PostingDelta>> deltas = postingDeltaRepository.findAllBySiteIdOrderById(site.getId()).stream()
+                .collect(Collectors.groupingBy(PostingDelta::getLemmaId));
+        streaming().query("SELECT l.id, l.lemma, l.frequency, pl.data FROM lemma l " +
+                "LEFT JOIN posting_list pl ON pl.lemma_id = l.id " +
+                "WHERE l.site_id = ? ORDER BY l.id", rs -> {
+            byte[] data = rs.getBytes("data");
+            Postings postings = (data == null ? Postings.EMPTY : Postings.decode(data))
+                    .apply(deltas.getOrDefault(rs.getInt("id"), List.of()));
+            writeLemma(out, rs.getString("lemma"), rs.getInt("frequency"), postings);
+        }, site.getId());
+    }
+
+    private static void writeLemma(DataOutputStream out, String lemma, int frequency, Postings postings) {
+        try {
+            writeString(out, lemma);
+            out.writeInt(frequency);
+            byte[] data = postings.encode();
+            out.writeInt(data.length);
+            out.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Курсор с выборкой порциями, чтобы не держать все строки сайта в памяти. */
+    private JdbcTemplate streaming() {
+        JdbcTemplate template = new JdbcTemplate(Objects.requireNonNull(jdbcTemplate.getDataSource()));
+        template.setFetchSize(BATCH_SIZE);
+        return template;
+    }
+
+    Site importSnapshot(Path file) throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Снимок больше 2 ГБ не поддерживается: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            verify(buffer, file);
+
+            buffer.position(8);
+            String url = readString(buffer);
+            String name = readString(buffer);
+            if (siteRepository.findByUrl(url).isPresent()) {
+                throw new IllegalStateException("Сайт " + url + " уже есть в базе");
+            }
+
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            Site site = transaction.execute(status -> {
+                Site imported = new Site(url, name, Status.INDEXED, LocalDateTime.now(), null);
+                databaseService.saveSite(imported);
+                PageIds pageIds = importPages(buffer, imported);
+                importLemmas(buffer, imported, pageIds);
+                return imported;
+            });
+            logger.info("Снимок {} загружен за {} мс: сайт {}", file, (System.nanoTime() - start) / 1_000_000, url);
+            pageRankService.reload(site);
+            searchBackends.forEach(backend -> backend.siteImported(site));
+            stopLemmaService.moveToColdTier(site);
+            searchBackends.forEach(backend -> backend.siteIndexed(site));
+            suggestService.rebuild(site);
+            fuzzyLemmaService.rebuild(site);
+            return site;
+        }
+    }
+
+    private static void verify(ByteBuffer buffer, Path file) throws IOException {
+        int size = buffer.limit();
+        if (size < 12 || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Файл не является снимком индекса: " + file);
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Неподдерживаемая версия снимка " + buffer.getInt(4) + ": " + file);
+        }
+        CRC32C checksum = new CRC32C();
+        checksum.update(buffer.duplicate().position(0).limit(size - 4));
+        if ((int) checksum.getValue() != buffer.getInt(size - 4)) {
+            throw new IOException("Контрольная сумма снимка не совпадает: " + file);
+        }
+    }
+
+    private PageIds importPages(ByteBuffer buffer, Site site) {
+        int count = buffer.getInt();
+        PageIds pageIds = new PageIds(count, reserveIds("page_id_seq", count));
+        List<Object[]> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < count; i++) {
+            pageIds.oldIds[i] = buffer.getInt();
+            int code = buffer.getInt();
+            String path = readString(buffer);
+            String content = readString(buffer);
+            String title = readString(buffer);
+            String text = readString(buffer);
+            float pageRank = buffer.getFloat();
+            int inLinks = buffer.getInt();
+            batch.add(new Object[]{pageIds.newIds[i], site.getId(), path, code, content, title, text, pageRank, inLinks});
+            siteStatisticsService.pageIndexed(site, content);
+            if (batch.size() == BATCH_SIZE) {
+                insertPages(batch);
+            }
+        }
+        insertPages(batch);
+        return pageIds;
+    }
+
+    private void insertPages(List<Object[]> batch) {
+        if (batch.isEmpty()) return;
+        jdbcTemplate.batchUpdate("INSERT INTO page (id, site_id, path, code, content, title, text, page_rank, in_links) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)", batch);
+        batch.clear();
+    }
+
+    private void importLemmas(ByteBuffer buffer, Site site, PageIds pageIds) {
+        int count = buffer.getInt();
+        int[] lemmaIds = reserveIds("lemma_id_seq", count);
+        boolean postingLists = postingSearchBackend.isEnabled();
+        boolean searchIndex = searchSettings.writesSearchIndex();
+
+        List<Object[]> lemmas = new ArrayList<>(BATCH_SIZE);
+        List<Object[]> entries = new ArrayList<>(BATCH_SIZE);
+        List<Object[]> lists = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < count; i++) {
+            String lemma = readString(buffer);
+            int frequency = buffer.getInt();
+            byte[] data = new byte[buffer.getInt()];
+            buffer.get(data);
+            Postings postings = Postings.decode(data);
+
+            lemmas.add(new Object[]{lemmaIds[i], site.getId(), lemma, frequency});
+            siteStatisticsService.lemmaAdded(site);
+            // Новые id страниц выданы в том же порядке, что и старые, поэтому список остаётся упорядоченным
+            int[] newPageIds = new int[postings.size()];
+            int[] ranks = new int[postings.size()];
+            for (int j = 0; j < postings.size(); j++) {
+                newPageIds[j] = pageIds.map(postings.pageId(j));
+                ranks[j] = postings.rank(j);
+                if (searchIndex) {
+                    entries.add(new Object[]{newPageIds[j], lemmaIds[i], (float) ranks[j]});
+                }
+            }
+            if (postingLists && postings.size() > 0) {
+                lists.add(new Object[]{lemmaIds[i], site.getId(), postings.size(),
+                        Postings.of(newPageIds, ranks, ranks.length).encode()});
+            }
+
+            if (lemmas.size() >= BATCH_SIZE || entries.size() >= BATCH_SIZE) {
+                insertLemmas(lemmas, entries, lists);
+            }
+        }
+        insertLemmas(lemmas, entries, lists);
+    }
+
+    private void insertLemmas(List<Object[]> lemmas, List<Object[]> entries, List<Object[]> lists) {
+        if (!lemmas.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO lemma (id, site_id, lemma, frequency) VALUES (?, ?, ?, ?)", lemmas);
+            lemmas.clear();
+        }
+        if (!entries.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO search_index (page_id, lemma_id, ranking) VALUES (?, ?, ?)", entries);
+            entries.clear();
+        }
+        if (!lists.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO posting_list (lemma_id, site_id, page_count, data) VALUES (?, ?, ?, ?)", lists);
+            lists.clear();
+        }
+    }
+
+    /** Новые значения последовательности по возрастанию. */
+    private int[] reserveIds(String sequence, int count) {
+        if (count == 0) return new int[0];
+        List<Integer> ids = jdbcTemplate.queryForList(
+                "SELECT nextval('" + sequence + "')::int FROM generate_series(1, ?)", Integer.class, count);
+        return ids.stream().mapToInt(Integer::intValue).sorted().toArray();
+    }
+
+    private static String fileName(String url) {
+        return url.replaceFirst("^https?://", "").replaceAll("[^A-Za-z0-9.-]", "_") + EXTENSION;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Соответствие id страниц снимка и базы; оба массива по возрастанию. */
+    private static class PageIds {
+        final int[] oldIds;
+        final int[] newIds;
+
+        PageIds(int count, int[] newIds) {
+            this.oldIds = new int[count];
+            this.newIds = newIds;
+        }
+
+        int map(int oldId) {
+            int index = Arrays.binarySearch(oldIds, oldId);
+            if (index < 0) {
+                throw new IllegalStateException("В снимке нет страницы " + oldId);
+            }
+            return newIds[index];
+        }
+    }
+
+    /** Собирает список страниц текущей леммы и пишет его, когда лемма закончилась. */
+    private static class LemmaWriter {
+        private final DataOutputStream out;
+        private int lemmaId = -1;
+        private String lemma;
+        private int frequency;
+        private int[] pageIds = new int[64];
+        private int[] ranks = new int[64];
+        private int size;
+
+        LemmaWriter(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void start(int lemmaId, String lemma, int frequency) {
+            this.lemmaId = lemmaId;
+            this.lemma = lemma;
+            this.frequency = frequency;
+            size = 0;
+        }
+
+        void add(int pageId, int rank) {
+            if (size == pageIds.length) {
+                pageIds = Arrays.copyOf(pageIds, size * 2);
+                ranks = Arrays.copyOf(ranks, size * 2);
+            }
+            pageIds[size] = pageId;
+            ranks[size] = rank;
+            size++;
+        }
+
+        void flush() {
+            if (lemmaId < 0) return;
+            writeLemma(out, lemma, frequency, Postings.of(pageIds, ranks, size));
+            lemmaId = -1;
+        }
+    }
+}
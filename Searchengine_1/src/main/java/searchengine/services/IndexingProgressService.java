@@ -0,0 +1,181 @@
+package searchengine.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import searchengine.dto.statistics.IndexingProgress;
+import searchengine.dto.statistics.SiteProgress;
+import searchengine.model.Status;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Рассылка прогресса индексации по Server-Sent Events ({@code /api/indexing/progress}).
+ * <p>
+ * Прогресс считается из счётчиков {@link SiteStatisticsService} в памяти одним циклом
+ * рассылки для всех подписчиков, поэтому число открытых панелей не влияет на нагрузку на базу.
+ * Новый подписчик получает полный снимок, дальше приходят только сайты, у которых что-то изменилось.
+ * Скорость индексации сглаживается экспоненциальным средним, оставшееся время оценивается
+ * как размер очереди обхода, делённый на скорость. Очередь включает ещё не проверенные
+ * дубликаты адресов, поэтому оценка получается сверху.
+ */
+@Service
+@RequiredArgsConstructor
+public class IndexingProgressService {
+    private static final Logger logger = LoggerFactory.getLogger(IndexingProgressService.class);
+
+    private static final long EMITTER_TIMEOUT = TimeUnit.MINUTES.toMillis(30);
+    private static final double RATE_SMOOTHING = 0.3;
+    private static final int HEARTBEAT_TICKS = 15;
+
+    private final SiteStatisticsService siteStatisticsService;
+    private final ObjectMapper objectMapper;
+
+    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+    private final Map<Integer, SiteRate> rates = new ConcurrentHashMap<>();
+    private volatile Map<Integer, SiteProgress> latest = Map.of();
+    private int idleTicks;
+
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT);
+        emitter.onCompletion(() -> emitters.remove(emitter));
+        emitter.onTimeout(() -> emitters.remove(emitter));
+        emitter.onError(e -> emitters.remove(emitter));
+
+        Map<Integer, SiteProgress> current = latest.isEmpty() ? collect() : latest;
+        try {
+            emitter.send(event(json(progress(current.values(), true))));
+            emitters.add(emitter);
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+        }
+        return emitter;
+    }
+
+    @Scheduled(fixedDelayString = "${indexing-settings.progress-interval:1000}")
+    public void broadcast() {
+        Map<Integer, SiteProgress> previous = latest;
+        Map<Integer, SiteProgress> current = collect();
+        latest = current;
+        if (emitters.isEmpty()) return;
+
+        List<SiteProgress> changed = new ArrayList<>();
+        current.forEach((siteId, progress) -> {
+            if (!progress.equals(previous.get(siteId))) {
+                changed.add(progress);
+            }
+        });
+
+        // Данные сериализуются один раз, а событие собирается для каждого подписчика:
+        // SseEventBuilder#build дописывает в построитель завершающий перевод строки
+        String data;
+        if (!changed.isEmpty()) {
+            idleTicks = 0;
+            data = json(progress(changed, false));
+        } else if (++idleTicks >= HEARTBEAT_TICKS) {
+            idleTicks = 0;
+            data = null;
+        } else {
+            return;
+        }
+
+        for (SseEmitter emitter : emitters) {
+            try {
+                // Комментарий не виден клиенту, но позволяет обнаружить закрытые соединения
+                emitter.send(data == null ? SseEmitter.event().comment("heartbeat") : event(data));
+            } catch (IOException | IllegalStateException e) {
+                emitters.remove(emitter);
+                logger.debug("Подписчик прогресса индексации отключился: {}", e.getMessage());
+            }
+        }
+    }
+
+    private Map<Integer, SiteProgress> collect() {
+        long now = System.nanoTime();
+        Map<Integer, SiteProgress> result = new LinkedHashMap<>();
+        for (SiteStatisticsService.SiteCounters site : siteStatisticsService.snapshot()) {
+            SiteRate rate = rates.computeIfAbsent(site.getSiteId(), id -> new SiteRate(site.getPages(), now));
+            boolean indexing = Status.INDEXING.toString().equals(site.getStatus());
+            double pagesPerSecond = indexing ? rate.update(site.getPages(), now) : rate.reset(site.getPages(), now);
+
+            SiteProgress progress = new SiteProgress();
+            progress.setUrl(site.getUrl());
+            progress.setName(site.getName());
+            progress.setStatus(site.getStatus());
+            progress.setPages(site.getPages());
+            progress.setQueued(site.getQueued());
+            progress.setErrors(site.getErrors());
+            progress.setPagesPerSecond(Math.round(pagesPerSecond * 10) / 10.0);
+            if (indexing && pagesPerSecond > 0) {
+                progress.setEtaSeconds(Math.round(site.getQueued() / pagesPerSecond));
+            }
+            result.put(site.getSiteId(), progress);
+        }
+        rates.keySet().retainAll(result.keySet());
+        return result;
+    }
+
+    private static IndexingProgress progress(Collection<SiteProgress> sites, boolean full) {
+        IndexingProgress progress = new IndexingProgress();
+        progress.setTimestamp(System.currentTimeMillis());
+        progress.setFull(full);
+        progress.setSites(new ArrayList<>(sites));
+        return progress;
+    }
+
+    /**
+     * Событие сериализуется один раз и отправляется всем подписчикам готовой строкой.
+     */
+    private static SseEmitter.SseEventBuilder event(String data) {
+        return SseEmitter.event()
+                .name("progress")
+                .data(data, MediaType.APPLICATION_JSON);
+    }
+
+    private String json(IndexingProgress progress) {
+        try {
+            return objectMapper.writeValueAsString(progress);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Не удалось сериализовать прогресс индексации", e);
+        }
+    }
+
+    private static class SiteRate {
+        private int pages;
+        private long time;
+        private double pagesPerSecond;
+
+        SiteRate(int pages, long time) {
+            this.pages = pages;
+            this.time = time;
+        }
+
+        synchronized double update(int currentPages, long now) {
+            double seconds = (now - time) / 1e9;
+            if (seconds > 0) {
+                double instant = Math.max(0, currentPages - pages) / seconds;
+                pagesPerSecond = RATE_SMOOTHING * instant + (1 - RATE_SMOOTHING) * pagesPerSecond;
+            }
+            pages = currentPages;
+            time = now;
+            return pagesPerSecond;
+        }
+
+        synchronized double reset(int currentPages, long now) {
+            pages = currentPages;
+            time = now;
+            pagesPerSecond = 0;
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package searchengine.services;
+
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionTimedOutException;
+import searchengine.model.Lemma;
+import searchengine.model.Site;
+import searchengine.repository.IndexRepository;
+import searchengine.repository.LemmaRepository;
+import searchengine.repository.PageRepository;
+
+import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.IntToDoubleFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Поиск SQL-запросами по таблицам {@code lemma} и {@code search_index}, которые заполняет
+ * конвейер индексации, поэтому отдельного индекса не ведёт.
+ */
+@RequiredArgsConstructor
+@Service
+public class JpaSearchBackend implements SearchBackend {
+
+    private static final Logger logger = LoggerFactory.getLogger(JpaSearchBackend.class);
+
+    private final LemmaRepository lemmaRepository;
+    private final IndexRepository indexRepository;
+    private final PageRepository pageRepository;
+    private final StopLemmaService stopLemmaService;
+    private final EngineMetrics engineMetrics;
+    private final PageRankService pageRankService;
+
+    @Override
+    public String getName() {
+        return "jpa";
+    }
+
+    /**
+     * Поиск с частотами лемм и числом страниц этого сайта.
+     */
+    @Override
+    public SiteHits search(Site site, List<String> queryLemmas, int topK) {
+        SearchProfiler profiler = SearchProfiler.current();
+        long stageStart = System.nanoTime();
+
+        List<Lemma> filteredLemmas = filterCommonLemmas(site, queryLemmas);
+        if (profiler != null) profiler.stage("filterCommonLemmas");
+        if (filteredLemmas.isEmpty()) {
+            logger.info("На сайте {} нет лемм запроса", site.getUrl());
+            return SiteHits.EMPTY;
+        }
+        filteredLemmas.sort(Comparator.comparingInt(Lemma::getFrequency));
+        List<String> evaluationOrder = filteredLemmas.stream().map(Lemma::getLemma).collect(Collectors.toList());
+        logger.info("Леммы после сортировки ({}): {}", site.getUrl(), evaluationOrder);
+        if (profiler != null) {
+            profiler.evaluationOrder(site.getUrl(), evaluationOrder);
+            // Длины списков нужны только профилю: запрос не входит в этапы и их число SQL-запросов
+            for (Object[] count : profiler.excluded(() -> indexRepository.countByLemmas(filteredLemmas))) {
+                profiler.postings((String) count[0], site.getUrl(), (Long) count[1]);
+            }
+        }
+
+        // Записи стоп-лемм после обхода лежат в холодном слое, см. StopLemmaService
+        Map<Integer, Float> stopLemmaRanks = isOnlyStopLemma(site, filteredLemmas)
+                ? stopLemmaService.ranks(filteredLemmas.get(0)) : null;
+        List<Integer> pageIds = stopLemmaRanks != null
+                ? new ArrayList<>(stopLemmaRanks.keySet()) : findPagesContainingAll(filteredLemmas);
+        if (profiler != null) {
+            profiler.rows(pageIds.size());
+            profiler.stage("findPages");
+        }
+        stageStart = recordStage(EngineMetrics.SearchStage.RETRIEVE, stageStart);
+        if (pageIds.isEmpty()) {
+            logger.info("На сайте {} нет страниц, содержащих все леммы", site.getUrl());
+            return SiteHits.EMPTY;
+        }
+
+        BiFunction<Integer, Lemma, Float> rankLookup = stopLemmaRanks != null
+                ? (pageId, lemma) -> stopLemmaRanks.get(pageId) : indexRepository::findRankByPageIdAndLemma;
+        Map<Integer, Double> relevanceMap = calculateRelevance(pageIds, filteredLemmas, rankLookup);
+        IntToDoubleFunction boosts = pageRankService.boosts(site);
+        List<ScoredPage> top = pageIds.stream()
+                .map(pageId -> new ScoredPage(pageId, relevanceMap.get(pageId) * boosts.applyAsDouble(pageId)))
+                .sorted(Comparator.comparingDouble((ScoredPage scored) -> scored.relevance).reversed())
+                .limit(topK)
+                .collect(Collectors.toList());
+        double maxRelevance = top.isEmpty() ? 0 : top.get(0).relevance;
+        recordStage(EngineMetrics.SearchStage.SCORE, stageStart);
+        if (profiler != null) profiler.stage("calculateRelevance");
+        logger.info("Сайт {}: найдено страниц {}", site.getUrl(), pageIds.size());
+        return new SiteHits(top, pageIds.size(), maxRelevance);
+    }
+
+
+    private long recordStage(EngineMetrics.SearchStage stage, long stageStart) {
+        long now = System.nanoTime();
+        engineMetrics.recordSearchStage(stage, now - stageStart);
+        return now;
+    }
+
+    /**
+     * Отбрасывает стоп-леммы: долю страниц для каждой леммы считаем относительно числа страниц
+     * сайта. Если запрос состоит только из стоп-лемм, остаётся самая редкая.
+     * Леммы запроса читаются одним SQL-запросом.
+     */
+    List<Lemma> filterCommonLemmas(Site site, List<String> lemmas) {
+        SearchProfiler profiler = SearchProfiler.current();
+        List<Lemma> filteredLemmas = new ArrayList<>();
+        List<Lemma> stopLemmas = new ArrayList<>();
+
+        List<Lemma> lemmaEntities = lemmaRepository.findAllByLemmaInAndSite(lemmas, site);
+        if (profiler != null) profiler.rows(lemmaEntities.size());
+        if (lemmaEntities.isEmpty()) {
+            return filteredLemmas;
+        }
+        long totalPages = pageRepository.countBySite(site);
+
+        for (Lemma lemmaObj : lemmaEntities) {
+            logger.info("Лемма: {}, Частота: {}, Страниц на сайте: {}", lemmaObj.getLemma(), lemmaObj.getFrequency(), totalPages);
+            boolean stopLemma = stopLemmaService.isStopLemma(lemmaObj.getFrequency(), totalPages);
+            if (profiler != null) {
+                profiler.lemma(lemmaObj.getLemma(), site.getUrl(), lemmaObj.getFrequency(), totalPages, stopLemma);
+            }
+            if (stopLemma) {
+                stopLemmas.add(lemmaObj);
+                logger.info("Лемма исключена из-за высокой частоты: {}", lemmaObj.getLemma());
+            } else {
+                filteredLemmas.add(lemmaObj);
+                logger.info("Лемма добавлена: {}", lemmaObj.getLemma());
+            }
+        }
+
+        if (filteredLemmas.isEmpty() && !stopLemmas.isEmpty()) {
+            String rarest = stopLemmas.stream()
+                    .min(Comparator.comparingInt(Lemma::getFrequency))
+                    .map(Lemma::getLemma)
+                    .orElseThrow();
+            stopLemmas.stream()
+                    .filter(lemmaObj -> lemmaObj.getLemma().equals(rarest))
+                    .forEach(filteredLemmas::add);
+            logger.info("Запрос состоит только из стоп-лемм, оставлена самая редкая: {}", rarest);
+        }
+
+        logger.info("Отфильтрованные леммы: {}", filteredLemmas.stream()
+                .map(Lemma::getLemma)
+                .collect(Collectors.toList()));
+
+        return filteredLemmas;
+    }
+
+    /** Запрос состоит из одних стоп-лемм, и {@link #filterCommonLemmas} оставил самую редкую. */
+    private boolean isOnlyStopLemma(Site site, List<Lemma> lemmas) {
+        return lemmas.size() == 1
+                && stopLemmaService.isStopLemma(lemmas.get(0).getFrequency(), pageRepository.countBySite(site));
+    }
+
+    private List<Integer> findPagesContainingAll(List<Lemma> lemmas) {
+        long distinctLemmas = lemmas.stream()
+                .map(Lemma::getLemma)
+                .distinct()
+                .count();
+        return new ArrayList<>(indexRepository.findPageIdsContainingAll(lemmas, distinctLemmas));
+    }
+
+    /**
+     * Абсолютная релевантность страниц: сумма рангов лемм запроса на странице.
+     */
+    static Map<Integer, Double> calculateRelevance(List<Integer> pageIds, List<Lemma> lemmas,
+                                                  BiFunction<Integer, Lemma, Float> rankLookup) {
+        Map<Integer, Double> relevanceMap = new HashMap<>();
+        long ranks = 0;
+
+        for (Integer pageId : pageIds) {
+            // Поиск по сайту, не уложившийся в общий срок, прерывается (см. SearchService#searchSites)
+            if (Thread.currentThread().isInterrupted()) {
+                throw new TransactionTimedOutException("Поиск по сайту отменён");
+            }
+            double relevance = 0;
+            for (Lemma lemma : lemmas) {
+                Float rank = rankLookup.apply(pageId, lemma);
+                if (rank != null) {
+                    relevance += rank;
+                    ranks++;
+                }
+            }
+            relevanceMap.put(pageId, relevance);
+        }
+
+        SearchProfiler profiler = SearchProfiler.current();
+        if (profiler != null) profiler.rows(ranks);
+
+        return relevanceMap;
+    }
+}
@@ -0,0 +1,21 @@
+package searchengine.services;
+
+import org.apache.lucene.analysis.Analyzer;
+
+/**
+ * Анализатор Lucene на морфологии проекта: текст разбирается на те же леммы, что и при
+ * индексации в базу, поэтому запрос можно искать по леммам из {@link Lemmatizer#getQueryLemmas}.
+ */
+public class LemmaAnalyzer extends Analyzer {
+
+    private final Lemmatizer lemmatizer;
+
+    public LemmaAnalyzer(Lemmatizer lemmatizer) {
+        this.lemmatizer = lemmatizer;
+    }
+
+    @Override
+    protected TokenStreamComponents createComponents(String fieldName) {
+        return new TokenStreamComponents(new LemmaTokenizer(lemmatizer));
+    }
+}
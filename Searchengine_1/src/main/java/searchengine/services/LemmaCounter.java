@@ -0,0 +1,105 @@
+package searchengine.services;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Счётчик лемм на открытой адресации: ключи хранятся в массиве строк, значения в массиве
+ * {@code int}, поэтому подсчёт не создаёт объектов {@link Integer} и узлов хеш-таблицы.
+ * Не потокобезопасен: каждый поток считает в свой экземпляр, результаты объединяются
+ * через {@link #addAll(LemmaCounter)}.
+ */
+public final class LemmaCounter {
+
+    private static final int DEFAULT_CAPACITY = 64;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private String[] keys;
+    private int[] counts;
+    private int size;
+
+    public LemmaCounter() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LemmaCounter(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(DEFAULT_CAPACITY, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        keys = new String[capacity];
+        counts = new int[capacity];
+    }
+
+    public void increment(String key) {
+        add(key, 1);
+    }
+
+    public void add(String key, int delta) {
+        int slot = findSlot(keys, key);
+        if (keys[slot] == null) {
+            keys[slot] = key;
+            counts[slot] = delta;
+            if (++size > keys.length * LOAD_FACTOR) {
+                resize();
+            }
+        } else {
+            counts[slot] += delta;
+        }
+    }
+
+    public int get(String key) {
+        int slot = findSlot(keys, key);
+        return keys[slot] == null ? 0 : counts[slot];
+    }
+
+    public void addAll(LemmaCounter other) {
+        String[] otherKeys = other.keys;
+        int[] otherCounts = other.counts;
+        for (int i = 0; i < otherKeys.length; i++) {
+            if (otherKeys[i] != null) {
+                add(otherKeys[i], otherCounts[i]);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void forEach(ObjIntConsumer<String> action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                action.accept(keys[i], counts[i]);
+            }
+        }
+    }
+
+    public Map<String, Integer> toMap() {
+        Map<String, Integer> map = new HashMap<>(Math.max(16, (int) (size / 0.75f) + 1));
+        forEach(map::put);
+        return map;
+    }
+
+    private void resize() {
+        String[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new String[oldKeys.length * 2];
+        counts = new int[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = findSlot(keys, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    private static int findSlot(String[] table, String key) {
+        int mask = table.length - 1;
+        int hash = key.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (table[slot] != null && !table[slot].equals(key)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
@@ -0,0 +1,84 @@
+package searchengine.services;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Токенизатор Lucene, выдающий леммы слов через {@link Lemmatizer#forEachLemma}: термы индекса
+ * совпадают с леммами таблицы {@code lemma}. Несколько нормальных форм одного слова занимают
+ * одну позицию.
+ */
+final class LemmaTokenizer extends Tokenizer {
+
+    private final Lemmatizer lemmatizer;
+    private final CharTermAttribute term = addAttribute(CharTermAttribute.class);
+    private final OffsetAttribute offset = addAttribute(OffsetAttribute.class);
+    private final PositionIncrementAttribute position = addAttribute(PositionIncrementAttribute.class);
+    private final List<Token> tokens = new ArrayList<>();
+    private int next;
+    private int finalOffset;
+
+    LemmaTokenizer(Lemmatizer lemmatizer) {
+        this.lemmatizer = lemmatizer;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[8192];
+        for (int read = input.read(buffer); read != -1; read = input.read(buffer)) {
+            text.append(buffer, 0, read);
+        }
+        tokens.clear();
+        next = 0;
+        finalOffset = correctOffset(text.length());
+        lemmatizer.forEachLemma(text.toString(),
+                (lemma, start, end, newWord) -> tokens.add(new Token(lemma, start, end, newWord)));
+    }
+
+    @Override
+    public boolean incrementToken() {
+        if (next >= tokens.size()) {
+            return false;
+        }
+        clearAttributes();
+        Token token = tokens.get(next++);
+        term.setEmpty().append(token.lemma);
+        offset.setOffset(correctOffset(token.start), correctOffset(token.end));
+        position.setPositionIncrement(token.newWord ? 1 : 0);
+        return true;
+    }
+
+    @Override
+    public void end() throws IOException {
+        super.end();
+        offset.setOffset(finalOffset, finalOffset);
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        tokens.clear();
+    }
+
+    private static class Token {
+        final String lemma;
+        final int start;
+        final int end;
+        final boolean newWord;
+
+        Token(String lemma, int start, int end, boolean newWord) {
+            this.lemma = lemma;
+            this.start = start;
+            this.end = end;
+            this.newWord = newWord;
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package searchengine.services;
 
 import lombok.RequiredArgsConstructor;
-import org.apache.lucene.morphology.LuceneMorphology;
+import org.apache.lucene.morphology.Morphology;
 import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
 import org.springframework.stereotype.Service;
 import searchengine.config.IndexingState;
@@ -9,17 +9,29 @@ import searchengine.repository.LemmaRepository;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.RecursiveTask;
 
 @Service
 @RequiredArgsConstructor
 public class Lemmatizer {
 
-    private static final List<String> STOP_WORDS = Arrays.asList(
-            "и", "в", "на", "с", "по", "за", "из", "у", "для"
+    private static final Set<String> STOP_WORDS = Set.of(
+            "и", "в", "на", "с", "по", "за", "из", "у", "для",
+            "a", "an", "the", "and", "or", "of", "to", "in", "on", "for", "at", "by", "with", "be"
     );
-
-    private final LuceneMorphology luceneMorph;
+    private static final int MIN_LATIN_WORD_LENGTH = 2;
+    /** Тексты длиннее этого порога (в символах) лемматизируются параллельно по частям. */
+    private static final int CHUNK_SIZE = 32_768;
+
+    /**
+     * Экземпляры морфологии создаются один раз в {@link searchengine.config.LuceneConfig}
+     * и внедряются по имени бина. После загрузки словаря поиск форм только читает его
+     * массивы, поэтому один экземпляр безопасно использовать из нескольких потоков.
+     */
+    private final Morphology russianLuceneMorphology;
+    private final Morphology englishLuceneMorphology;
     private final IndexingState indexingState;
+    private final EngineMetrics engineMetrics;
 
     public Map<String, Integer> getQueryLemmas(String text) {
         if (shouldInterrupt()) return Collections.emptyMap();
@@ -36,44 +48,98 @@ public class Lemmatizer {
     public List<String> getWordLemmas(String word) {
         if (shouldInterrupt() || word == null || word.isEmpty()) return Collections.emptyList();
 
-        word = word.toLowerCase().replaceAll("[^а-яё]", "");
-        return getNormalForms(word);
+        List<String> lemmas = new ArrayList<>();
+        new TextTokenizer().tokenizeWords(word, (buffer, length, script, start, end) -> {
+            if (isIndexable(length, script)) {
+                lemmas.addAll(getNormalForms(new String(buffer, 0, length), script));
+            }
+        });
+        return lemmas;
     }
 
 
+    /**
+     * Большие тексты режутся по границам слов на части не длиннее {@link #CHUNK_SIZE},
+     * которые лемматизируются подзадачами fork-join. Внутри пула индексации подзадачи
+     * выполняются его потоками, в остальных случаях — общим пулом.
+     */
     public Map<String, Integer> extractLemmasWithRank(String text) {
         if (shouldInterrupt()) return Collections.emptyMap();
 
-        Map<String, Integer> lemmas = new HashMap<>();
-        processText(text, lemmas);
+        long start = System.nanoTime();
+        LemmaCounter counter = text.length() <= CHUNK_SIZE
+                ? countLemmas(text, 0, text.length())
+                : new LemmatizeTask(text, 0, text.length()).invoke();
+        Map<String, Integer> lemmas = counter.toMap();
+        engineMetrics.recordLemmatization(System.nanoTime() - start);
         return lemmas;
     }
 
+    /**
+     * Получатель лемм слов текста по порядку. Для слова с несколькими нормальными формами
+     * {@code newWord} равен {@code true} только у первой.
+     */
+    @FunctionalInterface
+    public interface LemmaHandler {
+        void onLemma(String lemma, int start, int end, boolean newWord);
+    }
+
+    /**
+     * Леммы слов текста вместе с позициями слов, для анализатора полнотекстового индекса.
+     * Отбрасываются те же слова и леммы, что и в {@link #extractLemmasWithRank(String)}.
+     */
+    public void forEachLemma(String text, LemmaHandler handler) {
+        if (shouldInterrupt()) return;
+
+        new TextTokenizer().tokenizeWords(text, (buffer, length, script, start, end) -> {
+            if (!isIndexable(length, script)) return;
+            boolean newWord = true;
+            for (String lemma : getNormalForms(new String(buffer, 0, length), script)) {
+                if (!isStopWord(lemma)) {
+                    handler.onLemma(lemma, start, end, newWord);
+                    newWord = false;
+                }
+            }
+        });
+    }
+
     private void processText(String text, Map<String, Integer> lemmas) {
-        Arrays.stream(text.toLowerCase().split("\\s+"))
-                .map(this::cleanWord)
-                .filter(word -> !word.isEmpty())
-                .forEach(word -> processWord(word, lemmas));
+        countLemmas(text, 0, text.length()).forEach(lemmas::put);
+    }
+
+    private LemmaCounter countLemmas(String text, int from, int to) {
+        LemmaCounter counter = new LemmaCounter();
+        new TextTokenizer().tokenizeWords(text, from, to, (buffer, length, script, start, end) -> {
+            if (isIndexable(length, script)) {
+                processWord(new String(buffer, 0, length), script, counter);
+            }
+        });
+        return counter;
     }
 
-    private void processWord(String word, Map<String, Integer> lemmas) {
-        getNormalForms(word).stream()
-                .filter(lemma -> !isStopWord(lemma))
-                .forEach(lemma -> lemmas.merge(lemma, 1, Integer::sum));
+    private void processWord(String word, TextTokenizer.Script script, LemmaCounter counter) {
+        for (String lemma : getNormalForms(word, script)) {
+            if (!isStopWord(lemma)) {
+                counter.increment(lemma);
+            }
+        }
     }
 
-    private List<String> getNormalForms(String word) {
+    private boolean isIndexable(int length, TextTokenizer.Script script) {
+        return script == TextTokenizer.Script.CYRILLIC || length >= MIN_LATIN_WORD_LENGTH;
+    }
+
+    private List<String> getNormalForms(String word, TextTokenizer.Script script) {
+        Morphology morphology = script == TextTokenizer.Script.CYRILLIC
+                ? russianLuceneMorphology
+                : englishLuceneMorphology;
         try {
-            return luceneMorph.getNormalForms(word);
+            return morphology.getNormalForms(word);
         } catch (Exception e) {
             return Collections.emptyList();
         }
     }
 
-    private String cleanWord(String word) {
-        return word.replaceAll("[^а-яё]", "").trim();
-    }
-
     private boolean isStopWord(String lemma) {
         return STOP_WORDS.contains(lemma);
     }
@@ -81,4 +147,51 @@ public class Lemmatizer {
     private boolean shouldInterrupt() {
         return indexingState.isStopRequested();
     }
+
+    private class LemmatizeTask extends RecursiveTask<LemmaCounter> {
+        private final String text;
+        private final int from;
+        private final int to;
+
+        LemmatizeTask(String text, int from, int to) {
+            this.text = text;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected LemmaCounter compute() {
+            if (shouldInterrupt()) {
+                return new LemmaCounter();
+            }
+            if (to - from <= CHUNK_SIZE) {
+                return countLemmas(text, from, to);
+            }
+
+            int split = findSplit(from + (to - from) / 2);
+            if (split <= from || split >= to) {
+                return countLemmas(text, from, to);
+            }
+
+            LemmatizeTask left = new LemmatizeTask(text, from, split);
+            left.fork();
+            LemmaCounter right = new LemmatizeTask(text, split, to).compute();
+            LemmaCounter leftResult = left.join();
+
+            if (leftResult.size() >= right.size()) {
+                leftResult.addAll(right);
+                return leftResult;
+            }
+            right.addAll(leftResult);
+            return right;
+        }
+
+        private int findSplit(int middle) {
+            int pos = middle;
+            while (pos < to && !TextTokenizer.isWordBoundary(text.charAt(pos))) {
+                pos++;
+            }
+            return pos;
+        }
+    }
 }
\ No newline at end of file
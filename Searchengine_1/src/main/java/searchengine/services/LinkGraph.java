@@ -0,0 +1,186 @@
+package searchengine.services;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Граф внутренних ссылок сайта, собираемый при обходе. Адреса получают номера узлов,
+ * рёбра копятся в двух растущих массивах {@code int}, так что ребро стоит 8 байт
+ * независимо от длины адресов. После обхода {@link #compute} строит по рёбрам между
+ * сохранёнными страницами сжатые списки смежности (CSR) и считает PageRank и число
+ * входящих ссылок; исходные массивы рёбер при этом освобождаются.
+ */
+final class LinkGraph {
+
+    private final Map<String, Integer> nodes = new HashMap<>();
+    /** Номер страницы в базе для узла или 0, если адрес не стал страницей. */
+    private int[] pageIds = new int[1024];
+    private int[] sources = new int[4096];
+    private int[] targets = new int[4096];
+    private int edges;
+
+    /**
+     * Учитывает сохранённую страницу и ссылки с неё на другие адреса сайта.
+     */
+    synchronized void addPage(String url, int pageId, Collection<String> links) {
+        int source = node(url);
+        pageIds[source] = pageId;
+        for (String link : links) {
+            int target = node(link);
+            if (target == source) continue;
+            if (edges == sources.length) {
+                sources = Arrays.copyOf(sources, edges * 2);
+                targets = Arrays.copyOf(targets, edges * 2);
+            }
+            sources[edges] = source;
+            targets[edges] = target;
+            edges++;
+        }
+    }
+
+    synchronized int edgeCount() {
+        return edges;
+    }
+
+    private int node(String url) {
+        Integer node = nodes.get(url);
+        if (node != null) return node;
+        int created = nodes.size();
+        nodes.put(url, created);
+        if (created == pageIds.length) {
+            pageIds = Arrays.copyOf(pageIds, created * 2);
+        }
+        return created;
+    }
+
+    /**
+     * PageRank по рёбрам между сохранёнными страницами. Ссылки на адреса, которые не стали
+     * страницами, и повторные ссылки с одной страницы на другую отбрасываются; вес страниц
+     * без исходящих ссылок делится поровну между всеми страницами.
+     *
+     * @param damping    вероятность перейти по ссылке, обычно 0.85
+     * @param iterations наибольшее число итераций; счёт останавливается раньше, когда
+     *                   суммарное изменение рангов меньше {@code 1e-6}
+     */
+    synchronized Scores compute(double damping, int iterations) {
+        int nodeCount = nodes.size();
+        nodes.clear();
+
+        // Плотная нумерация страниц по возрастанию номера в базе
+        int[] dense = new int[nodeCount];
+        long[] order = new long[nodeCount];
+        int pages = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            if (pageIds[node] > 0) {
+                order[pages++] = ((long) pageIds[node] << 32) | node;
+            }
+        }
+        Arrays.sort(order, 0, pages);
+        Arrays.fill(dense, -1);
+        int[] ids = new int[pages];
+        for (int i = 0; i < pages; i++) {
+            ids[i] = (int) (order[i] >>> 32);
+            dense[(int) order[i]] = i;
+        }
+        order = null;
+
+        // Рёбра между страницами, отсортированные по источнику и цели, без повторов
+        long[] pairs = new long[edges];
+        int pairCount = 0;
+        for (int i = 0; i < edges; i++) {
+            int source = dense[sources[i]];
+            int target = dense[targets[i]];
+            if (source >= 0 && target >= 0) {
+                pairs[pairCount++] = ((long) source << 32) | target;
+            }
+        }
+        sources = new int[0];
+        targets = new int[0];
+        pageIds = new int[0];
+        edges = 0;
+        Arrays.sort(pairs, 0, pairCount);
+
+        int[] offsets = new int[pages + 1];
+        int[] adjacency = new int[pairCount];
+        int[] inLinks = new int[pages];
+        int edgeCount = 0;
+        for (int i = 0; i < pairCount; i++) {
+            if (i > 0 && pairs[i] == pairs[i - 1]) continue;
+            int source = (int) (pairs[i] >>> 32);
+            int target = (int) pairs[i];
+            offsets[source + 1]++;
+            adjacency[edgeCount++] = target;
+            inLinks[target]++;
+        }
+        pairs = null;
+        for (int i = 0; i < pages; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+
+        double[] rank = new double[pages];
+        double[] next = new double[pages];
+        Arrays.fill(rank, pages == 0 ? 0 : 1.0 / pages);
+        for (int iteration = 0; iteration < iterations && pages > 0; iteration++) {
+            double dangling = 0;
+            for (int page = 0; page < pages; page++) {
+                if (offsets[page] == offsets[page + 1]) dangling += rank[page];
+            }
+            Arrays.fill(next, (1 - damping + damping * dangling) / pages);
+            for (int page = 0; page < pages; page++) {
+                int degree = offsets[page + 1] - offsets[page];
+                if (degree == 0) continue;
+                double share = damping * rank[page] / degree;
+                for (int edge = offsets[page]; edge < offsets[page + 1]; edge++) {
+                    next[adjacency[edge]] += share;
+                }
+            }
+            double delta = 0;
+            for (int page = 0; page < pages; page++) {
+                delta += Math.abs(next[page] - rank[page]);
+            }
+            double[] swap = rank;
+            rank = next;
+            next = swap;
+            if (delta < 1e-6) break;
+        }
+
+        // Ранг умножается на число страниц: средняя страница получает 1
+        float[] scores = new float[pages];
+        for (int page = 0; page < pages; page++) {
+            scores[page] = (float) (rank[page] * pages);
+        }
+        return new Scores(ids, scores, inLinks, edgeCount);
+    }
+
+    /** Ранги страниц сайта, упорядоченные по номеру страницы. */
+    static final class Scores {
+        static final Scores EMPTY = new Scores(new int[0], new float[0], new int[0], 0);
+
+        final int[] pageIds;
+        final float[] pageRanks;
+        final int[] inLinks;
+        final int edges;
+        /** Наибольший ранг, но не меньше 1 - ранга страниц, появившихся после расчёта. */
+        final float maxPageRank;
+
+        Scores(int[] pageIds, float[] pageRanks, int[] inLinks, int edges) {
+            this.pageIds = pageIds;
+            this.pageRanks = pageRanks;
+            this.inLinks = inLinks;
+            this.edges = edges;
+            float max = 1f;
+            for (float pageRank : pageRanks) {
+                max = Math.max(max, pageRank);
+            }
+            this.maxPageRank = max;
+        }
+
+        /** Ранг страницы или 1 (средний), если страница появилась после расчёта. */
+        float pageRank(int pageId) {
+            int index = Arrays.binarySearch(pageIds, pageId);
+            return index < 0 ? 1f : pageRanks[index];
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package searchengine.services;
+
+import lombok.RequiredArgsConstructor;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.*;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.jsoup.Jsoup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import searchengine.config.SearchSettings;
+import searchengine.model.Page;
+import searchengine.model.SearchIndex;
+import searchengine.model.Site;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntToDoubleFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Поиск по индексу Lucene. У каждого сайта свой индекс в {@link MMapDirectory}, поэтому частоты
+ * лемм и BM25 считаются по страницам своего сайта, как в {@link JpaSearchBackend}. Тексты страниц
+ * разбирает {@link LemmaAnalyzer}; на странице должны встретиться все леммы запроса, кроме стоп-лемм,
+ * релевантность - сумма BM25 по леммам.
+ * <p>
+ * Индекс ведётся, если Lucene выбран для поиска или включён {@code search-settings.lucene-indexing}.
+ * Новые страницы становятся видны поиску при обновлении читателей раз в секунду и сохраняются
+ * на диск раз в 30 секунд и при остановке приложения.
+ */
+@RequiredArgsConstructor
+@Service
+public class LuceneSearchBackend implements SearchBackend {
+
+    private static final Logger logger = LoggerFactory.getLogger(LuceneSearchBackend.class);
+
+    private static final String SITE_PREFIX = "site-";
+    private static final String ID_FIELD = "id";
+    private static final String TEXT_FIELD = "text";
+
+    private final Lemmatizer lemmatizer;
+    private final StopLemmaService stopLemmaService;
+    private final SearchSettings searchSettings;
+    private final EngineMetrics engineMetrics;
+    private final PageRankService pageRankService;
+    private final JdbcTemplate jdbcTemplate;
+
+    private final Map<Integer, SiteIndex> indexes = new ConcurrentHashMap<>();
+    private boolean enabled;
+    private Path root;
+    private Analyzer analyzer;
+
+    @PostConstruct
+    public void init() throws IOException {
+        enabled = searchSettings.isLuceneIndexing() || getName().equals(searchSettings.getBackend());
+        if (!enabled) return;
+
+        root = Paths.get(searchSettings.getLuceneIndexPath());
+        Files.createDirectories(root);
+        analyzer = new LemmaAnalyzer(lemmatizer);
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(root, SITE_PREFIX + "*")) {
+            for (Path dir : dirs) {
+                int siteId = Integer.parseInt(dir.getFileName().toString().substring(SITE_PREFIX.length()));
+                indexes.put(siteId, open(dir));
+            }
+        }
+        engineMetrics.registerLuceneIndexSize(this::indexSize);
+        logger.info("Индекс Lucene: {}, сайтов: {}", root.toAbsolutePath(), indexes.size());
+    }
+
+    @Override
+    public String getName() {
+        return "lucene";
+    }
+
+    @Override
+    public SiteHits search(Site site, List<String> queryLemmas, int topK) {
+        SiteIndex index = indexes.get(site.getId());
+        if (index == null) {
+            return SiteHits.EMPTY;
+        }
+        SearchProfiler profiler = SearchProfiler.current();
+        long stageStart = System.nanoTime();
+
+        List<ScoreDoc> scoreDocs = new ArrayList<>();
+        List<Integer> pageIds = new ArrayList<>();
+        int total;
+        try {
+            IndexSearcher searcher = index.searcherManager.acquire();
+            try {
+                Query query = buildQuery(site, searcher.getIndexReader(), queryLemmas, profiler);
+                if (query == null) {
+                    return SiteHits.EMPTY;
+                }
+                TopScoreDocCollector collector = TopScoreDocCollector.create(Math.max(1, topK), Integer.MAX_VALUE);
+                searcher.search(query, collector);
+                total = collector.getTotalHits();
+                for (ScoreDoc scoreDoc : collector.topDocs().scoreDocs) {
+                    if (scoreDocs.size() >= topK) break;
+                    scoreDocs.add(scoreDoc);
+                    pageIds.add(Integer.parseInt(searcher.doc(scoreDoc.doc, Set.of(ID_FIELD)).get(ID_FIELD)));
+                }
+            } finally {
+                index.searcherManager.release(searcher);
+            }
+        } catch (AlreadyClosedException e) {
+            // Индекс удалён перед полной индексацией
+            return SiteHits.EMPTY;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Ошибка чтения индекса Lucene сайта " + site.getUrl(), e);
+        }
+        if (profiler != null) {
+            profiler.rows(total);
+            profiler.stage("luceneSearch");
+        }
+        stageStart = recordStage(EngineMetrics.SearchStage.RETRIEVE, stageStart);
+
+        // PageRank учитывается только внутри лучших по BM25: ранги не хранятся в индексе Lucene
+        IntToDoubleFunction boosts = pageRankService.boosts(site);
+        List<ScoredPage> top = new ArrayList<>(scoreDocs.size());
+        for (int i = 0; i < scoreDocs.size(); i++) {
+            int pageId = pageIds.get(i);
+            top.add(new ScoredPage(pageId, scoreDocs.get(i).score * boosts.applyAsDouble(pageId)));
+        }
+        top.sort(Comparator.comparingDouble((ScoredPage scored) -> scored.relevance).reversed());
+        recordStage(EngineMetrics.SearchStage.SCORE, stageStart);
+        if (profiler != null) profiler.stage("pageRank");
+        logger.info("Сайт {}: найдено страниц {} (Lucene)", site.getUrl(), total);
+        return new SiteHits(top, total, top.isEmpty() ? 0 : top.get(0).relevance);
+    }
+
+    /**
+     * Все леммы запроса, кроме стоп-лемм сайта, обязательны. Если запрос состоит только
+     * из стоп-лемм, остаётся самая редкая; леммы, которых на сайте нет, пропускаются.
+     */
+    private Query buildQuery(Site site, IndexReader reader, List<String> queryLemmas, SearchProfiler profiler) throws IOException {
+        int totalPages = reader.numDocs();
+        List<Term> terms = new ArrayList<>();
+        Term rarestStopTerm = null;
+        int rarestStopFrequency = Integer.MAX_VALUE;
+
+        for (String lemma : queryLemmas) {
+            Term term = new Term(TEXT_FIELD, lemma);
+            int frequency = reader.docFreq(term);
+            if (frequency == 0) continue;
+            boolean stopLemma = stopLemmaService.isStopLemma(frequency, totalPages);
+            if (profiler != null) profiler.lemma(lemma, site.getUrl(), frequency, totalPages, stopLemma);
+            if (!stopLemma) {
+                terms.add(term);
+            } else if (frequency < rarestStopFrequency) {
+                rarestStopTerm = term;
+                rarestStopFrequency = frequency;
+            }
+        }
+        if (terms.isEmpty() && rarestStopTerm != null) {
+            terms.add(rarestStopTerm);
+        }
+        if (terms.isEmpty()) {
+            return null;
+        }
+        if (profiler != null) {
+            profiler.evaluationOrder(site.getUrl(), terms.stream().map(Term::text).collect(Collectors.toList()));
+            for (Term term : terms) {
+                profiler.postings(term.text(), site.getUrl(), reader.docFreq(term));
+            }
+        }
+
+        BooleanQuery.Builder query = new BooleanQuery.Builder();
+        terms.forEach(term -> query.add(new TermQuery(term), BooleanClause.Occur.MUST));
+        return query.build();
+    }
+
+    @Override
+    public void pageIndexed(Page page, String text, List<SearchIndex> entries) {
+        if (!enabled) return;
+
+        Document document = new Document();
+        document.add(new StringField(ID_FIELD, String.valueOf(page.getId()), Field.Store.YES));
+        document.add(new TextField(TEXT_FIELD, text, Field.Store.NO));
+        try {
+            index(page.getSite()).writer.updateDocument(new Term(ID_FIELD, String.valueOf(page.getId())), document);
+        } catch (IOException | UncheckedIOException e) {
+            logger.error("Не удалось добавить страницу {} в индекс Lucene: {}", page.getPath(), e.getMessage());
+        }
+    }
+
+    @Override
+    public void pageDeleted(Page page, List<SearchIndex> entries) {
+        if (!enabled) return;
+
+        SiteIndex index = indexes.get(page.getSite().getId());
+        if (index == null) return;
+        try {
+            index.writer.deleteDocuments(new Term(ID_FIELD, String.valueOf(page.getId())));
+        } catch (IOException e) {
+            logger.error("Не удалось удалить страницу {} из индекса Lucene: {}", page.getPath(), e.getMessage());
+        }
+    }
+
+    /**
+     * Строит индекс сайта по текстам его страниц. Страницы без сохранённого текста индексируются
+     * по тексту их HTML.
+     */
+    @Override
+    public void siteImported(Site site) {
+        if (!enabled) return;
+
+        long start = System.nanoTime();
+        SiteIndex index = index(site);
+        JdbcTemplate streaming = new JdbcTemplate(Objects.requireNonNull(jdbcTemplate.getDataSource()));
+        streaming.setFetchSize(1000);
+        int[] pages = new int[1];
+        try {
+            streaming.query("SELECT id, text, content FROM page WHERE site_id = ?", rs -> {
+                String id = String.valueOf(rs.getInt("id"));
+                String text = rs.getString("text");
+                if (text == null) {
+                    text = Jsoup.parse(Objects.toString(rs.getString("content"), "")).text();
+                }
+                Document document = new Document();
+                document.add(new StringField(ID_FIELD, id, Field.Store.YES));
+                document.add(new TextField(TEXT_FIELD, text, Field.Store.NO));
+                try {
+                    index.writer.updateDocument(new Term(ID_FIELD, id), document);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                pages[0]++;
+            }, site.getId());
+            index.writer.commit();
+            index.searcherManager.maybeRefresh();
+            logger.info("Индекс Lucene сайта {} построен по {} страницам за {} мс",
+                    site.getUrl(), pages[0], (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException | UncheckedIOException e) {
+            logger.error("Не удалось построить индекс Lucene сайта {}: {}", site.getUrl(), e.getMessage());
+        }
+    }
+
+    /**
+     * Сайты получают новые id после очистки таблиц, поэтому индексы удаляются вместе с каталогами.
+     */
+    @Override
+    public void cleared() {
+        if (!enabled) return;
+
+        for (Integer siteId : new ArrayList<>(indexes.keySet())) {
+            SiteIndex index = indexes.remove(siteId);
+            try {
+                index.close();
+                deleteRecursively(root.resolve(SITE_PREFIX + siteId));
+            } catch (IOException e) {
+                logger.error("Не удалось удалить индекс Lucene сайта {}: {}", siteId, e.getMessage());
+            }
+        }
+        logger.info("Индекс Lucene очищен");
+    }
+
+    @Scheduled(fixedDelay = 1000)
+    public void refresh() {
+        for (SiteIndex index : indexes.values()) {
+            try {
+                index.searcherManager.maybeRefresh();
+            } catch (IOException | AlreadyClosedException e) {
+                logger.warn("Не удалось обновить читатель индекса Lucene: {}", e.getMessage());
+            }
+        }
+    }
+
+    @Scheduled(fixedDelay = 30_000)
+    public void commit() {
+        for (SiteIndex index : indexes.values()) {
+            try {
+                if (index.writer.hasUncommittedChanges()) {
+                    index.writer.commit();
+                }
+            } catch (IOException | AlreadyClosedException e) {
+                logger.warn("Не удалось сохранить индекс Lucene: {}", e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        for (SiteIndex index : indexes.values()) {
+            try {
+                index.close();
+            } catch (IOException e) {
+                logger.warn("Ошибка при закрытии индекса Lucene: {}", e.getMessage());
+            }
+        }
+        indexes.clear();
+    }
+
+    private SiteIndex index(Site site) {
+        return indexes.computeIfAbsent(site.getId(), siteId -> {
+            try {
+                return open(root.resolve(SITE_PREFIX + siteId));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private SiteIndex open(Path dir) throws IOException {
+        Directory directory = new MMapDirectory(dir);
+        IndexWriterConfig config = new IndexWriterConfig(analyzer)
+                .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        IndexWriter writer = new IndexWriter(directory, config);
+        return new SiteIndex(directory, writer, new SearcherManager(writer, null));
+    }
+
+    /** Размер файлов всех индексов, байт. */
+    private long indexSize() {
+        long size = 0;
+        for (SiteIndex index : indexes.values()) {
+            try {
+                for (String file : index.directory.listAll()) {
+                    size += index.directory.fileLength(file);
+                }
+            } catch (IOException | AlreadyClosedException e) {
+                // Файл удалён слиянием сегментов между listAll и fileLength
+            }
+        }
+        return size;
+    }
+
+    private long recordStage(EngineMetrics.SearchStage stage, long stageStart) {
+        long now = System.nanoTime();
+        engineMetrics.recordSearchStage(stage, now - stageStart);
+        return now;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private static class SiteIndex {
+        final Directory directory;
+        final IndexWriter writer;
+        final SearcherManager searcherManager;
+
+        SiteIndex(Directory directory, IndexWriter writer, SearcherManager searcherManager) {
+            this.directory = directory;
+            this.writer = writer;
+            this.searcherManager = searcherManager;
+        }
+
+        void close() throws IOException {
+            searcherManager.close();
+            writer.close();
+            directory.close();
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package searchengine.services;
+
+import org.apache.lucene.morphology.Heuristic;
+import org.apache.lucene.morphology.LetterDecoderEncoder;
+import org.apache.lucene.morphology.LuceneMorphology;
+import org.apache.lucene.morphology.Morphology;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Морфологический словарь {@link LuceneMorphology}, упакованный в плоские массивы в файле,
+ * который отображается в память только для чтения. Словарь не создаёт объектов в куче,
+ * а несколько экземпляров приложения на одной машине делят страницы файла через кэш ОС.
+ * <p>
+ * Файл строится один раз из {@code morph.info} библиотеки и пересобирается, если контрольная
+ * сумма исходного словаря изменилась. Поиск нормальных форм повторяет {@code MorphologyImpl}:
+ * двоичный поиск перевёрнутого слова среди разделителей, затем правила найденной группы.
+ * <p>
+ * Формат (целые - 4 байта, старший байт первым):
+ * <pre>
+ * MAGIC, VERSION, CRC32C исходного словаря
+ * n; смещения разделителей [n + 1]; коды букв разделителей; номера групп правил [n]
+ * m; смещения групп [m + 1]; h; длины отбрасываемых суффиксов [h]; номера суффиксов [h]; номера грамматической информации [h]
+ * строки суффиксов; строки грамматической информации - число, смещения [число + 1], символы UTF-16
+ * </pre>
+ */
+public final class MappedMorphology implements Morphology {
+
+    private static final int MAGIC = 0x4D525048; // "MRPH"
+    private static final int VERSION = 1;
+
+    private final ByteBuffer buffer;
+    private final LetterDecoderEncoder decoderEncoder;
+
+    private final int separatorCount;
+    private final int separatorOffsets;
+    private final int separatorValues;
+    private final int ruleIds;
+    private final int ruleOffsets;
+    private final int suffixLengths;
+    private final int suffixIndexes;
+    private final int formInfos;
+    private final Strings suffixes;
+    private final Strings grammarInfo;
+
+    private MappedMorphology(ByteBuffer buffer, LetterDecoderEncoder decoderEncoder) {
+        this.buffer = buffer;
+        this.decoderEncoder = decoderEncoder;
+
+        int position = 12;
+        separatorCount = buffer.getInt(position);
+        separatorOffsets = position + 4;
+        int separatorLength = buffer.getInt(separatorOffsets + 4 * separatorCount);
+        separatorValues = separatorOffsets + 4 * (separatorCount + 1);
+        ruleIds = separatorValues + 4 * separatorLength;
+
+        position = ruleIds + 4 * separatorCount;
+        int ruleCount = buffer.getInt(position);
+        ruleOffsets = position + 4;
+        position = ruleOffsets + 4 * (ruleCount + 1);
+        int heuristicCount = buffer.getInt(position);
+        suffixLengths = position + 4;
+        suffixIndexes = suffixLengths + 4 * heuristicCount;
+        formInfos = suffixIndexes + 4 * heuristicCount;
+
+        suffixes = new Strings(buffer, formInfos + 4 * heuristicCount);
+        grammarInfo = new Strings(buffer, suffixes.end);
+    }
+
+    /**
+     * Отображает в память упакованный словарь из {@code file}; если файла нет или он собран
+     * из другого словаря, сначала собирает его из ресурса {@code resource} библиотеки.
+     */
+    public static MappedMorphology open(Path file, String resource, LetterDecoderEncoder decoderEncoder) throws IOException {
+        int sourceChecksum = sourceChecksum(resource);
+        if (!isValid(file, sourceChecksum)) {
+            build(file, resource, decoderEncoder, sourceChecksum);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new MappedMorphology(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), decoderEncoder);
+        }
+    }
+
+    @Override
+    public List<String> getNormalForms(String word) {
+        List<String> forms = new ArrayList<>();
+        int group = ruleGroup(word);
+        boolean wordAdded = false;
+        for (int h = buffer.getInt(ruleOffsets + 4 * group), end = buffer.getInt(ruleOffsets + 4 * (group + 1)); h < end; h++) {
+            String form = transform(word, h);
+            if (!form.isEmpty()) {
+                forms.add(form);
+            } else if (!wordAdded) {
+                forms.add(word);
+                wordAdded = true;
+            }
+        }
+        return forms;
+    }
+
+    @Override
+    public List<String> getMorphInfo(String word) {
+        List<String> info = new ArrayList<>();
+        int group = ruleGroup(word);
+        for (int h = buffer.getInt(ruleOffsets + 4 * group), end = buffer.getInt(ruleOffsets + 4 * (group + 1)); h < end; h++) {
+            info.add(transform(word, h) + "|" + grammarInfo.get(buffer.getInt(formInfos + 4 * h)));
+        }
+        return info;
+    }
+
+    public boolean checkString(String word) {
+        return decoderEncoder.checkString(word);
+    }
+
+    private int ruleGroup(String word) {
+        int[] key = decoderEncoder.encodeToArray(new StringBuilder(word).reverse().toString());
+        return buffer.getInt(ruleIds + 4 * findSeparator(key));
+    }
+
+    /** Последний разделитель, не больший ключа. */
+    private int findSeparator(int[] key) {
+        int low = 0;
+        int high = separatorCount - 1;
+        int middle = 0;
+        while (low <= high) {
+            middle = (low + high) >>> 1;
+            int compare = compareToSeparator(key, middle);
+            if (compare > 0) {
+                low = middle + 1;
+            } else if (compare < 0) {
+                high = middle - 1;
+            } else {
+                break;
+            }
+        }
+        return compareToSeparator(key, middle) >= 0 ? middle : middle - 1;
+    }
+
+    private int compareToSeparator(int[] key, int separator) {
+        int from = buffer.getInt(separatorOffsets + 4 * separator);
+        int length = buffer.getInt(separatorOffsets + 4 * (separator + 1)) - from;
+        int common = Math.min(key.length, length);
+        for (int i = 0; i < common; i++) {
+            int compare = Integer.compare(key[i], buffer.getInt(separatorValues + 4 * (from + i)));
+            if (compare != 0) return compare;
+        }
+        return key.length - length;
+    }
+
+    private String transform(String word, int heuristic) {
+        int suffixLength = buffer.getInt(suffixLengths + 4 * heuristic);
+        if (word.length() < suffixLength) {
+            return word;
+        }
+        return word.substring(0, word.length() - suffixLength) + suffixes.get(buffer.getInt(suffixIndexes + 4 * heuristic));
+    }
+
+    private static int sourceChecksum(String resource) throws IOException {
+        try (InputStream in = open(resource)) {
+            CRC32C checksum = new CRC32C();
+            byte[] chunk = new byte[1 << 16];
+            for (int read; (read = in.read(chunk)) > 0; ) {
+                checksum.update(chunk, 0, read);
+            }
+            return (int) checksum.getValue();
+        }
+    }
+
+    private static boolean isValid(Path file, int sourceChecksum) throws IOException {
+        if (!Files.isRegularFile(file) || Files.size(file) < 12) return false;
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            return in.readInt() == MAGIC && in.readInt() == VERSION && in.readInt() == sourceChecksum;
+        }
+    }
+
+    private static InputStream open(String resource) throws IOException {
+        InputStream in = LuceneMorphology.class.getResourceAsStream(resource);
+        if (in == null) {
+            throw new FileNotFoundException("Нет словаря морфологии " + resource);
+        }
+        return new BufferedInputStream(in);
+    }
+
+    /** Загружает словарь библиотекой и записывает его массивы во временный файл рядом с {@code file}. */
+    private static void build(Path file, String resource, LetterDecoderEncoder decoderEncoder, int sourceChecksum) throws IOException {
+        Source source;
+        try (InputStream in = open(resource)) {
+            source = new Source(in, decoderEncoder);
+        }
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sourceChecksum);
+            source.write(out);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Словарь, загруженный библиотекой; подкласс нужен для доступа к его массивам. */
+    private static final class Source extends LuceneMorphology {
+
+        Source(InputStream in, LetterDecoderEncoder decoderEncoder) throws IOException {
+            super(in, decoderEncoder);
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(separators.length);
+            int offset = 0;
+            for (int[] separator : separators) {
+                out.writeInt(offset);
+                offset += separator.length;
+            }
+            out.writeInt(offset);
+            for (int[] separator : separators) {
+                for (int value : separator) out.writeInt(value);
+            }
+            for (short ruleId : rulesId) {
+                out.writeInt(ruleId);
+            }
+
+            out.writeInt(rules.length);
+            offset = 0;
+            for (Heuristic[] group : rules) {
+                out.writeInt(offset);
+                offset += group.length;
+            }
+            out.writeInt(offset);
+            // Число правил равно последнему смещению группы
+            out.writeInt(offset);
+            Map<String, Integer> suffixIndex = new HashMap<>();
+            List<String> suffixes = new ArrayList<>();
+            for (Heuristic[] group : rules) {
+                for (Heuristic heuristic : group) out.writeInt(heuristic.getActualSuffixLength());
+            }
+            for (Heuristic[] group : rules) {
+                for (Heuristic heuristic : group) {
+                    out.writeInt(suffixIndex.computeIfAbsent(heuristic.getActualNormalSuffix(), suffix -> {
+                        suffixes.add(suffix);
+                        return suffixes.size() - 1;
+                    }));
+                }
+            }
+            for (Heuristic[] group : rules) {
+                for (Heuristic heuristic : group) out.writeInt(heuristic.getFormMorphInfo());
+            }
+            Strings.write(out, suffixes);
+            Strings.write(out, List.of(grammarInfo));
+        }
+    }
+
+    /** Таблица строк в файле: число, смещения и символы. */
+    private static final class Strings {
+        private final ByteBuffer buffer;
+        private final int offsets;
+        private final int chars;
+        final int end;
+
+        Strings(ByteBuffer buffer, int position) {
+            this.buffer = buffer;
+            int count = buffer.getInt(position);
+            offsets = position + 4;
+            chars = offsets + 4 * (count + 1);
+            end = chars + 2 * buffer.getInt(offsets + 4 * count);
+        }
+
+        String get(int index) {
+            int from = buffer.getInt(offsets + 4 * index);
+            int to = buffer.getInt(offsets + 4 * (index + 1));
+            char[] value = new char[to - from];
+            for (int i = 0; i < value.length; i++) {
+                value[i] = buffer.getChar(chars + 2 * (from + i));
+            }
+            return new String(value);
+        }
+
+        static void write(DataOutputStream out, List<String> strings) throws IOException {
+            out.writeInt(strings.size());
+            int offset = 0;
+            for (String value : strings) {
+                out.writeInt(offset);
+                offset += value.length();
+            }
+            out.writeInt(offset);
+            for (String value : strings) {
+                out.writeChars(value);
+            }
+        }
+    }
+}
@@ -8,6 +8,7 @@ import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 import org.springframework.stereotype.Service;
 import searchengine.config.IndexingState;
+import searchengine.config.SearchSettings;
 import searchengine.model.*;
 import searchengine.repository.IndexRepository;
 import searchengine.repository.LemmaRepository;
@@ -18,6 +19,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.transaction.Transactional;
 import java.io.IOException;
+import java.net.URL;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -33,6 +35,13 @@ public class PageProcessor {
     private final IndexRepository indexRepository;
     private final Lemmatizer lemmatizer;
     private final IndexingState indexingState;
+    private final ContentExtractor contentExtractor;
+    private final SiteStatisticsService siteStatisticsService;
+    private final EngineMetrics engineMetrics;
+    private final List<SearchBackend> searchBackends;
+    private final SuggestService suggestService;
+    private final SearchSettings searchSettings;
+    private final StopLemmaService stopLemmaService;
 
     private final AtomicBoolean isIndexingStopped = new AtomicBoolean(false);
     /**
@@ -64,10 +73,15 @@ public class PageProcessor {
                     .referrer("https://www.google.com")
                     .ignoreContentType(true);
 
+            long fetchStart = System.nanoTime();
             Connection.Response response = connection.execute();
             int statusCode = response.statusCode();
+            engineMetrics.recordFetch(new URL(url).getHost(), System.nanoTime() - fetchStart);
+            engineMetrics.recordHttpStatus(statusCode);
 
             if (statusCode >= 400) {
+                siteStatisticsService.pageFailed(site);
+                engineMetrics.recordFetchError();
                 logger.warn("Ошибка HTTP {}: {}", statusCode, url);
                 return;
             }
@@ -78,9 +92,12 @@ public class PageProcessor {
                 return;
             }
 
+            long parseStart = System.nanoTime();
             Document doc = response.parse();
-            Page page = savePage(site, url, doc);
-            indexPageContent(site, page);
+            engineMetrics.recordParse(System.nanoTime() - parseStart);
+            String text = contentExtractor.extractText(site, url, doc);
+            Page page = savePage(site, url, doc, text);
+            indexPageContent(site, page, text);
             processLinks(site, doc, depth);
 
         } catch (Exception e) {
@@ -114,9 +131,10 @@ public class PageProcessor {
      * @param site Сайт
      * @param url  URL страницы
      * @param doc  HTML-документ
+     * @param text Текст страницы без разметки
      * @return Сохраненная страница
      */
-    private Page savePage(Site site, String url, Document doc) {
+    private Page savePage(Site site, String url, Document doc, String text) {
         Page page = new Page();
         page.setSite(site);
         String path = url.replace(site.getUrl(), "");
@@ -126,7 +144,11 @@ public class PageProcessor {
         page.setPath(path);
         page.setCode(doc.connection().response().statusCode());
         page.setContent(doc.html());
-        return pageRepository.save(page);
+        page.setTitle(doc.title());
+        page.setText(text);
+        Page saved = pageRepository.save(page);
+        siteStatisticsService.pageIndexed(site, saved.getContent());
+        return saved;
     }
 
     /**
@@ -134,9 +156,9 @@ public class PageProcessor {
      *
      * @param site Сайт
      * @param page Страница
+     * @param text Текст страницы без разметки
      */
-    private void indexPageContent(Site site, Page page) {
-        String text = Jsoup.parse(page.getContent()).text();
+    private void indexPageContent(Site site, Page page, String text) {
         Map<String, Integer> lemmas = lemmatizer.extractLemmasWithRank(text);
 
         List<Lemma> lemmaList = new ArrayList<>();
@@ -155,8 +177,15 @@ public class PageProcessor {
             indexList.add(index);
         });
 
+        long writeStart = System.nanoTime();
         lemmaRepository.saveAll(lemmaList);
-        indexRepository.saveAll(indexList);
+        if (searchSettings.writesSearchIndex()) {
+            indexRepository.saveAll(indexList);
+        }
+        engineMetrics.recordDbWrite(System.nanoTime() - writeStart);
+        searchBackends.forEach(backend -> backend.pageIndexed(page, text, indexList));
+        suggestService.pageIndexed(site, text);
+        engineMetrics.recordPageIndexed();
     }
 
     /**
@@ -173,8 +202,10 @@ public class PageProcessor {
                     Lemma newLemma = new Lemma();
                     newLemma.setSite(site);
                     newLemma.setLemma(lemmaText);
-                    newLemma.setFrequency(1);
-                    return lemmaRepository.save(newLemma);
+                    newLemma.setFrequency(0);
+                    Lemma saved = lemmaRepository.save(newLemma);
+                    siteStatisticsService.lemmaAdded(site);
+                    return saved;
                 });
     }
 
@@ -186,24 +217,57 @@ public class PageProcessor {
     @Transactional
     public void deletePageInfo(Page page) {
 
-        List<SearchIndex> indexes = indexRepository.findByPage(page);
+        List<SearchIndex> indexes = new ArrayList<>(findPageEntries(page));
+        if (searchSettings.writesSearchIndex()) {
+            // Записи холодного слоя удаляются каскадно вместе со страницей
+            indexes.addAll(stopLemmaService.coldEntries(page));
+        }
         for (SearchIndex index : indexes) {
             Lemma lemma = index.getLemma();
             lemma.setFrequency(lemma.getFrequency() - 1);
             if (lemma.getFrequency() == 0) {
                 lemmaRepository.delete(lemma);
+                siteStatisticsService.lemmaRemoved(page.getSite());
             } else {
                 lemmaRepository.save(lemma);
             }
 
-            indexRepository.delete(index);
+            if (searchSettings.writesSearchIndex() && index.getId() != null) {
+                indexRepository.delete(index);
+            }
         }
 
         pageRepository.delete(page);
+        searchBackends.forEach(backend -> backend.pageDeleted(page, indexes));
+        siteStatisticsService.pageRemoved(page.getSite(), page.getContent());
 
         logger.info("Информация о странице удалена: {}", page.getPath());
     }
 
+    /**
+     * Леммы страницы с рангами. Если строки search_index не пишутся, леммы заново получаются
+     * из сохранённого текста страницы, из которого они были получены при индексации.
+     */
+    private List<SearchIndex> findPageEntries(Page page) {
+        if (searchSettings.writesSearchIndex()) {
+            return indexRepository.findByPage(page);
+        }
+        if (page.getText() == null) {
+            logger.warn("У страницы {} нет сохранённого текста, её леммы не удалены", page.getPath());
+            return List.of();
+        }
+        Map<String, Integer> ranks = lemmatizer.extractLemmasWithRank(page.getText());
+        List<SearchIndex> entries = new ArrayList<>();
+        for (Lemma lemma : lemmaRepository.findAllByLemmaInAndSite(ranks.keySet(), page.getSite())) {
+            SearchIndex entry = new SearchIndex();
+            entry.setPage(page);
+            entry.setLemma(lemma);
+            entry.setRanking(ranks.get(lemma.getLemma()));
+            entries.add(entry);
+        }
+        return entries;
+    }
+
     @Transactional
     public void deletePageInfoIfExists(Site site, String url) {
         String path = url.replace(site.getUrl(), "");
@@ -0,0 +1,163 @@
+package searchengine.services;
+
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import searchengine.config.IndexingSettings;
+import searchengine.config.SearchSettings;
+import searchengine.model.Site;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Статическая оценка страниц по графу внутренних ссылок. При обходе ссылки каждой
+ * сохранённой страницы складываются в {@link LinkGraph} сайта, после обхода сайта
+ * считаются PageRank и число входящих ссылок и записываются в {@code page.page_rank}
+ * и {@code page.in_links}. Ранги держатся в памяти, поэтому при поиске множитель
+ * релевантности берётся без обращения к базе.
+ */
+@Service
+@RequiredArgsConstructor
+public class PageRankService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PageRankService.class);
+    private static final int BATCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final IndexingSettings indexingSettings;
+    private final SearchSettings searchSettings;
+
+    private final Map<Integer, LinkGraph> graphs = new ConcurrentHashMap<>();
+    private final Map<Integer, LinkGraph.Scores> scores = new ConcurrentHashMap<>();
+
+    /**
+     * Загружает сохранённые ранги; страницы со средним рангом 1 не хранятся в памяти.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        Map<Integer, Integer> counts = new HashMap<>();
+        jdbcTemplate.query("SELECT site_id, COUNT(*) FROM page WHERE page_rank <> 1 GROUP BY site_id", rs -> {
+            counts.put(rs.getInt(1), rs.getInt(2));
+        });
+        counts.forEach(this::load);
+        logger.info("Загружены ранги страниц {} сайтов", scores.size());
+    }
+
+    /**
+     * Перечитывает ранги сайта, посчитанные другим экземпляром при распределённой индексации
+     * или загруженные из снимка.
+     */
+    public void reload(Site site) {
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM page WHERE site_id = ? AND page_rank <> 1",
+                Integer.class, site.getId());
+        load(site.getId(), count == null ? 0 : count);
+    }
+
+    private void load(int siteId, int count) {
+        int[] pageIds = new int[count];
+        float[] pageRanks = new float[count];
+        int[] loaded = new int[1];
+        jdbcTemplate.query("SELECT id, page_rank FROM page WHERE site_id = ? AND page_rank <> 1 ORDER BY id", rs -> {
+            if (loaded[0] < count) {
+                pageIds[loaded[0]] = rs.getInt(1);
+                pageRanks[loaded[0]++] = rs.getFloat(2);
+            }
+        }, siteId);
+        scores.put(siteId, new LinkGraph.Scores(Arrays.copyOf(pageIds, loaded[0]), Arrays.copyOf(pageRanks, loaded[0]),
+                new int[loaded[0]], 0));
+    }
+
+    /**
+     * Сбрасывает графы и ранги перед полной переиндексацией.
+     */
+    public void clear() {
+        graphs.clear();
+        scores.clear();
+    }
+
+    /**
+     * Учитывает сохранённую при обходе страницу и внутренние ссылки с неё.
+     */
+    public void pageCrawled(Site site, String url, int pageId, Collection<String> links) {
+        graphs.computeIfAbsent(site.getId(), id -> new LinkGraph()).addPage(url, pageId, links);
+    }
+
+    /**
+     * Считает ранги страниц сайта по графу, собранному при обходе, и сохраняет их.
+     * Граф после расчёта освобождается.
+     */
+    public void compute(Site site) {
+        LinkGraph graph = graphs.remove(site.getId());
+        if (graph == null) return;
+
+        long start = System.nanoTime();
+        int edges = graph.edgeCount();
+        LinkGraph.Scores result = graph.compute(indexingSettings.getPageRankDamping(), indexingSettings.getPageRankIterations());
+        long computed = System.nanoTime();
+        save(result);
+        scores.put(site.getId(), result);
+        logger.info("PageRank сайта {}: {} страниц, {} ссылок ({} различных), расчёт {} мс, запись {} мс",
+                site.getUrl(), result.pageIds.length, edges, result.edges,
+                (computed - start) / 1_000_000, (System.nanoTime() - computed) / 1_000_000);
+    }
+
+    private void save(LinkGraph.Scores result) {
+        for (int from = 0; from < result.pageIds.length; from += BATCH_SIZE) {
+            int offset = from;
+            int size = Math.min(BATCH_SIZE, result.pageIds.length - from);
+            jdbcTemplate.batchUpdate("UPDATE page SET page_rank = ?, in_links = ? WHERE id = ?",
+                    new BatchPreparedStatementSetter() {
+                        @Override
+                        public void setValues(PreparedStatement statement, int i) throws SQLException {
+                            statement.setFloat(1, result.pageRanks[offset + i]);
+                            statement.setInt(2, result.inLinks[offset + i]);
+                            statement.setInt(3, result.pageIds[offset + i]);
+                        }
+
+                        @Override
+                        public int getBatchSize() {
+                            return size;
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Множители релевантности страниц сайта: {@code 1 + pageRankWeight * ln(1 + PageRank)},
+     * где PageRank средней страницы равен 1. При нулевом весе множитель всегда 1.
+     */
+    public IntToDoubleFunction boosts(Site site) {
+        return boosts(site.getId());
+    }
+
+    public IntToDoubleFunction boosts(int siteId) {
+        double weight = searchSettings.getPageRankWeight();
+        if (weight <= 0) {
+            return pageId -> 1;
+        }
+        LinkGraph.Scores siteScores = scores.getOrDefault(siteId, LinkGraph.Scores.EMPTY);
+        return pageId -> 1 + weight * Math.log1p(siteScores.pageRank(pageId));
+    }
+
+    /**
+     * Наибольший множитель релевантности среди страниц сайта: граница для оценок,
+     * которые считаются без учёта PageRank.
+     */
+    public double maxBoost(Site site) {
+        double weight = searchSettings.getPageRankWeight();
+        if (weight <= 0) {
+            return 1;
+        }
+        LinkGraph.Scores siteScores = scores.getOrDefault(site.getId(), LinkGraph.Scores.EMPTY);
+        return 1 + weight * Math.log1p(siteScores.maxPageRank);
+    }
+}
@@ -0,0 +1,435 @@
+package searchengine.services;
+
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.config.SearchSettings;
+import searchengine.model.*;
+import searchengine.repository.PostingDeltaRepository;
+import searchengine.repository.PostingListRepository;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.IntToDoubleFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Поиск по сжатым спискам страниц лемм ({@link PostingList}) вместо строк search_index.
+ * <p>
+ * Конвейер индексации дописывает изменения в таблицу posting_delta, раз в
+ * {@code postingCompactionInterval} они вливаются в списки. При поиске списки лемм запроса
+ * читаются вместе с невлитыми изменениями и объединяются в памяти. Частоты лемм, стоп-леммы
+ * и релевантность (сумма рангов) такие же, как у {@link JpaSearchBackend}.
+ * <p>
+ * У списков длиннее {@code postingHotTierSize} при вливании выделяется горячая часть - страницы
+ * с наибольшими рангами. Запрос сначала считается по горячим частям, и полные списки читаются,
+ * только если лучшие страницы по ним не гарантированы, см. {@link #searchHotTiers}.
+ */
+@RequiredArgsConstructor
+@Service
+public class PostingSearchBackend implements SearchBackend {
+
+    private static final Logger logger = LoggerFactory.getLogger(PostingSearchBackend.class);
+
+    private static final String INSERT_DELTA =
+            "INSERT INTO posting_delta (site_id, lemma_id, page_id, ranking) VALUES (?, ?, ?, ?)";
+    /** Горячая часть длинного списка или весь короткий список; холодная часть не читается. */
+    private static final String SELECT_TIERS =
+            "SELECT lemma_id, page_count, cold_max_rank, hot IS NOT NULL, COALESCE(hot, data) FROM posting_list WHERE lemma_id IN (%s)";
+
+    /** Изменения для лемм сайта со строками search_index, но без списка и без невлитых изменений. */
+    private static final String REBUILD_LISTS =
+            "INSERT INTO posting_delta (site_id, lemma_id, page_id, ranking) " +
+            "SELECT l.site_id, si.lemma_id, si.page_id, GREATEST(1, ROUND(si.ranking)) FROM search_index si " +
+            "JOIN lemma l ON l.id = si.lemma_id WHERE l.site_id = ? " +
+            "AND NOT EXISTS (SELECT 1 FROM posting_list pl WHERE pl.lemma_id = l.id) " +
+            "AND NOT EXISTS (SELECT 1 FROM posting_delta pd WHERE pd.lemma_id = l.id)";
+
+    private final JpaSearchBackend jpaSearchBackend;
+    private final StopLemmaService stopLemmaService;
+    private final PageRankService pageRankService;
+    private final PostingListRepository postingListRepository;
+    private final PostingDeltaRepository postingDeltaRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final SearchSettings searchSettings;
+    private final SiteStatisticsService siteStatisticsService;
+    private final EngineMetrics engineMetrics;
+
+    private boolean enabled;
+
+    @PostConstruct
+    public void init() {
+        enabled = searchSettings.isPostingIndexing() || getName().equals(searchSettings.getBackend());
+    }
+
+    @Override
+    public String getName() {
+        return "postings";
+    }
+
+    /** Ведутся ли сжатые списки: они выбраны для поиска или включено {@code postingIndexing}. */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public SiteHits search(Site site, List<String> queryLemmas, int topK) {
+        SearchProfiler profiler = SearchProfiler.current();
+        long stageStart = System.nanoTime();
+
+        List<Lemma> lemmas = jpaSearchBackend.filterCommonLemmas(site, queryLemmas);
+        if (profiler != null) profiler.stage("filterCommonLemmas");
+        if (lemmas.isEmpty()) {
+            return SiteHits.EMPTY;
+        }
+        lemmas.sort(Comparator.comparingInt(Lemma::getFrequency));
+        if (profiler != null) {
+            profiler.evaluationOrder(site.getUrl(), lemmas.stream().map(Lemma::getLemma).collect(Collectors.toList()));
+        }
+
+        List<Integer> lemmaIds = lemmas.stream().map(Lemma::getId).collect(Collectors.toList());
+        IntToDoubleFunction boosts = pageRankService.boosts(site);
+        SiteHits tiered = searchHotTiers(site, lemmas, topK, boosts, stageStart);
+        if (profiler != null) profiler.stage("hotTiers");
+        if (tiered != null) {
+            return tiered;
+        }
+
+        List<Postings> postings = load(lemmaIds);
+        stageStart = recordStage(EngineMetrics.SearchStage.RETRIEVE, stageStart);
+        if (profiler != null) {
+            for (int i = 0; i < lemmas.size(); i++) {
+                profiler.postings(lemmas.get(i).getLemma(), site.getUrl(), postings.get(i).size());
+            }
+            profiler.stage("loadPostings");
+        }
+
+        Intersection result = intersect(postings, topK, boosts);
+        recordStage(EngineMetrics.SearchStage.SCORE, stageStart);
+        if (profiler != null) profiler.stage("intersect");
+        logger.info("Сайт {}: найдено страниц {} (сжатые списки)", site.getUrl(), result.total);
+        return new SiteHits(result.top, result.total, result.top.isEmpty() ? 0 : result.top.get(0).relevance);
+    }
+
+    /**
+     * Поиск по одним горячим частям списков. Страница, которой нет в горячей части хотя бы
+     * одного списка, набирает не больше {@code max_i(cold_i + sum_{j != i} max_j)}, умноженного
+     * на наибольший множитель PageRank сайта, где {@code cold_i} - наибольший ранг вне горячей
+     * части списка {@code i}, а {@code max_j} - наибольший ранг списка {@code j}. Если
+     * {@code topK}-я страница пересечения горячих частей набрала не меньше, выдача совпадает
+     * с полным поиском, а холодные части не читаются.
+     * <p>
+     * Число найденных страниц при этом точно только для одной леммы; для нескольких оно
+     * оценивается по числу страниц лемм в предположении их независимости.
+     *
+     * @return null, если есть невлитые изменения или горячих частей не хватило
+     */
+    private SiteHits searchHotTiers(Site site, List<Lemma> lemmas, int topK,
+                                    IntToDoubleFunction boosts, long stageStart) {
+        if (topK <= 0 || searchSettings.getPostingHotTierSize() <= 0) return null;
+        List<Integer> lemmaIds = lemmas.stream().map(Lemma::getId).collect(Collectors.toList());
+        if (postingDeltaRepository.existsByLemmaIdIn(lemmaIds)) return null;
+
+        String placeholders = String.join(", ", Collections.nCopies(lemmaIds.size(), "?"));
+        List<Tier> tiers = jdbcTemplate.query(String.format(SELECT_TIERS, placeholders),
+                (rs, rowNum) -> new Tier(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getBoolean(4),
+                        Postings.decode(rs.getBytes(5))),
+                lemmaIds.toArray());
+        SearchProfiler profiler = SearchProfiler.current();
+        if (profiler != null) profiler.rows(tiers.size());
+        if (tiers.size() < lemmaIds.size()) return null;
+        long retrieved = System.nanoTime();
+
+        List<Postings> postings = tiers.stream().map(tier -> tier.postings).collect(Collectors.toList());
+        Intersection result = intersect(postings, topK, boosts);
+        boolean partial = tiers.stream().anyMatch(tier -> tier.partial);
+        int total = result.total;
+        if (partial) {
+            if (result.top.size() < topK) return null;
+            long maxSum = 0;
+            for (Tier tier : tiers) {
+                maxSum += tier.maxRank;
+            }
+            long coldSum = 0;
+            for (Tier tier : tiers) {
+                if (tier.partial) coldSum = Math.max(coldSum, maxSum - tier.maxRank + tier.coldMaxRank);
+            }
+            double bound = coldSum * pageRankService.maxBoost(site);
+            if (result.top.get(topK - 1).relevance < bound) return null;
+            total = Math.max(total, estimateTotal(site, tiers));
+        }
+
+        engineMetrics.recordSearchStage(EngineMetrics.SearchStage.RETRIEVE, retrieved - stageStart);
+        recordStage(EngineMetrics.SearchStage.SCORE, retrieved);
+        if (profiler != null) {
+            for (Lemma lemma : lemmas) {
+                tiers.stream()
+                        .filter(tier -> tier.lemmaId == lemma.getId())
+                        .forEach(tier -> profiler.postings(lemma.getLemma(), site.getUrl(), tier.pageCount));
+            }
+        }
+        logger.info("Сайт {}: найдено страниц {} (сжатые списки{})", site.getUrl(), total,
+                partial ? ", горячие части" : "");
+        return new SiteHits(result.top, total, result.top.isEmpty() ? 0 : result.top.get(0).relevance);
+    }
+
+    private int estimateTotal(Site site, List<Tier> tiers) {
+        int shortest = tiers.stream().mapToInt(tier -> tier.pageCount).min().orElse(0);
+        if (tiers.size() == 1) return shortest;
+        double pages = Math.max(siteStatisticsService.pageCount(site), 1);
+        double estimate = pages;
+        for (Tier tier : tiers) {
+            estimate *= Math.min(tier.pageCount / pages, 1);
+        }
+        return (int) Math.min(Math.round(estimate), shortest);
+    }
+
+    /**
+     * Пересечение списков с {@code topK} лучшими страницами. Пересечение идёт от самого
+     * короткого списка, остальные проверяются двоичным поиском.
+     */
+    static Intersection intersect(List<Postings> postings, int topK, IntToDoubleFunction boosts) {
+        postings.sort(Comparator.comparingInt(Postings::size));
+        Postings shortest = postings.get(0);
+        PriorityQueue<double[]> best = new PriorityQueue<>(Comparator.comparingDouble(entry -> entry[1]));
+        int total = 0;
+        for (int i = 0; i < shortest.size(); i++) {
+            int pageId = shortest.pageId(i);
+            long relevance = shortest.rank(i);
+            boolean containsAll = true;
+            for (int j = 1; j < postings.size() && containsAll; j++) {
+                int index = postings.get(j).indexOf(pageId);
+                if (index < 0) {
+                    containsAll = false;
+                } else {
+                    relevance += postings.get(j).rank(index);
+                }
+            }
+            if (!containsAll) continue;
+            total++;
+            if (topK <= 0) continue;
+            double score = relevance * boosts.applyAsDouble(pageId);
+            if (best.size() < topK) {
+                best.add(new double[]{pageId, score});
+            } else if (score > best.peek()[1]) {
+                best.poll();
+                best.add(new double[]{pageId, score});
+            }
+        }
+
+        List<double[]> ranked = new ArrayList<>(best);
+        ranked.sort(Comparator.comparingDouble((double[] entry) -> entry[1]).reversed());
+        List<ScoredPage> top = new ArrayList<>(ranked.size());
+        for (double[] entry : ranked) {
+            top.add(new ScoredPage((int) entry[0], entry[1]));
+        }
+        return new Intersection(top, total);
+    }
+
+    /**
+     * Списки страниц лемм с невлитыми изменениями. Изменения читаются раньше списков: если между
+     * запросами изменения успели влиться, они применятся к списку повторно, что ничего не меняет.
+     */
+    private List<Postings> load(List<Integer> lemmaIds) {
+        Map<Integer, List<PostingDelta>> deltas = postingDeltaRepository.findAllByLemmaIdInOrderById(lemmaIds).stream()
+                .collect(Collectors.groupingBy(PostingDelta::getLemmaId));
+        Map<Integer, PostingList> lists = postingListRepository.findAllByLemmaIdIn(lemmaIds).stream()
+                .collect(Collectors.toMap(PostingList::getLemmaId, Function.identity()));
+
+        SearchProfiler profiler = SearchProfiler.current();
+        if (profiler != null) profiler.rows(lists.size() + deltas.values().stream().mapToInt(List::size).sum());
+
+        List<Postings> postings = new ArrayList<>();
+        for (Integer lemmaId : lemmaIds) {
+            PostingList list = lists.get(lemmaId);
+            Postings base = list == null ? Postings.EMPTY : Postings.decode(list.getData());
+            postings.add(base.apply(deltas.getOrDefault(lemmaId, List.of())));
+        }
+        return postings;
+    }
+
+    @Override
+    public void pageIndexed(Page page, String text, List<SearchIndex> entries) {
+        if (enabled) {
+            writeDeltas(page, entries, false);
+        }
+    }
+
+    @Override
+    public void pageDeleted(Page page, List<SearchIndex> entries) {
+        if (enabled) {
+            writeDeltas(page, entries, true);
+        }
+    }
+
+    private void writeDeltas(Page page, List<SearchIndex> entries, boolean deleted) {
+        if (entries.isEmpty()) return;
+        jdbcTemplate.batchUpdate(INSERT_DELTA, entries, entries.size(), (statement, entry) -> {
+            statement.setInt(1, page.getSite().getId());
+            statement.setInt(2, entry.getLemma().getId());
+            statement.setInt(3, page.getId());
+            statement.setInt(4, deleted ? 0 : Postings.quantize(entry.getRanking()));
+        });
+    }
+
+    /**
+     * Вливает накопленные изменения в списки, по транзакции на лемму. Удаляются только прочитанные
+     * изменения, поэтому записанные во время вливания дождутся следующего прохода.
+     */
+    @Scheduled(fixedDelayString = "${search-settings.posting-compaction-interval:10000}")
+    public void compact() {
+        if (!enabled) return;
+
+        List<Integer> lemmaIds = postingDeltaRepository.findPendingLemmaIds(
+                PageRequest.of(0, searchSettings.getPostingCompactionBatch()));
+        if (lemmaIds.isEmpty()) return;
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        long start = System.nanoTime();
+        int merged = 0;
+        for (Integer lemmaId : lemmaIds) {
+            merged += transaction.execute(status -> compact(lemmaId));
+        }
+        logger.debug("Влито изменений: {}, лемм: {}, за {} мс",
+                merged, lemmaIds.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private int compact(int lemmaId) {
+        Optional<PostingList> existing = postingListRepository.findForUpdate(lemmaId);
+        List<PostingDelta> deltas = postingDeltaRepository.findAllByLemmaIdOrderById(lemmaId);
+        if (deltas.isEmpty()) return 0;
+
+        Postings base = existing.map(list -> Postings.decode(list.getData())).orElse(Postings.EMPTY);
+        Postings postings = base.apply(deltas);
+        if (postings.size() == 0) {
+            // Лемма исчезла со всех страниц
+            existing.ifPresent(postingListRepository::delete);
+        } else {
+            PostingList list = existing.orElseGet(PostingList::new);
+            list.setLemmaId(lemmaId);
+            list.setSiteId(deltas.get(0).getSiteId());
+            list.setPageCount(postings.size());
+            list.setData(postings.encode());
+            setHotTier(list, postings);
+            postingListRepository.save(list);
+        }
+        postingDeltaRepository.deleteAllByIdInBatch(deltas.stream().map(PostingDelta::getId).collect(Collectors.toList()));
+        return deltas.size();
+    }
+
+    /**
+     * Пересобирает горячие части длинных списков сайта по посчитанному PageRank: из страниц
+     * с равным рангом в горячую часть попадают страницы с большим множителем.
+     */
+    @Override
+    public void siteIndexed(Site site) {
+        if (!enabled) return;
+        if (searchSettings.writesSearchIndex()) {
+            dropStopLemmaLists(site);
+        }
+        if (searchSettings.getPostingHotTierSize() <= 0) return;
+
+        long start = System.nanoTime();
+        try {
+            List<Integer> lemmaIds = jdbcTemplate.queryForList(
+                    "SELECT lemma_id FROM posting_list WHERE site_id = ? AND page_count > ?",
+                    Integer.class, site.getId(), searchSettings.getPostingHotTierSize());
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            for (Integer lemmaId : lemmaIds) {
+                transaction.executeWithoutResult(status -> postingListRepository.findForUpdate(lemmaId)
+                        .ifPresent(list -> {
+                            setHotTier(list, Postings.decode(list.getData()));
+                            postingListRepository.save(list);
+                        }));
+            }
+            logger.info("Горячие части списков сайта {} пересобраны: {} лемм за {} мс",
+                    site.getUrl(), lemmaIds.size(), (System.nanoTime() - start) / 1_000_000);
+        } catch (RuntimeException e) {
+            logger.error("Не удалось пересобрать горячие части списков сайта {}: {}", site.getUrl(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Удаляет списки и невлитые изменения стоп-лемм сайта по частотам после обхода: когда пишется
+     * search_index, их записи хранит холодный слой (см. {@link StopLemmaService}), а поиск по спискам
+     * не отвечает на запросы. Лемме, переставшей быть стоп-леммой, список собирается заново
+     * из search_index через posting_delta. Если поиск идёт по спискам, они - единственная копия
+     * записей и не удаляются: стоп-леммы отбрасываются при поиске.
+     */
+    private void dropStopLemmaLists(Site site) {
+        try {
+            List<Integer> lemmaIds = stopLemmaService.stopLemmaIds(site);
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            transaction.executeWithoutResult(status -> {
+                for (Integer lemmaId : lemmaIds) {
+                    jdbcTemplate.update("DELETE FROM posting_delta WHERE lemma_id = ?", lemmaId);
+                    jdbcTemplate.update("DELETE FROM posting_list WHERE lemma_id = ?", lemmaId);
+                }
+                jdbcTemplate.update(REBUILD_LISTS, site.getId());
+            });
+            logger.info("Списки стоп-лемм сайта {} удалены: {}", site.getUrl(), lemmaIds.size());
+        } catch (RuntimeException e) {
+            logger.error("Не удалось удалить списки стоп-лемм сайта {}: {}", site.getUrl(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Выделяет горячую часть списка длиннее {@code postingHotTierSize}; у коротких списков
+     * она сбрасывается.
+     */
+    private void setHotTier(PostingList list, Postings postings) {
+        int hotTierSize = searchSettings.getPostingHotTierSize();
+        if (hotTierSize <= 0 || postings.size() <= hotTierSize) {
+            list.setHot(null);
+            list.setColdMaxRank(0);
+            return;
+        }
+        Postings hot = postings.top(hotTierSize, pageRankService.boosts(list.getSiteId()));
+        list.setHot(hot.encode());
+        list.setColdMaxRank(postings.maxRankExcept(hot));
+    }
+
+    private long recordStage(EngineMetrics.SearchStage stage, long stageStart) {
+        long now = System.nanoTime();
+        engineMetrics.recordSearchStage(stage, now - stageStart);
+        return now;
+    }
+
+    /** Горячая часть списка леммы, а для короткого списка - весь список. */
+    private static final class Tier {
+        final int lemmaId;
+        final int pageCount;
+        final int coldMaxRank;
+        /** Есть холодная часть, которая не прочитана. */
+        final boolean partial;
+        final Postings postings;
+        final int maxRank;
+
+        Tier(int lemmaId, int pageCount, int coldMaxRank, boolean partial, Postings postings) {
+            this.lemmaId = lemmaId;
+            this.pageCount = pageCount;
+            this.coldMaxRank = coldMaxRank;
+            this.partial = partial;
+            this.postings = postings;
+            this.maxRank = postings.maxRank();
+        }
+    }
+
+    static final class Intersection {
+        final List<ScoredPage> top;
+        final int total;
+
+        Intersection(List<ScoredPage> top, int total) {
+            this.top = top;
+            this.total = total;
+        }
+    }
+}
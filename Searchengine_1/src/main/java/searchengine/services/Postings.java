@@ -0,0 +1,208 @@
+package searchengine.services;
+
+import searchengine.model.PostingDelta;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Список страниц леммы: номера страниц по возрастанию и ранги леммы на них.
+ * <p>
+ * Формат {@link #encode()}: число страниц, затем разности соседних номеров страниц
+ * (первый номер целиком), затем ранги - всё в varint, по 7 бит в байте. Номера страниц
+ * сайта идут почти подряд, а ранг - число вхождений леммы, поэтому на страницу обычно
+ * уходит 2 байта против ~50 байт строки search_index.
+ */
+final class Postings {
+
+    static final Postings EMPTY = new Postings(new int[0], new int[0], 0);
+
+    private final int[] pageIds;
+    private final int[] ranks;
+    private final int size;
+
+    private Postings(int[] pageIds, int[] ranks, int size) {
+        this.pageIds = pageIds;
+        this.ranks = ranks;
+        this.size = size;
+    }
+
+    /** Список из первых {@code size} элементов; номера страниц должны идти по возрастанию. */
+    static Postings of(int[] pageIds, int[] ranks, int size) {
+        return new Postings(pageIds, ranks, size);
+    }
+
+    int size() {
+        return size;
+    }
+
+    int pageId(int index) {
+        return pageIds[index];
+    }
+
+    int rank(int index) {
+        return ranks[index];
+    }
+
+    /** Позиция страницы или отрицательное значение, как у {@link Arrays#binarySearch}. */
+    int indexOf(int pageId) {
+        return Arrays.binarySearch(pageIds, 0, size, pageId);
+    }
+
+    /** Наибольший ранг или 0 для пустого списка. */
+    int maxRank() {
+        int max = 0;
+        for (int i = 0; i < size; i++) {
+            max = Math.max(max, ranks[i]);
+        }
+        return max;
+    }
+
+    /**
+     * Горячая часть списка: {@code count} страниц с наибольшими рангами, при равных рангах -
+     * с большим множителем {@code boosts}. Номера страниц в ней тоже идут по возрастанию.
+     */
+    Postings top(int count, IntToDoubleFunction boosts) {
+        if (count >= size) return this;
+        double[] boost = new double[size];
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            boost[i] = boosts.applyAsDouble(pageIds[i]);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> ranks[a] != ranks[b]
+                ? Integer.compare(ranks[b], ranks[a])
+                : Double.compare(boost[b], boost[a]));
+        int[] selected = new int[count];
+        for (int i = 0; i < count; i++) selected[i] = order[i];
+        Arrays.sort(selected);
+
+        int[] topIds = new int[count];
+        int[] topRanks = new int[count];
+        for (int i = 0; i < count; i++) {
+            topIds[i] = pageIds[selected[i]];
+            topRanks[i] = ranks[selected[i]];
+        }
+        return new Postings(topIds, topRanks, count);
+    }
+
+    /** Наибольший ранг страниц, которых нет в {@code part} - части этого списка. */
+    int maxRankExcept(Postings part) {
+        int max = 0;
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < part.size && part.pageIds[j] < pageIds[i]) j++;
+            if (j < part.size && part.pageIds[j] == pageIds[i]) continue;
+            max = Math.max(max, ranks[i]);
+        }
+        return max;
+    }
+
+    /**
+     * Применяет изменения по порядку: ранг больше 0 добавляет страницу или заменяет её ранг,
+     * ранг 0 удаляет. Повторное применение тех же изменений результат не меняет.
+     */
+    Postings apply(List<PostingDelta> deltas) {
+        if (deltas.isEmpty()) return this;
+
+        // Изменений немного, поэтому они сводятся по странице и сливаются с отсортированным списком
+        int[] changedIds = new int[deltas.size()];
+        int[] changedRanks = new int[deltas.size()];
+        int changed = 0;
+        Integer[] order = new Integer[deltas.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        // Сортировка устойчивая: для одной страницы последним остаётся самое позднее изменение
+        Arrays.sort(order, (a, b) -> Integer.compare(deltas.get(a).getPageId(), deltas.get(b).getPageId()));
+        for (Integer i : order) {
+            PostingDelta delta = deltas.get(i);
+            if (changed > 0 && changedIds[changed - 1] == delta.getPageId()) {
+                changedRanks[changed - 1] = delta.getRanking();
+            } else {
+                changedIds[changed] = delta.getPageId();
+                changedRanks[changed] = delta.getRanking();
+                changed++;
+            }
+        }
+
+        int[] mergedIds = new int[size + changed];
+        int[] mergedRanks = new int[size + changed];
+        int merged = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size || j < changed) {
+            int pageId;
+            int rank;
+            if (j == changed || (i < size && pageIds[i] < changedIds[j])) {
+                pageId = pageIds[i];
+                rank = ranks[i++];
+            } else {
+                if (i < size && pageIds[i] == changedIds[j]) i++;
+                pageId = changedIds[j];
+                rank = changedRanks[j++];
+            }
+            if (rank > 0) {
+                mergedIds[merged] = pageId;
+                mergedRanks[merged] = rank;
+                merged++;
+            }
+        }
+        return new Postings(mergedIds, mergedRanks, merged);
+    }
+
+    byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size * 2 + 5);
+        writeVarint(out, size);
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            writeVarint(out, pageIds[i] - previous);
+            previous = pageIds[i];
+        }
+        for (int i = 0; i < size; i++) {
+            writeVarint(out, ranks[i]);
+        }
+        return out.toByteArray();
+    }
+
+    static Postings decode(byte[] data) {
+        int[] position = {0};
+        int size = readVarint(data, position);
+        int[] pageIds = new int[size];
+        int[] ranks = new int[size];
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            previous += readVarint(data, position);
+            pageIds[i] = previous;
+        }
+        for (int i = 0; i < size; i++) {
+            ranks[i] = readVarint(data, position);
+        }
+        return new Postings(pageIds, ranks, size);
+    }
+
+    /** Ранг в search_index - число вхождений леммы, дробной части у него нет. */
+    static int quantize(float ranking) {
+        return Math.max(1, Math.round(ranking));
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(byte[] data, int[] position) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[position[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+}
@@ -0,0 +1,88 @@
+package searchengine.services;
+
+import searchengine.model.Page;
+import searchengine.model.SearchIndex;
+import searchengine.model.Site;
+
+import java.util.List;
+
+/**
+ * Способ поиска страниц сайта по леммам запроса. Какая реализация отвечает на запросы,
+ * задаёт {@code search-settings.backend}; о сохранённых и удалённых страницах конвейер
+ * индексации сообщает всем реализациям, чтобы их индексы можно было сравнивать на одном корпусе.
+ */
+public interface SearchBackend {
+
+    /** Имя реализации для {@code search-settings.backend}. */
+    String getName();
+
+    /**
+     * Лучшие {@code topK} страниц сайта по убыванию абсолютной релевантности и число всех
+     * подходящих страниц. Нормировать релевантность можно только после объединения сайтов.
+     */
+    SiteHits search(Site site, List<String> queryLemmas, int topK);
+
+    /**
+     * Страница сохранена при индексации.
+     *
+     * @param text    текст страницы, из которого получены её леммы
+     * @param entries леммы страницы с рангами; в search_index они записаны, если
+     *                {@link searchengine.config.SearchSettings#writesSearchIndex()}
+     */
+    default void pageIndexed(Page page, String text, List<SearchIndex> entries) {
+    }
+
+    /**
+     * Страница удалена.
+     *
+     * @param entries леммы страницы с рангами, как при {@link #pageIndexed}
+     */
+    default void pageDeleted(Page page, List<SearchIndex> entries) {
+    }
+
+    /** Обход сайта завершён, PageRank его страниц посчитан. */
+    default void siteIndexed(Site site) {
+    }
+
+    /**
+     * Сайт загружен из снимка: страницы и леммы уже в базе. Реализация с собственным индексом
+     * строит его заново по сохранённым текстам страниц; вслед за этим вызывается {@link #siteIndexed}.
+     */
+    default void siteImported(Site site) {
+    }
+
+    /** Все данные удалены перед полной индексацией. */
+    default void cleared() {
+    }
+
+    /**
+     * Номер страницы и её абсолютная релевантность. Сами страницы читаются только
+     * для итоговой страницы выдачи, см. {@code PageRepository#findSummariesByIdIn}.
+     */
+    class ScoredPage {
+        final int pageId;
+        final double relevance;
+
+        public ScoredPage(int pageId, double relevance) {
+            this.pageId = pageId;
+            this.relevance = relevance;
+        }
+    }
+
+    /** Результат поиска по одному сайту. */
+    class SiteHits {
+        static final SiteHits EMPTY = new SiteHits(List.of(), 0, 0);
+
+        /** Лучшие страницы по убыванию релевантности. */
+        final List<ScoredPage> top;
+        /** Сколько всего страниц сайта подходит под запрос; реализация может вернуть оценку. */
+        final int total;
+        final double maxRelevance;
+
+        public SiteHits(List<ScoredPage> top, int total, double maxRelevance) {
+            this.top = top;
+            this.total = total;
+            this.maxRelevance = maxRelevance;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package searchengine.services;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Адаптивный предел одновременных поисковых запросов.
+ * <p>
+ * Предел подстраивается по задержке: короткое скользящее среднее задержки сравнивается с длинным,
+ * которое отражает обычную задержку без перегрузки. Пока короткое не выходит за
+ * {@code latencyTolerance} длинных, предел понемногу растёт; когда выходит, уменьшается
+ * пропорционально отношению средних. Запрос, прерванный по тайм-ауту, сразу снижает предел
+ * на четверть.
+ * <p>
+ * Сверх предела запросы ждут в ограниченной очереди не дольше {@code queueTimeout}; если очередь
+ * заполнена или ожидание истекло, разрешение завершается с {@link SearchOverloadedException}.
+ * Ожидание не занимает потоков: в очереди лежат незавершённые {@link CompletableFuture},
+ * и освободившееся место сразу передаётся первому из них.
+ */
+@Component
+public class SearchConcurrencyLimiter {
+
+    /** Вес нового замера в коротком среднем (около 10 последних запросов). */
+    private static final double SHORT_ALPHA = 0.1;
+    /** Вес нового замера в длинном среднем (около 500 последних запросов). */
+    private static final double LONG_ALPHA = 0.002;
+    /** Доля нового значения предела при каждом пересчёте. */
+    private static final double SMOOTHING = 0.2;
+    /** Множитель предела после запроса, прерванного по тайм-ауту. */
+    private static final double TIMEOUT_BACKOFF = 0.75;
+
+    private final SearchSettings settings;
+    private final EngineMetrics engineMetrics;
+    private final Clock clock;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Deque<CompletableFuture<Permit>> waiters = new ArrayDeque<>();
+
+    private double limit;
+    private int inFlight;
+    private double shortLatency;
+    private double longLatency;
+
+    @Autowired
+    public SearchConcurrencyLimiter(SearchSettings settings, EngineMetrics engineMetrics) {
+        this(settings, engineMetrics, Clock.SYSTEM);
+    }
+
+    SearchConcurrencyLimiter(SearchSettings settings, EngineMetrics engineMetrics, Clock clock) {
+        this.settings = settings;
+        this.engineMetrics = engineMetrics;
+        this.clock = clock;
+        this.limit = settings.getInitialConcurrency();
+        engineMetrics.registerSearchLimiter(this::getLimit, this::getInFlight, this::getWaiting);
+    }
+
+    /**
+     * Занимает место для запроса. Если места нет, запрос встаёт в очередь, и результат
+     * завершится, когда место освободится или истечёт {@code queueTimeout}. Отмена результата
+     * убирает запрос из очереди. Полученное разрешение нужно вернуть через {@link Permit#release(boolean)}.
+     */
+    public CompletableFuture<Permit> acquire() {
+        CompletableFuture<Permit> waiter = new CompletableFuture<>();
+        lock.lock();
+        try {
+            // Новые запросы не обгоняют тех, кто уже ждёт
+            if (waiters.isEmpty() && inFlight < currentLimit()) {
+                inFlight++;
+                return CompletableFuture.completedFuture(new Permit());
+            }
+            if (waiters.size() >= settings.getQueueSize()) {
+                engineMetrics.recordSearchRejected("queue_full");
+                return CompletableFuture.failedFuture(new SearchOverloadedException(
+                        "Сервер перегружен, очередь поисковых запросов заполнена", retryAfterSeconds()));
+            }
+            waiters.addLast(waiter);
+        } finally {
+            lock.unlock();
+        }
+
+        clock.schedule(() -> expire(waiter), settings.getQueueTimeout());
+        waiter.whenComplete((permit, error) -> {
+            if (waiter.isCancelled()) {
+                remove(waiter);
+            }
+        });
+        return waiter;
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return currentLimit();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getWaiting() {
+        lock.lock();
+        try {
+            return waiters.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int currentLimit() {
+        return Math.max(settings.getMinConcurrency(), (int) limit);
+    }
+
+    private void expire(CompletableFuture<Permit> waiter) {
+        SearchOverloadedException rejection;
+        lock.lock();
+        try {
+            if (!waiters.remove(waiter)) return;
+            rejection = new SearchOverloadedException("Сервер перегружен, время ожидания в очереди истекло", retryAfterSeconds());
+        } finally {
+            lock.unlock();
+        }
+        engineMetrics.recordSearchRejected("queue_timeout");
+        waiter.completeExceptionally(rejection);
+    }
+
+    private void remove(CompletableFuture<Permit> waiter) {
+        lock.lock();
+        try {
+            waiters.remove(waiter);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param latency время выполнения запроса, нс, или -1, если разрешение не использовано
+     */
+    private void release(long latency, boolean timedOut) {
+        List<CompletableFuture<Permit>> granted = new ArrayList<>();
+        lock.lock();
+        try {
+            int busy = inFlight;
+            inFlight--;
+            if (timedOut) {
+                limit = Math.max(settings.getMinConcurrency(), limit * TIMEOUT_BACKOFF);
+            } else if (latency >= 0) {
+                updateLimit(latency, busy);
+            }
+            while (!waiters.isEmpty() && inFlight < currentLimit()) {
+                granted.add(waiters.pollFirst());
+                inFlight++;
+            }
+        } finally {
+            lock.unlock();
+        }
+        // Завершаем вне блокировки: продолжения ожидающих выполняются в этом же потоке
+        for (CompletableFuture<Permit> waiter : granted) {
+            Permit permit = new Permit();
+            if (!waiter.complete(permit)) {
+                permit.cancel();
+            }
+        }
+    }
+
+    private void updateLimit(long latency, int busy) {
+        if (longLatency == 0) {
+            shortLatency = latency;
+            longLatency = latency;
+            return;
+        }
+        shortLatency += SHORT_ALPHA * (latency - shortLatency);
+        longLatency += LONG_ALPHA * (latency - longLatency);
+        // После перегрузки длинное среднее быстрее возвращается вниз, чтобы медленный режим не стал нормой
+        if (longLatency > 2 * shortLatency) {
+            longLatency *= 0.95;
+        }
+        // Пока занято меньше половины мест, задержка ничего не говорит о величине предела
+        if (busy * 2 < limit) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, settings.getLatencyTolerance() * longLatency / shortLatency));
+        // Добавка в одно место даёт пределу расти, пока задержка в норме
+        double target = limit * gradient + 1;
+        limit = limit * (1 - SMOOTHING) + target * SMOOTHING;
+        limit = Math.max(settings.getMinConcurrency(), Math.min(settings.getMaxConcurrency(), limit));
+    }
+
+    /** Оценка времени, за которое освободится место для нового запроса, не меньше секунды. */
+    private long retryAfterSeconds() {
+        double seconds = shortLatency / 1e9 * (waiters.size() + 1) / currentLimit();
+        return Math.max(1, (long) Math.ceil(seconds));
+    }
+
+    /** Часы для замера задержки и истечения ожидания в очереди; в тестах подменяются. */
+    interface Clock {
+        Clock SYSTEM = new Clock() {
+            @Override
+            public long nanoTime() {
+                return System.nanoTime();
+            }
+
+            @Override
+            public void schedule(Runnable task, long delayMillis) {
+                CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS).execute(task);
+            }
+        };
+
+        long nanoTime();
+
+        /** Выполняет {@code task} через {@code delayMillis} мс. */
+        void schedule(Runnable task, long delayMillis);
+    }
+
+    /**
+     * Разрешение на выполнение одного запроса. Возвращается один раз: повторный вызов
+     * {@link #release(boolean)} или {@link #cancel()} ничего не делает.
+     */
+    public class Permit {
+        private final long start = clock.nanoTime();
+        private boolean returned;
+
+        /**
+         * @param timedOut запрос прерван по тайм-ауту; такой замер задержки не учитывается,
+         *                 а предел сразу уменьшается
+         */
+        public void release(boolean timedOut) {
+            if (returned) return;
+            returned = true;
+            SearchConcurrencyLimiter.this.release(clock.nanoTime() - start, timedOut);
+        }
+
+        /** Возвращает неиспользованное разрешение, не влияя на предел. */
+        public void cancel() {
+            if (returned) return;
+            returned = true;
+            SearchConcurrencyLimiter.this.release(-1, false);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package searchengine.services;
+
+import lombok.Getter;
+
+/**
+ * Поисковый запрос отклонён: все места заняты и очередь переполнена или не успела освободиться.
+ */
+@Getter
+public class SearchOverloadedException extends RuntimeException {
+
+    /** Через сколько секунд имеет смысл повторить запрос. */
+    private final long retryAfterSeconds;
+
+    public SearchOverloadedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
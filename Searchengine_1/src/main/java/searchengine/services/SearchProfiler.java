@@ -0,0 +1,224 @@
+package searchengine.services;
+
+import searchengine.dto.response.LemmaProfile;
+import searchengine.dto.response.SearchProfile;
+import searchengine.dto.response.SearchStageProfile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * Профиль одного поискового запроса ({@code /api/search?profile=true}): время и число SQL-запросов
+ * по этапам, число строк, полученных на этапе, размеры списков вхождений лемм и порядок их проверки.
+ * <p>
+ * Профилировщик привязан к потоку, выполняющему поиск. Поиск по каждому сайту получает свой
+ * профилировщик {@link #forSite}: его этапы (например, {@code filterCommonLemmas}, {@code findPages},
+ * {@code calculateRelevance}) попадают в профиль вложенными в ближайший этап запроса, а SQL-запросы
+ * и строки учитываются и в нём. Когда профилирование не запрошено, {@link #current()} возвращает
+ * {@code null}, и весь учёт сводится к одной проверке; SQL-запросы считает
+ * {@link searchengine.config.ProfilingStatementInspector}.
+ */
+public final class SearchProfiler {
+
+    private static final ThreadLocal<SearchProfiler> CURRENT = new ThreadLocal<>();
+
+    private final SearchProfiler parent;
+    private final String site;
+    private final long startTime;
+    private final List<SearchStageProfile> stages = new ArrayList<>();
+    private final List<SearchStageProfile> siteStages = new ArrayList<>();
+    private final List<LemmaProfile> lemmas = new ArrayList<>();
+    private final Map<String, List<String>> evaluationOrder = new TreeMap<>();
+    private long stageStart;
+    private int statements;
+    private int stageStatements;
+    private long stageRows;
+    private boolean excluded;
+    private long profilingNanos;
+
+    private SearchProfiler(SearchProfiler parent, String site, long startTime) {
+        this.parent = parent;
+        this.site = site;
+        this.startTime = startTime;
+        this.stageStart = startTime;
+    }
+
+    public static SearchProfiler start() {
+        return start(System.nanoTime());
+    }
+
+    /**
+     * @param startTime момент поступления запроса по {@link System#nanoTime()}, если он раньше начала выполнения
+     */
+    public static SearchProfiler start(long startTime) {
+        SearchProfiler profiler = new SearchProfiler(null, null, startTime);
+        CURRENT.set(profiler);
+        return profiler;
+    }
+
+    public static SearchProfiler current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Профилировщик поиска по одному сайту. Он привязывается к потоку задачи через {@link #attach()}
+     * и завершается {@link #finishSite()}.
+     */
+    public SearchProfiler forSite(String site) {
+        return new SearchProfiler(this, site, System.nanoTime());
+    }
+
+    /** Привязывает профилировщик к текущему потоку. */
+    public void attach() {
+        CURRENT.set(this);
+    }
+
+    public static void detach() {
+        CURRENT.remove();
+    }
+
+    public synchronized void statementExecuted() {
+        if (excluded) return;
+        statements++;
+        stageStatements++;
+        if (parent != null) parent.statementExecuted();
+    }
+
+    public synchronized void rows(long count) {
+        stageRows += count;
+        if (parent != null) parent.rows(count);
+    }
+
+    /**
+     * Выполняет запрос, нужный только профилю: его SQL-запросы и время не попадают в этапы.
+     */
+    public <T> T excluded(Supplier<T> action) {
+        long start = System.nanoTime();
+        synchronized (this) {
+            excluded = true;
+        }
+        try {
+            return action.get();
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            synchronized (this) {
+                excluded = false;
+                stageStart += elapsed;
+            }
+            root().addProfilingTime(elapsed);
+        }
+    }
+
+    /**
+     * Завершает текущий этап: всё, что было учтено с конца предыдущего этапа, относится к нему.
+     * Этапы сайтов, завершённых за это время, вкладываются в него.
+     */
+    public synchronized void stage(String name) {
+        long now = System.nanoTime();
+        SearchStageProfile stage = new SearchStageProfile();
+        stage.setName(name);
+        stage.setSite(site);
+        stage.setTimeMs(toMillis(now - stageStart));
+        stage.setStatements(stageStatements);
+        stage.setRows(stageRows);
+        if (!siteStages.isEmpty()) {
+            stage.setStages(new ArrayList<>(siteStages));
+            siteStages.clear();
+        }
+        stages.add(stage);
+
+        stageStart = now;
+        stageStatements = 0;
+        stageRows = 0;
+    }
+
+    /**
+     * Завершает поиск по сайту: его этапы передаются профилировщику запроса. Учтённое после
+     * последнего этапа (например, при раннем выходе) становится этапом {@code search}.
+     */
+    public void finishSite() {
+        List<SearchStageProfile> finished;
+        synchronized (this) {
+            if (stages.isEmpty() || stageStatements > 0 || stageRows > 0) stage("search");
+            finished = new ArrayList<>(stages);
+        }
+        parent.addSiteStages(finished);
+    }
+
+    private synchronized void addSiteStages(List<SearchStageProfile> finished) {
+        siteStages.addAll(finished);
+    }
+
+    private synchronized void addProfilingTime(long nanos) {
+        profilingNanos += nanos;
+    }
+
+    private SearchProfiler root() {
+        return parent == null ? this : parent.root();
+    }
+
+    public void lemma(String lemma, String site, int frequency, long sitePages, boolean stopLemma) {
+        if (parent != null) {
+            parent.lemma(lemma, site, frequency, sitePages, stopLemma);
+            return;
+        }
+        LemmaProfile profile = new LemmaProfile();
+        profile.setLemma(lemma);
+        profile.setSite(site);
+        profile.setFrequency(frequency);
+        profile.setSitePages(sitePages);
+        profile.setStopLemma(stopLemma);
+        synchronized (this) {
+            lemmas.add(profile);
+        }
+    }
+
+    /**
+     * Длина списка вхождений леммы, который поиск действительно прочитал на сайте.
+     */
+    public void postings(String lemma, String site, long count) {
+        if (parent != null) {
+            parent.postings(lemma, site, count);
+            return;
+        }
+        synchronized (this) {
+            for (LemmaProfile profile : lemmas) {
+                if (profile.getLemma().equals(lemma) && profile.getSite().equals(site)) {
+                    profile.setPostings(count);
+                }
+            }
+        }
+    }
+
+    public void evaluationOrder(String site, List<String> lemmas) {
+        if (parent != null) {
+            parent.evaluationOrder(site, lemmas);
+            return;
+        }
+        synchronized (this) {
+            evaluationOrder.put(site, new ArrayList<>(lemmas));
+        }
+    }
+
+    /**
+     * Отвязывает профилировщик от потока и возвращает собранный профиль.
+     */
+    public synchronized SearchProfile finish() {
+        CURRENT.remove();
+        SearchProfile profile = new SearchProfile();
+        profile.setWallTimeMs(toMillis(System.nanoTime() - startTime));
+        profile.setStatements(statements);
+        profile.setProfilingTimeMs(toMillis(profilingNanos));
+        profile.setStages(stages);
+        profile.setLemmas(lemmas);
+        profile.setEvaluationOrder(evaluationOrder);
+        return profile;
+    }
+
+    private static double toMillis(long nanos) {
+        return Math.round(nanos / 1_000.0) / 1_000.0;
+    }
+}
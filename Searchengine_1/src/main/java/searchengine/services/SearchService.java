@@ -2,19 +2,36 @@ package searchengine.services;
 
 import lombok.RequiredArgsConstructor;
 import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionTimedOutException;
+import org.springframework.transaction.support.TransactionTemplate;
 import searchengine.config.IndexingState;
+import searchengine.config.SearchSettings;
 import searchengine.dto.response.SearchResponse;
 import searchengine.dto.response.SearchResult;
+import searchengine.dto.search.PageSummary;
 import searchengine.model.*;
 import searchengine.repository.*;
+import searchengine.services.SearchBackend.ScoredPage;
+import searchengine.services.SearchBackend.SiteHits;
 
+import javax.annotation.PostConstruct;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
-import java.util.concurrent.Semaphore;
 @RequiredArgsConstructor
 @Service
 public class SearchService {
@@ -22,284 +39,361 @@ public class SearchService {
 
     private static final Logger logger = LoggerFactory.getLogger(SearchService.class);
 
-    private final LemmaRepository lemmaRepository;
-    private final IndexRepository indexRepository;
-    private final PageRepository pageRepository;
     private final SiteRepository siteRepository;
     private final IndexingState indexingState;
+    private final EngineMetrics engineMetrics;
+    private final SearchConcurrencyLimiter concurrencyLimiter;
+    private final PlatformTransactionManager transactionManager;
+    private final SearchSettings searchSettings;
+    private final ThreadPoolTaskExecutor searchExecutor;
+    private final ThreadPoolTaskExecutor siteSearchExecutor;
+    private final List<SearchBackend> searchBackends;
+    private final FuzzyLemmaService fuzzyLemmaService;
+    private final PageRepository pageRepository;
+    private final SnippetBuilder snippetBuilder;
 
-    private final Semaphore databaseSemaphore = new Semaphore(5);
-    public SearchResponse search(String query, String siteUrl, int offset, int limit) {
+    private SearchBackend searchBackend;
 
-        SearchResponse response = new SearchResponse();
+    @PostConstruct
+    public void init() {
+        searchBackend = searchBackends.stream()
+                .filter(backend -> backend.getName().equals(searchSettings.getBackend()))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Неизвестный search-settings.backend: " + searchSettings.getBackend()));
+        logger.info("Поиск выполняет {}", searchBackend.getClass().getSimpleName());
+    }
+
+    /**
+     * Запускает поиск, не блокируя вызывающий поток: запрос ждёт места в {@link SearchConcurrencyLimiter},
+     * не занимая потоков, и выполняется в пуле {@code searchExecutor}. Если результат отменён
+     * до начала выполнения, поиск не запускается.
+     *
+     * @param profile вернуть вместе с результатами профиль запроса: время, SQL-запросы и число строк
+     *                по этапам, размеры списков вхождений лемм и порядок их проверки
+     * @param fuzzy   исправлять опечатки в леммах запроса; {@code null} - по {@code search-settings.fuzzy}
+     * @return ответ поиска; завершается с {@link SearchOverloadedException}, если места для запроса не нашлось
+     */
+    public CompletableFuture<SearchResponse> search(String query, String siteUrl, int offset, int limit, boolean profile,
+                                                    Boolean fuzzy) {
         if (query == null || query.trim().isEmpty()) {
+            SearchResponse response = new SearchResponse();
             response.setResult(false);
             response.setError("Задан пустой поисковый запрос");
-            return response;
-        }
-
-        Site site = null;
-        if (siteUrl != null && !siteUrl.isEmpty()) {
-            site = siteRepository.findSiteByUrl(siteUrl);
-            if (site == null) {
-                response.setResult(false);
-                response.setError("Сайт не найден");
-                return response;
-            }
+            return CompletableFuture.completedFuture(response);
         }
 
-        List<SearchResult> results = new ArrayList<>();
-
-        try {
-
-            databaseSemaphore.acquire();
-            if (indexingState.isStopRequested()) {
-                response.setResult(false);
-                response.setError("Поиск прерван из-за остановки индексации");
-                return response;
-            }
-
-            if (query == null || query.trim().isEmpty()) {
-                response.setResult(false);
-                response.setError("Задан пустой поисковый запрос");
-                logger.warn("Задан пустой поисковый запрос");
-                return response;
-            }
-
-            if (siteUrl != null && !siteUrl.isEmpty()) {
-                site = siteRepository.findSiteByUrl(siteUrl);
-                if (site == null) {
-                    response.setResult(false);
-                    response.setError("Сайт не найден");
-                    logger.warn("Сайт не найден: {}", siteUrl);
-                    return response;
-                }
-                logger.info("Поиск по сайту: {}", site.getUrl());
-            } else {
-                logger.info("Поиск по всем сайтам");
-            }
-
-            Map<String, Integer> lemmasMap = lemmatizer.getLemmas(query);
-            List<String> queryLemmas = new ArrayList<>(lemmasMap.keySet());
-            if (queryLemmas.isEmpty()) {
-                response.setResult(true);
-                response.setCount(0);
-                response.setData(results);
-                logger.warn("Запрос не содержит лемм: {}", query);
-                return response;
-            }
-            logger.info("Леммы из запроса: {}", queryLemmas);
-
-            List<Lemma> filteredLemmas = filterCommonLemmas(site, queryLemmas);
-            if (filteredLemmas.isEmpty()) {
-                response.setResult(true);
-                response.setCount(0);
-                response.setData(results);
-                logger.warn("Все леммы исключены из-за высокой частоты");
-                return response;
+        long arrival = System.nanoTime();
+        CompletableFuture<SearchResponse> result = new CompletableFuture<>();
+        CompletableFuture<SearchConcurrencyLimiter.Permit> admission = concurrencyLimiter.acquire();
+        result.whenComplete((response, error) -> {
+            if (result.isCancelled()) admission.cancel(false);
+        });
+
+        admission.whenComplete((permit, error) -> {
+            if (error != null) {
+                logger.warn("Поисковый запрос отклонён: {}", error.getMessage());
+                result.completeExceptionally(error);
+                return;
             }
-            logger.info("Отфильтрованные леммы: {}", filteredLemmas.stream().map(Lemma::getLemma).collect(Collectors.toList()));
-
-            filteredLemmas.sort(Comparator.comparingInt(Lemma::getFrequency));
-            logger.info("Леммы после сортировки: {}", filteredLemmas.stream().map(Lemma::getLemma).collect(Collectors.toList()));
-
-            List<Page> pages = findPagesByLemmasAndSite(filteredLemmas, site);
-            if (pages.isEmpty()) {
-                response.setResult(true);
-                response.setCount(0);
-                response.setData(results);
-                logger.warn("Страницы, содержащие все леммы, не найдены");
-                return response;
+            try {
+                searchExecutor.execute(() -> {
+                    if (result.isDone()) {
+                        permit.cancel();
+                        return;
+                    }
+                    try {
+                        result.complete(execute(permit, arrival, query, siteUrl, offset, limit, profile,
+                                fuzzy == null ? searchSettings.isFuzzy() : fuzzy));
+                    } catch (SearchOverloadedException e) {
+                        result.completeExceptionally(e);
+                    }
+                });
+            } catch (TaskRejectedException e) {
+                permit.cancel();
+                result.completeExceptionally(new SearchOverloadedException("Сервер перегружен, пул поиска занят", 1));
             }
-            logger.info("Найдено страниц: {}", pages.size());
-
-            Map<Page, Double> relevanceMap = calculateRelevance(pages, filteredLemmas);
-            logger.info("Релевантность страниц: {}", relevanceMap);
-
-            pages.sort((p1, p2) -> Double.compare(relevanceMap.get(p2), relevanceMap.get(p1)));
-            logger.info("Страницы после сортировки по релевантности: {}", pages.stream().map(Page::getPath).collect(Collectors.toList()));
-
-            int totalResults = pages.size();
-            int start = Math.min(offset, totalResults);
-            int end = Math.min(start + limit, totalResults);
-            List<Page> paginatedPages = pages.subList(start, end);
+        });
+        return result;
+    }
 
-            for (Page page : paginatedPages) {
-                SearchResult result = new SearchResult();
-                result.setSite(page.getSite().getUrl());
-                result.setSiteName(page.getSite().getName());
-                result.setUri(page.getPath());
-                result.setTitle(Jsoup.parse(page.getContent()).title());
-                result.setSnippet(createSnippet(page, queryLemmas));
-                result.setRelevance(relevanceMap.get(page));
-                results.add(result);
-                logger.info("Добавлен результат: {}", result);
-            }
+    private SearchResponse execute(SearchConcurrencyLimiter.Permit permit, long arrival, String query, String siteUrl,
+                                   int offset, int limit, boolean profile, boolean fuzzy) {
+        // Этап acquire в профиле - ожидание в очереди и передача запроса в пул поиска
+        SearchProfiler profiler = profile ? SearchProfiler.start(arrival) : null;
+        if (profiler != null) profiler.stage("acquire");
+        long searchStart = System.nanoTime();
+        boolean timedOut = false;
 
-            response.setResult(true);
-            response.setCount(totalResults);
-            response.setData(results);
-            logger.info("Результаты поиска успешно сформированы");
+        SearchResponse response = new SearchResponse();
+        try {
+            executeSearch(query, siteUrl, offset, limit, fuzzy, response, profiler);
+        } catch (SearchOverloadedException e) {
+            logger.warn("Поисковый запрос отклонён: {}", e.getMessage());
+            throw e;
+        } catch (QueryTimeoutException | TransactionTimedOutException e) {
+            timedOut = true;
+            engineMetrics.recordSearchTimeout();
+            response.setResult(false);
+            response.setError("Поиск не уложился в отведённое время, уточните запрос");
+            logger.warn("Поиск прерван по тайм-ауту: {}", query);
         } catch (Exception e) {
             response.setResult(false);
             response.setError("Ошибка поиска: " + e.getMessage());
             logger.error("Ошибка при выполнении поиска: {}", e.getMessage(), e);
         } finally {
-            databaseSemaphore.release();
+            permit.release(timedOut);
+            engineMetrics.recordSearch(System.nanoTime() - searchStart);
+            if (profiler != null) {
+                response.setProfile(profiler.finish());
+            }
         }
 
         return response;
     }
 
-    private List<Lemma> filterCommonLemmas(Site site, List<String> lemmas) {
-        long totalPages = site != null ? pageRepository.countBySite(site) : pageRepository.count();
-        double threshold = 1.0;
-        List<Lemma> filteredLemmas = new ArrayList<>();
-
-        logger.info("Общее количество страниц на сайте: {}", totalPages);
-        logger.info("Порог для исключения лемм: {}", threshold);
-
-        for (String lemma : lemmas) {
-            List<Lemma> lemmaEntities = site != null
-                    ? lemmaRepository.findAllByLemmaAndSite(lemma, site)
-                    : lemmaRepository.findAllByLemma(lemma);
-
-            for (Lemma lemmaObj : lemmaEntities) {
-                double lemmaFrequencyRatio = (double) lemmaObj.getFrequency() / totalPages;
-                logger.info("Лемма: {}, Частота: {}, Отношение частоты: {}", lemmaObj.getLemma(), lemmaObj.getFrequency(), lemmaFrequencyRatio);
-                if (lemmaFrequencyRatio <= threshold) {
-                    filteredLemmas.add(lemmaObj);
-                    logger.info("Лемма добавлена: {}", lemmaObj.getLemma());
-                } else {
-                    logger.info("Лемма исключена из-за высокой частоты: {}", lemmaObj.getLemma());
-                }
-            }
+    private void executeSearch(String query, String siteUrl, int offset, int limit, boolean fuzzy,
+                               SearchResponse response, SearchProfiler profiler) {
+        List<SearchResult> results = new ArrayList<>();
+        if (indexingState.isStopRequested()) {
+            response.setResult(false);
+            response.setError("Поиск прерван из-за остановки индексации");
+            return;
         }
 
-        logger.info("Отфильтрованные леммы: {}", filteredLemmas.stream()
-                .map(Lemma::getLemma)
-                .collect(Collectors.toList()));
-
-        return filteredLemmas;
-    }
-
-    private List<Page> findPagesByLemmasAndSite(List<Lemma> lemmas, Site site) {
-        if (site == null) {
-
-            return indexRepository.findPagesByLemmas(lemmas.stream()
-                    .map(Lemma::getLemma)
-                    .collect(Collectors.toList()));
+        List<Site> sites;
+        if (siteUrl != null && !siteUrl.isEmpty()) {
+            Site site = siteRepository.findSiteByUrl(siteUrl);
+            if (site == null) {
+                response.setResult(false);
+                response.setError("Сайт не найден");
+                logger.warn("Сайт не найден: {}", siteUrl);
+                return;
+            }
+            logger.info("Поиск по сайту: {}", site.getUrl());
+            sites = List.of(site);
         } else {
-
-            return indexRepository.findPagesByLemmasAndSite(lemmas.stream()
-                    .map(Lemma::getLemma)
-                    .collect(Collectors.toList()), site);
+            sites = siteRepository.findAll();
+            logger.info("Поиск по всем сайтам: {}", sites.size());
         }
-    }
 
-    private Map<Page, Double> calculateRelevance(List<Page> pages, List<Lemma> lemmas) {
-        Map<Page, Double> relevanceMap = new HashMap<>();
-        double maxRelevance = 0;
+        long stageStart = System.nanoTime();
+        Map<String, Integer> lemmasMap = lemmatizer.getLemmas(query);
+        List<String> queryLemmas = new ArrayList<>(lemmasMap.keySet());
+        recordStage(EngineMetrics.SearchStage.LEMMATIZE, stageStart);
+        if (profiler != null) {
+            profiler.rows(queryLemmas.size());
+            profiler.stage("lemmatize");
+        }
+        if (queryLemmas.isEmpty() || sites.isEmpty()) {
+            response.setResult(true);
+            response.setCount(0);
+            response.setData(results);
+            logger.warn("Запрос не содержит лемм или нет сайтов для поиска: {}", query);
+            return;
+        }
+        logger.info("Леммы из запроса: {}", queryLemmas);
 
-        for (Page page : pages) {
-            double relevance = 0;
-            for (Lemma lemma : lemmas) {
-                Float rank = indexRepository.findRankByPageAndLemma(page, lemma);
-                if (rank != null) {
-                    relevance += rank;
-                }
-            }
-            relevanceMap.put(page, relevance);
-            if (relevance > maxRelevance) {
-                maxRelevance = relevance;
+        Map<Integer, List<String>> siteLemmas = new HashMap<>();
+        Map<String, String> corrections = new LinkedHashMap<>();
+        stageStart = System.nanoTime();
+        for (Site site : sites) {
+            siteLemmas.put(site.getId(), fuzzy ? fuzzyLemmaService.correct(site, queryLemmas, corrections) : queryLemmas);
+        }
+        if (fuzzy) {
+            recordStage(EngineMetrics.SearchStage.CORRECT, stageStart);
+            if (!corrections.isEmpty()) response.setCorrections(corrections);
+            if (profiler != null) {
+                profiler.rows(corrections.size());
+                profiler.stage("correct");
             }
         }
 
-        if (maxRelevance > 0) {
-            for (Map.Entry<Page, Double> entry : relevanceMap.entrySet()) {
-                entry.setValue(entry.getValue() / maxRelevance);
+        // Каждому сайту нужны лучшие offset + limit страниц: дальше них глобальная страница выдачи не заходит
+        int topK = (int) Math.min(Integer.MAX_VALUE, (long) Math.max(0, offset) + limit);
+        List<SiteHits> siteHits = searchSites(sites, siteLemmas, topK, profiler);
+        if (profiler != null) profiler.stage("searchSites");
+
+        int totalResults = 0;
+        double maxRelevance = 0;
+        for (SiteHits hits : siteHits) {
+            totalResults += hits.total;
+            maxRelevance = Math.max(maxRelevance, hits.maxRelevance);
+        }
+        List<ScoredPage> merged = mergeTopK(siteHits, topK);
+        List<ScoredPage> paginatedPages = merged.subList(Math.min(Math.max(0, offset), merged.size()), merged.size());
+        if (profiler != null) {
+            profiler.rows(merged.size());
+            profiler.stage("merge");
+        }
+        logger.info("Найдено страниц: {}", totalResults);
+
+        // Страницы выдачи читаются одним запросом и без HTML
+        stageStart = System.nanoTime();
+        Map<Integer, PageSummary> pages = pageRepository.findSummariesByIdIn(paginatedPages.stream()
+                        .map(scored -> scored.pageId)
+                        .collect(Collectors.toList()))
+                .stream()
+                .collect(Collectors.toMap(PageSummary::getId, Function.identity()));
+        if (profiler != null) {
+            profiler.rows(pages.size());
+            profiler.stage("hydrate");
+        }
+        for (ScoredPage scored : paginatedPages) {
+            // Страница могла быть удалена после поиска по индексу - такие пропускаются
+            PageSummary page = pages.get(scored.pageId);
+            if (page == null) continue;
+            SearchResult result = new SearchResult();
+            result.setSite(page.getSiteUrl());
+            result.setSiteName(page.getSiteName());
+            result.setUri(page.getPath());
+            String text = page.getText();
+            if (page.getTitle() == null) {
+                Document document = Jsoup.parse(text);
+                result.setTitle(document.title());
+                text = document.text();
+            } else {
+                result.setTitle(page.getTitle());
             }
+            result.setSnippet(snippetBuilder.createSnippet(text, siteLemmas.get(page.getSiteId())));
+            // Релевантность нормируется по максимуму среди всех сайтов, как при общем поиске
+            result.setRelevance(maxRelevance > 0 ? scored.relevance / maxRelevance : scored.relevance);
+            results.add(result);
+            logger.info("Добавлен результат: {}", result);
+        }
+        recordStage(EngineMetrics.SearchStage.SNIPPET, stageStart);
+        if (profiler != null) {
+            profiler.rows(paginatedPages.size());
+            profiler.stage("createSnippet");
         }
 
-        return relevanceMap;
+        response.setResult(true);
+        response.setCount(totalResults);
+        response.setData(results);
+        logger.info("Результаты поиска успешно сформированы");
     }
-    private String createSnippet(Page page, List<String> queryLemmas) {
-        String content = Jsoup.parse(page.getContent()).text();
-        List<WordInfo> foundWords = new ArrayList<>();
-        Map<String, Set<String>> lemmaFormsMap = new HashMap<>();
-
-        queryLemmas.forEach(lemma -> lemmaFormsMap.put(lemma, new HashSet<>()));
 
-        String[] words = content.split("\\s+");
-        for (int i = 0; i < words.length; i++) {
-            String word = cleanWord(words[i]);
-            if (word.isEmpty()) continue;
-
-            List<String> wordLemmas = lemmatizer.getWordLemmas(word);
-            for (String lemma : wordLemmas) {
-                if (lemmaFormsMap.containsKey(lemma)) {
-                    lemmaFormsMap.get(lemma).add(word.toLowerCase());
-                    foundWords.add(new WordInfo(i, word, lemma));
+    /**
+     * Ищет по каждому сайту отдельно. Один сайт обрабатывается в текущем потоке, несколько -
+     * параллельно в пуле {@code siteSearchExecutor}, так что время поиска по всем сайтам
+     * определяется самым медленным сайтом, а не суммой. Все задачи укладываются в общий
+     * тайм-аут {@code search-settings.query-timeout}: по его истечении ещё не начатые задачи
+     * отменяются, а выполняющиеся прерываются и останавливаются на ближайшей проверке
+     * прерывания или SQL-запросе, которому транзакция уже не оставила времени.
+     * Если очередь пула заполнена, запрос отклоняется с {@link SearchOverloadedException}.
+     */
+    private List<SiteHits> searchSites(List<Site> sites, Map<Integer, List<String>> siteLemmas, int topK,
+                                       SearchProfiler profiler) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(searchSettings.getQueryTimeout());
+        if (sites.size() == 1) {
+            Site site = sites.get(0);
+            SearchProfiler siteProfiler = profiler == null ? null : profiler.forSite(site.getUrl());
+            if (siteProfiler != null) siteProfiler.attach();
+            try {
+                return List.of(searchSiteInTransaction(site, siteLemmas.get(site.getId()), topK, deadline));
+            } finally {
+                if (siteProfiler != null) {
+                    siteProfiler.finishSite();
+                    profiler.attach();
                 }
             }
         }
 
-        foundWords.sort(Comparator.comparingInt(w -> w.position));
-
-        return buildSnippet(words, foundWords, lemmaFormsMap);
-    }
-
-    private String buildSnippet(String[] words, List<WordInfo> foundWords, Map<String, Set<String>> lemmaFormsMap) {
-        StringBuilder snippet = new StringBuilder();
-        int lastAddedPos = -2;
-        int snippetLength = 0;
-        final int MAX_SNIPPET_LENGTH = 300;
-
-        for (WordInfo wordInfo : foundWords) {
-            if (snippetLength >= MAX_SNIPPET_LENGTH) break;
-            if (wordInfo.position <= lastAddedPos) continue;
-
-            int start = Math.max(0, wordInfo.position - 5);
-            int end = Math.min(words.length, wordInfo.position + 5);
-            lastAddedPos = end;
-
-            StringBuilder fragment = new StringBuilder();
-            for (int i = start; i < end; i++) {
-                String word = words[i];
-                String cleanWord = cleanWord(word).toLowerCase();
-
-                boolean isMatch = lemmaFormsMap.values().stream()
-                        .anyMatch(forms -> forms.contains(cleanWord));
-
-                fragment.append(isMatch ? "<b>" + word + "</b>" : word)
-                        .append(" ");
+        List<Future<SiteHits>> tasks = new ArrayList<>();
+        try {
+            for (Site site : sites) {
+                SearchProfiler siteProfiler = profiler == null ? null : profiler.forSite(site.getUrl());
+                tasks.add(siteSearchExecutor.submit(() -> {
+                    if (siteProfiler != null) siteProfiler.attach();
+                    try {
+                        return searchSiteInTransaction(site, siteLemmas.get(site.getId()), topK, deadline);
+                    } finally {
+                        if (siteProfiler != null) {
+                            siteProfiler.finishSite();
+                            SearchProfiler.detach();
+                        }
+                    }
+                }));
             }
+        } catch (TaskRejectedException e) {
+            cancel(tasks);
+            throw new SearchOverloadedException("Сервер перегружен, очередь поиска по сайтам заполнена", 1);
+        }
 
-            String fragText = fragment.toString().trim() + "... ";
-            if (snippetLength + fragText.length() > MAX_SNIPPET_LENGTH) {
-                fragText = fragText.substring(0, MAX_SNIPPET_LENGTH - snippetLength) + "... ";
+        List<SiteHits> hits = new ArrayList<>(tasks.size());
+        try {
+            for (Future<SiteHits> task : tasks) {
+                hits.add(task.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
             }
-
-            snippet.append(fragText);
-            snippetLength += fragText.length();
+        } catch (TimeoutException e) {
+            cancel(tasks);
+            throw new TransactionTimedOutException("Поиск по сайтам не уложился в отведённое время");
+        } catch (ExecutionException e) {
+            cancel(tasks);
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Ошибка поиска по сайту", e.getCause());
+        } catch (InterruptedException e) {
+            cancel(tasks);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Поиск по сайтам прерван", e);
         }
+        return hits;
+    }
 
-        return snippet.toString().trim();
+    /** Отменяет задачи, ещё не начатые - снимает с очереди, выполняющиеся - прерывает. */
+    private static void cancel(List<Future<SiteHits>> tasks) {
+        tasks.forEach(task -> task.cancel(true));
     }
 
-    private String cleanWord(String word) {
-        return word.replaceAll("[^\\p{L}\\d]", "").trim();
+    /**
+     * Поиск по сайту в транзакции только для чтения с тайм-аутом, равным остатку общего времени:
+     * каждому SQL-запросу назначается оставшееся время, и запрос, не уложившийся в него,
+     * отменяется на стороне базы. Тайм-аут транзакции задаётся в целых секундах: остаток
+     * округляется вниз, но не меньше чем до секунды, поэтому при остатке меньше секунды
+     * SQL-запрос может пережить общий срок на эту разницу.
+     */
+    private SiteHits searchSiteInTransaction(Site site, List<String> queryLemmas, int topK, long deadline) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+            throw new TransactionTimedOutException("Истекло время поиска по сайту " + site.getUrl());
+        }
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        transaction.setTimeout((int) Math.max(1, TimeUnit.NANOSECONDS.toSeconds(remaining)));
+        return transaction.execute(status -> searchBackend.search(site, queryLemmas, topK));
     }
 
-    private static class WordInfo {
-        int position;
-        String originalWord;
-        String lemma;
+    /**
+     * Слияние списков сайтов, упорядоченных по убыванию релевантности: берёт {@code k} лучших
+     * страниц, просматривая только головы списков. При равной релевантности раньше идёт сайт,
+     * который раньше в списке.
+     */
+    static List<ScoredPage> mergeTopK(List<SiteHits> hits, int k) {
+        int[] positions = new int[hits.size()];
+        PriorityQueue<Integer> heads = new PriorityQueue<>(Comparator
+                .comparingDouble((Integer i) -> hits.get(i).top.get(positions[i]).relevance).reversed()
+                .thenComparingInt(i -> i));
+        for (int i = 0; i < hits.size(); i++) {
+            if (!hits.get(i).top.isEmpty()) {
+                heads.add(i);
+            }
+        }
 
-        WordInfo(int position, String originalWord, String lemma) {
-            this.position = position;
-            this.originalWord = originalWord;
-            this.lemma = lemma;
+        List<ScoredPage> merged = new ArrayList<>(Math.max(0, Math.min(k, 1024)));
+        while (merged.size() < k && !heads.isEmpty()) {
+            int i = heads.poll();
+            merged.add(hits.get(i).top.get(positions[i]));
+            if (++positions[i] < hits.get(i).top.size()) {
+                heads.add(i);
+            }
         }
+        return merged;
+    }
+
+    private long recordStage(EngineMetrics.SearchStage stage, long stageStart) {
+        long now = System.nanoTime();
+        engineMetrics.recordSearchStage(stage, now - stageStart);
+        return now;
     }
-}
\ No newline at end of file
+}
@@ -4,17 +4,22 @@ import lombok.RequiredArgsConstructor;
 import org.jsoup.Connection;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
-import org.jsoup.select.Elements;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import searchengine.config.IndexingSettings;
+import searchengine.config.SearchSettings;
 import searchengine.dto.response.IndexingResponse;
 import searchengine.model.*;
 import searchengine.repository.SiteRepository;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import java.io.IOException;
@@ -22,6 +27,7 @@ import java.net.MalformedURLException;
 import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -36,8 +42,18 @@ public class SiteIndexingService {
     private final Lemmatizer lemmatizer;
     private final DatabaseService databaseService;
     private final IndexingSettings indexingSettings;
+    private final SearchSettings searchSettings;
     private final SiteRepository siteRepository;
     private final PageProcessor pageProcessor;
+    private final ContentExtractor contentExtractor;
+    private final SiteStatisticsService siteStatisticsService;
+    private final EngineMetrics engineMetrics;
+    private final List<SearchBackend> searchBackends;
+    private final SuggestService suggestService;
+    private final FuzzyLemmaService fuzzyLemmaService;
+    private final PageRankService pageRankService;
+    private final StopLemmaService stopLemmaService;
+    private final CrawlFrontier crawlFrontier;
 
     private static final Logger logger = LoggerFactory.getLogger(SiteIndexingService.class);
     private final AtomicBoolean indexingInProgress = new AtomicBoolean(false);
@@ -45,26 +61,102 @@ public class SiteIndexingService {
     private final Set<String> visitedUrls = ConcurrentHashMap.newKeySet();
     private static final int MAX_RETRIES = 3;
     private static final int TIMEOUT = 10000;
+    private static final int MAX_DEPTH = 10;
     private final AtomicBoolean stopRequested = new AtomicBoolean(false);
+    /** Потоки обхода общей очереди в распределённом режиме. */
+    private ExecutorService crawlWorkers;
+    /** Последнее известное состояние сайтов, чтобы замечать изменения других экземпляров. */
+    private final Map<Integer, String> siteStates = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void registerMetrics() {
+        engineMetrics.registerFrontierSize(() -> {
+            if (indexingSettings.isDistributed()) return crawlFrontier.pendingUrls();
+            ForkJoinPool current = pool;
+            return current == null ? 0 : current.getQueuedTaskCount() + current.getQueuedSubmissionCount();
+        });
+    }
+
+    public boolean isIndexingInProgress() {
+        return indexingInProgress.get() || indexingSettings.isDistributed() && crawlFrontier.hasPending();
+    }
+
+    /**
+     * В распределённом режиме запускает потоки, разбирающие общую очередь обхода. Индексацию
+     * запускает любой экземпляр, остальные подключаются к ней сами.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startCrawlWorkers() {
+        if (!indexingSettings.isDistributed()) return;
+
+        siteRepository.findAll().forEach(site -> siteStates.put(site.getId(), siteState(site)));
+        crawlFrontier.heartbeat();
+        int threads = Runtime.getRuntime().availableProcessors();
+        crawlWorkers = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            crawlWorkers.submit(this::crawlFrontierLoop);
+        }
+        logger.info("Экземпляр {} обходит общую очередь в {} потоков", crawlFrontier.getWorkerId(), threads);
+    }
+
+    @PreDestroy
+    public void stopCrawlWorkers() {
+        if (crawlWorkers == null) return;
+        crawlWorkers.shutdownNow();
+        try {
+            crawlWorkers.awaitTermination(TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        crawlFrontier.leave();
+    }
 
     public ResponseEntity<Map<String, Object>> startIndexing() {
         try {
-            if (!indexingInProgress.compareAndSet(false, true)) {
+            if (indexingSettings.isDistributed() && crawlFrontier.hasPending()
+                    || !indexingInProgress.compareAndSet(false, true)) {
                 return ResponseEntity.badRequest().body(Map.of(
                         "result", false,
                         "error", "Индексация уже запущена"
                 ));
             }
 
+            stopRequested.set(false);
             databaseService.truncateAllTables();
+            searchBackends.forEach(SearchBackend::cleared);
+            contentExtractor.clear();
             visitedUrls.clear();
+            suggestService.clear();
+            pageRankService.clear();
+
+            if (indexingSettings.isDistributed()) {
+                seedFrontier();
+                return ResponseEntity.ok(Map.of(
+                        "result", true,
+                        "message", "Индексация запущена"
+                ));
+            }
 
             pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
 
+            List<CompletableFuture<Void>> sites = new ArrayList<>();
             for (IndexingSettings.SiteConfig siteConfig : indexingSettings.getSites()) {
                 if (stopRequested.get()) break;
-                CompletableFuture.runAsync(() -> processSite(siteConfig), pool);
+                sites.add(CompletableFuture.runAsync(() -> processSite(siteConfig), pool));
             }
+            CompletableFuture.allOf(sites.toArray(new CompletableFuture[0]))
+                    .whenComplete((result, e) -> {
+                        try {
+                            suggestService.rebuild();
+                            fuzzyLemmaService.rebuild();
+                        } catch (RuntimeException ex) {
+                            logger.error("Не удалось пересобрать словари подсказок и опечаток", ex);
+                        }
+                        if (!stopRequested.get()) {
+                            indexingInProgress.set(false);
+                            logger.info("Индексация завершена");
+                        }
+                    });
 
             return ResponseEntity.ok(Map.of(
                     "result", true,
@@ -88,12 +180,168 @@ public class SiteIndexingService {
             site.setStatusTime(LocalDateTime.now());
             databaseService.saveSite(site);
 
-            new SiteIndexingTask(site, site.getUrl(), 0).fork();
+            siteStatisticsService.pagesQueued(site, 1);
+            new SiteIndexingTask(site, site.getUrl(), 0).invoke();
+
+            if (!stopRequested.get()) {
+                computePageRank(site);
+                stopLemmaService.moveToColdTier(site);
+                searchBackends.forEach(backend -> backend.siteIndexed(site));
+                site.setStatus(Status.INDEXED);
+                site.setStatusTime(LocalDateTime.now());
+                databaseService.saveSite(site);
+            }
         } catch (Exception e) {
             handleSiteError(site, e);
         }
     }
 
+    /**
+     * Ставит главные страницы сайтов в общую очередь; обходят их потоки всех экземпляров.
+     */
+    private void seedFrontier() {
+        try {
+            crawlFrontier.clear();
+            for (IndexingSettings.SiteConfig siteConfig : indexingSettings.getSites()) {
+                Site site = getOrCreateSite(siteConfig);
+                site.setStatus(Status.INDEXING);
+                site.setStatusTime(LocalDateTime.now());
+                databaseService.saveSite(site);
+                siteStates.put(site.getId(), siteState(site));
+                crawlFrontier.seed(site);
+                siteStatisticsService.pagesQueued(site, 1);
+            }
+            logger.info("Сайты поставлены в общую очередь обхода: {}", indexingSettings.getSites().size());
+        } finally {
+            indexingInProgress.set(false);
+        }
+    }
+
+    private void crawlFrontierLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                List<CrawlFrontier.Entry> batch = crawlFrontier.lease(indexingSettings.getFrontierBatchSize());
+                if (batch.isEmpty()) {
+                    Thread.sleep(indexingSettings.getFrontierPollInterval());
+                    continue;
+                }
+                for (CrawlFrontier.Entry entry : batch) {
+                    if (Thread.currentThread().isInterrupted()) break;
+                    crawlEntry(entry);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                logger.error("Ошибка обхода общей очереди: {}", e.getMessage(), e);
+                try {
+                    Thread.sleep(indexingSettings.getFrontierPollInterval());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Обходит адрес из общей очереди так же, как {@link SiteIndexingTask}, только найденные
+     * ссылки не обходятся рекурсивно, а ставятся в очередь и сохраняются для PageRank.
+     * Страница сохраняется, только если адрес всё ещё за этим экземпляром.
+     */
+    private void crawlEntry(CrawlFrontier.Entry entry) {
+        Site site = siteRepository.findById(entry.siteId).orElse(null);
+        if (site == null) return;
+        siteStatisticsService.pageDequeued(site);
+
+        Integer pageId = null;
+        Set<String> links = Set.of();
+        try {
+            if (!crawlFrontier.owns(entry)) return;
+            Document document = fetchDocumentWithRetries(entry.url);
+            if (document == null) {
+                siteStatisticsService.pageFailed(site);
+                engineMetrics.recordFetchError();
+            } else {
+                if (!crawlFrontier.owns(entry)) return;
+                Page page = savePageAndLemmas(site, entry.url, document);
+                pageId = page.getId();
+                links = crawlableLinks(document, site);
+                if (entry.depth < MAX_DEPTH) {
+                    siteStatisticsService.pagesQueued(site, crawlFrontier.enqueue(site, links, entry.depth + 1));
+                }
+            }
+        } catch (Exception e) {
+            // При остановке экземпляра адрес вернётся в очередь, см. CrawlFrontier#leave
+            if (Thread.currentThread().isInterrupted()) return;
+            siteStatisticsService.pageFailed(site);
+            engineMetrics.recordFetchError();
+            logger.error("Ошибка обработки {}: {}", entry.url, e.getMessage(), e);
+        } finally {
+            entityManager.clear();
+        }
+
+        crawlFrontier.complete(entry, pageId, links);
+        if (crawlFrontier.claimFinish(site)) {
+            finishDistributedSite(site);
+        }
+    }
+
+    /**
+     * Завершает сайт, все адреса которого выполнены. Выполняется на экземпляре, выполнившем
+     * последний адрес: граф ссылок для PageRank собирается из общей очереди, а статистика
+     * пересчитывается по базе, так как страницы сайта могли сохранять разные экземпляры.
+     */
+    private void finishDistributedSite(Site site) {
+        try {
+            crawlFrontier.forEachPage(site, (url, pageId, links) -> pageRankService.pageCrawled(site, url, pageId, links));
+            computePageRank(site);
+            stopLemmaService.moveToColdTier(site);
+            searchBackends.forEach(backend -> backend.siteIndexed(site));
+            siteStatisticsService.recount(site, crawlFrontier.errors(site));
+            site.setStatus(Status.INDEXED);
+            site.setStatusTime(LocalDateTime.now());
+            databaseService.saveSite(site);
+            siteStates.put(site.getId(), siteState(site));
+            suggestService.rebuild(site);
+            fuzzyLemmaService.rebuild(site);
+            logger.info("Распределённая индексация сайта {} завершена", site.getUrl());
+        } catch (Exception e) {
+            handleSiteError(site, e);
+        }
+    }
+
+    /**
+     * В распределённом режиме подхватывает изменения сайтов, сделанные другими экземплярами:
+     * статистику, а у проиндексированных сайтов - ранги, словари подсказок и опечаток.
+     */
+    @Scheduled(fixedDelayString = "${indexing-settings.frontier-heartbeat-interval:10000}")
+    public void refreshSites() {
+        if (crawlWorkers == null) return;
+
+        for (Site site : siteRepository.findAll()) {
+            String state = siteState(site);
+            if (state.equals(siteStates.put(site.getId(), state))) continue;
+            siteStatisticsService.reload(site);
+            if (site.getStatus() == Status.INDEXED) {
+                pageRankService.reload(site);
+                suggestService.rebuild(site);
+                fuzzyLemmaService.rebuild(site);
+            }
+        }
+    }
+
+    private static String siteState(Site site) {
+        LocalDateTime statusTime = site.getStatusTime();
+        return site.getStatus() + " " + (statusTime == null ? null : statusTime.truncatedTo(ChronoUnit.MILLIS));
+    }
+
+    private void computePageRank(Site site) {
+        try {
+            pageRankService.compute(site);
+        } catch (RuntimeException e) {
+            logger.error("Не удалось посчитать PageRank сайта {}: {}", site.getUrl(), e.getMessage(), e);
+        }
+    }
+
     private Site getOrCreateSite(IndexingSettings.SiteConfig siteConfig) {
         return siteRepository.findByUrl(siteConfig.getUrl())
                 .orElseGet(() -> {
@@ -117,6 +365,20 @@ public class SiteIndexingService {
     public ResponseEntity<IndexingResponse> stopIndexing() {
         logger.info("Запрос на остановку индексации...");
         try {
+            if (indexingSettings.isDistributed()) {
+                if (!crawlFrontier.hasPending()) {
+                    return ResponseEntity.badRequest().body(
+                            new IndexingResponse(false, "Индексация не запущена")
+                    );
+                }
+                // Сначала статусы: иначе опустевшая очередь позволит завершить сайт
+                updateSiteStatusesOnStop();
+                crawlFrontier.stop();
+                return ResponseEntity.ok(
+                        new IndexingResponse(true, "Индексация остановлена")
+                );
+            }
+
             if (!indexingInProgress.get()) {
                 return ResponseEntity.badRequest().body(
                         new IndexingResponse(false, "Индексация не запущена")
@@ -124,12 +386,15 @@ public class SiteIndexingService {
             }
 
             stopRequested.set(true);
-            pool.shutdown();
+            ForkJoinPool stopping = pool;
+            stopping.shutdown();
 
+            // Индексация считается идущей, пока не завершились все задачи: следующий запуск
+            // сбрасывает флаг остановки, и оставшиеся задачи продолжили бы писать в очищенные таблицы
             new Thread(() -> {
                 try {
-                    if (!pool.awaitTermination(10, TimeUnit.SECONDS)) {
-                        logger.warn("Не все задачи завершились за отведенное время");
+                    while (!stopping.awaitTermination(10, TimeUnit.SECONDS)) {
+                        logger.warn("Не все задачи завершились за отведенное время, ожидание продолжается");
                     }
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
@@ -152,7 +417,7 @@ public class SiteIndexingService {
     }
     public ResponseEntity<Map<String, Object>> indexPage(String url) {
         try {
-            if (indexingInProgress.get()) {
+            if (isIndexingInProgress()) {
                 return ResponseEntity.badRequest().body(Map.of(
                         "result", false,
                         "error", "Индексация уже запущена"
@@ -178,6 +443,8 @@ public class SiteIndexingService {
             try {
                 pageProcessor.deletePageInfoIfExists(site, url);
                 pageProcessor.indexPage(site, url, 0);
+                suggestService.rebuild(site);
+                fuzzyLemmaService.rebuild(site);
                 return ResponseEntity.ok(Map.of("result", true));
             } finally {
                 indexingInProgress.set(false);
@@ -236,21 +503,27 @@ public class SiteIndexingService {
                     throw new IOException("Задача прервана");
                 }
 
-                Thread.sleep(500);
-                long startTime = System.currentTimeMillis();
+                Thread.sleep(indexingSettings.getRequestDelay());
+                long startTime = System.nanoTime();
                 Connection.Response response = Jsoup.connect(url)
                         .userAgent("HeliontSearchBot")
                         .timeout(TIMEOUT)
                         .execute();
+                long fetchNanos = System.nanoTime() - startTime;
 
-                logger.info("Запрос к {} выполнен за {} мс", url, System.currentTimeMillis() - startTime);
+                logger.info("Запрос к {} выполнен за {} мс", url, TimeUnit.NANOSECONDS.toMillis(fetchNanos));
+                engineMetrics.recordFetch(new URL(url).getHost(), fetchNanos);
+                engineMetrics.recordHttpStatus(response.statusCode());
 
                 if (response.statusCode() >= 400) {
                     logger.warn("HTTP-ошибка {}: {}", response.statusCode(), url);
                     return null;
                 }
 
-                return response.parse();
+                long parseStart = System.nanoTime();
+                Document document = response.parse();
+                engineMetrics.recordParse(System.nanoTime() - parseStart);
+                return document;
             } catch (SocketTimeoutException e) {
                 retries++;
                 logger.warn("Таймаут подключения к {}. Попытка {}/{}", url, retries, MAX_RETRIES);
@@ -275,31 +548,41 @@ public class SiteIndexingService {
 
         @Override
         protected Void compute() {
+            siteStatisticsService.pageDequeued(site);
             try {
                 if (stopRequested.get() || !visitedUrls.add(url)) {
                     return null;
                 }
 
                 Document document = fetchDocumentWithRetries(url);
-                if (document == null || stopRequested.get()) {
+                if (stopRequested.get()) {
                     return null;
                 }
+                if (document == null) {
+                    siteStatisticsService.pageFailed(site);
+                    engineMetrics.recordFetchError();
+                    return null;
+                }
+
+                Page page = savePageAndLemmas(site, url, document);
 
-                savePageAndLemmas(site, url, document);
+                Set<String> links = crawlableLinks(document, site);
+                pageRankService.pageCrawled(site, url, page.getId(), links);
 
-                if (depth < 10) {
-                    Elements links = document.select("a[href]");
+                if (depth < MAX_DEPTH) {
                     List<SiteIndexingTask> subTasks = links.stream()
-                            .map(link -> link.absUrl("href"))
                             .filter(this::isValidUrl)
                             .map(link -> new SiteIndexingTask(site, link, depth + 1))
                             .collect(Collectors.toList());
 
+                    siteStatisticsService.pagesQueued(site, subTasks.size());
                     invokeAll(subTasks);
                 }
             } catch (CancellationException e) {
                 logger.warn("Задача была отменена для URL: {}", url);
             } catch (Exception e) {
+                siteStatisticsService.pageFailed(site);
+                engineMetrics.recordFetchError();
                 logger.error("Ошибка обработки {}: {}", url, e.getMessage(), e);
             } finally {
                 entityManager.clear();
@@ -308,35 +591,56 @@ public class SiteIndexingService {
         }
 
         private boolean isValidUrl(String url) {
-            return url.startsWith(site.getUrl()) &&
-                    !visitedUrls.contains(url) &&
-                    !url.contains("#") &&
-                    !url.endsWith(".jpg") &&
-                    !url.endsWith(".png") &&
-                    !url.endsWith(".pdf");
+            return isCrawlableUrl(url, site.getUrl()) && !visitedUrls.contains(url);
         }
     }
 
+    private static Set<String> crawlableLinks(Document document, Site site) {
+        return document.select("a[href]").stream()
+                .map(link -> link.absUrl("href"))
+                .filter(link -> isCrawlableUrl(link, site.getUrl()))
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    static boolean isCrawlableUrl(String url, String siteUrl) {
+        return url.startsWith(siteUrl) &&
+                !url.contains("#") &&
+                !url.endsWith(".jpg") &&
+                !url.endsWith(".png") &&
+                !url.endsWith(".pdf");
+    }
+
     @Transactional(rollbackFor = Exception.class, timeout = 30)
-    private void savePageAndLemmas(Site site, String url, Document document) {
+    private Page savePageAndLemmas(Site site, String url, Document document) {
         if (stopRequested.get()) {
             logger.info("Индексация прервана пользователем для URL: {}", url);
             throw new RuntimeException("Индексация прервана");
         }
 
         Page page = createPage(site, url, document);
-        String content = document.body().text();
+        String content = contentExtractor.extractText(site, url, document);
+        page.setText(content);
 
         Map<String, Integer> lemmaMap = lemmatizer.extractLemmasWithRank(content);
-        databaseService.savePage(page);
+        long writeStart = System.nanoTime();
+        if (!databaseService.savePage(page)) {
+            logger.info("Страница {} уже сохранена другим экземпляром", url);
+            return page;
+        }
 
+        List<SearchIndex> entries = new ArrayList<>();
         lemmaMap.forEach((lemmaText, rank) -> {
             if (stopRequested.get()) return;
             Lemma savedLemma = databaseService.saveLemma(lemmaText, site);
             if (savedLemma != null) {
-                saveSearchIndex(page, savedLemma, rank);
+                entries.add(saveSearchIndex(page, savedLemma, rank));
             }
         });
+        engineMetrics.recordDbWrite(System.nanoTime() - writeStart);
+        searchBackends.forEach(backend -> backend.pageIndexed(page, content, entries));
+        suggestService.pageIndexed(site, content);
+        engineMetrics.recordPageIndexed();
+        return page;
     }
 
     private Page createPage(Site site, String url, Document document) {
@@ -345,14 +649,18 @@ public class SiteIndexingService {
         page.setPath(url.replace(site.getUrl(), ""));
         page.setCode(document.connection().response().statusCode());
         page.setContent(document.outerHtml());
+        page.setTitle(document.title());
         return page;
     }
 
-    private void saveSearchIndex(Page page, Lemma lemma, int rank) {
+    private SearchIndex saveSearchIndex(Page page, Lemma lemma, int rank) {
         SearchIndex index = new SearchIndex();
         index.setPage(page);
         index.setLemma(lemma);
         index.setRanking(rank);
-        databaseService.saveSearchIndex(index);
+        if (searchSettings.writesSearchIndex()) {
+            databaseService.saveSearchIndex(index);
+        }
+        return index;
     }
 }
\ No newline at end of file
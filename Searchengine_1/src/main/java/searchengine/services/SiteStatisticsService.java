@@ -0,0 +1,288 @@
+package searchengine.services;
+
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import searchengine.model.Site;
+import searchengine.model.SiteStatistics;
+import searchengine.model.Status;
+import searchengine.repository.LemmaRepository;
+import searchengine.repository.PageRepository;
+import searchengine.repository.SiteRepository;
+import searchengine.repository.SiteStatisticsRepository;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Счётчики статистики по сайтам, которые обновляет код индексации.
+ * <p>
+ * Значения хранятся в памяти и периодически сохраняются в таблицу {@code site_statistics}.
+ * При старте приложения счётчики один раз загружаются из базы, после чего
+ * {@code /api/statistics} обслуживается из памяти без запросов к таблицам индекса.
+ */
+@Service
+@RequiredArgsConstructor
+public class SiteStatisticsService {
+    private static final Logger logger = LoggerFactory.getLogger(SiteStatisticsService.class);
+
+    private final SiteRepository siteRepository;
+    private final PageRepository pageRepository;
+    private final LemmaRepository lemmaRepository;
+    private final SiteStatisticsRepository siteStatisticsRepository;
+
+    private final Map<Integer, SiteCounters> counters = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void load() {
+        Map<Integer, SiteStatistics> saved = new HashMap<>();
+        siteStatisticsRepository.findAll().forEach(statistics -> saved.put(statistics.getSiteId(), statistics));
+
+        for (Site site : siteRepository.findAll()) {
+            SiteCounters siteCounters = new SiteCounters(site.getId());
+            siteCounters.update(site);
+            SiteStatistics statistics = saved.get(site.getId());
+            if (statistics != null) {
+                siteCounters.pages.set(statistics.getPages());
+                siteCounters.lemmas.set(statistics.getLemmas());
+                siteCounters.bytes.set(statistics.getBytes());
+                siteCounters.errors.set(statistics.getErrors());
+            } else {
+                // Сайт проиндексирован до появления таблицы статистики: считаем один раз
+                siteCounters.pages.set(pageRepository.countBySite(site));
+                siteCounters.lemmas.set(lemmaRepository.countBySite(site));
+                siteCounters.dirty = true;
+            }
+            counters.put(site.getId(), siteCounters);
+        }
+        logger.info("Загружена статистика для {} сайтов", counters.size());
+    }
+
+    public void updateSite(Site site) {
+        counters(site).update(site);
+    }
+
+    public void pageIndexed(Site site, String content) {
+        SiteCounters siteCounters = counters(site);
+        siteCounters.pages.incrementAndGet();
+        siteCounters.bytes.addAndGet(utf8Length(content));
+        siteCounters.dirty = true;
+    }
+
+    public void pageRemoved(Site site, String content) {
+        SiteCounters siteCounters = counters(site);
+        siteCounters.pages.decrementAndGet();
+        siteCounters.bytes.addAndGet(-utf8Length(content));
+        siteCounters.dirty = true;
+    }
+
+    /** Число проиндексированных страниц сайта. */
+    public int pageCount(Site site) {
+        return counters(site).getPages();
+    }
+
+    /**
+     * Пересчитывает счётчики сайта по базе и сразу сохраняет их. Нужен после распределённой
+     * индексации: страницы сайта могли сохранять разные экземпляры, и счётчики каждого неполны.
+     */
+    public void recount(Site site, int errors) {
+        SiteCounters siteCounters = counters(site);
+        siteCounters.update(site);
+        siteCounters.pages.set(pageRepository.countBySite(site));
+        siteCounters.lemmas.set(lemmaRepository.countBySite(site));
+        siteCounters.bytes.set(pageRepository.sumContentBytesBySiteId(site.getId()));
+        siteCounters.errors.set(errors);
+        siteCounters.dirty = false;
+        siteStatisticsRepository.save(toStatistics(siteCounters, LocalDateTime.now()));
+    }
+
+    /**
+     * Перечитывает счётчики сайта из базы, если их изменил другой экземпляр.
+     */
+    public void reload(Site site) {
+        SiteCounters siteCounters = new SiteCounters(site.getId());
+        siteCounters.update(site);
+        siteStatisticsRepository.findById(site.getId()).ifPresent(statistics -> {
+            siteCounters.pages.set(statistics.getPages());
+            siteCounters.lemmas.set(statistics.getLemmas());
+            siteCounters.bytes.set(statistics.getBytes());
+            siteCounters.errors.set(statistics.getErrors());
+        });
+        counters.put(site.getId(), siteCounters);
+    }
+
+    public void pageFailed(Site site) {
+        SiteCounters siteCounters = counters(site);
+        siteCounters.errors.incrementAndGet();
+        siteCounters.dirty = true;
+    }
+
+    /**
+     * Учитывает страницы, поставленные в очередь обхода. Очередь не сохраняется в базу:
+     * она нужна только для оценки оставшегося времени индексации.
+     */
+    public void pagesQueued(Site site, int count) {
+        counters(site).queued.addAndGet(count);
+    }
+
+    public void pageDequeued(Site site) {
+        counters(site).queued.decrementAndGet();
+    }
+
+    public void lemmaAdded(Site site) {
+        SiteCounters siteCounters = counters(site);
+        siteCounters.lemmas.incrementAndGet();
+        siteCounters.dirty = true;
+    }
+
+    public void lemmaRemoved(Site site) {
+        SiteCounters siteCounters = counters(site);
+        siteCounters.lemmas.decrementAndGet();
+        siteCounters.dirty = true;
+    }
+
+    public void clear() {
+        counters.clear();
+    }
+
+    public List<SiteCounters> snapshot() {
+        List<SiteCounters> snapshot = new ArrayList<>(counters.values());
+        snapshot.sort(Comparator.comparingInt(SiteCounters::getSiteId));
+        return snapshot;
+    }
+
+    @Scheduled(fixedDelayString = "${indexing-settings.statistics-flush-interval:5000}")
+    public void flush() {
+        List<SiteStatistics> changed = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (SiteCounters siteCounters : counters.values()) {
+            if (!siteCounters.dirty) continue;
+            siteCounters.dirty = false;
+            changed.add(toStatistics(siteCounters, now));
+        }
+        if (changed.isEmpty()) return;
+
+        try {
+            siteStatisticsRepository.saveAll(changed);
+        } catch (DataAccessException e) {
+            // Сайт мог быть удалён при перезапуске индексации между снимком и сохранением
+            logger.warn("Не удалось сохранить статистику сайтов: {}", e.getMessage());
+        }
+    }
+
+    private static SiteStatistics toStatistics(SiteCounters siteCounters, LocalDateTime now) {
+        SiteStatistics statistics = new SiteStatistics();
+        statistics.setSiteId(siteCounters.siteId);
+        statistics.setPages(siteCounters.getPages());
+        statistics.setLemmas(siteCounters.getLemmas());
+        statistics.setBytes(siteCounters.getBytes());
+        statistics.setErrors(siteCounters.getErrors());
+        statistics.setUpdatedAt(now);
+        return statistics;
+    }
+
+    private SiteCounters counters(Site site) {
+        return counters.computeIfAbsent(site.getId(), SiteCounters::new);
+    }
+
+    private static long utf8Length(String content) {
+        if (content == null) return 0;
+        long length = 0;
+        for (int i = 0; i < content.length(); i++) {
+            char c = content.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    public static class SiteCounters {
+        private final int siteId;
+        private volatile String url;
+        private volatile String name;
+        private volatile String status;
+        private volatile LocalDateTime statusTime;
+        private volatile String lastError;
+        private final AtomicInteger pages = new AtomicInteger();
+        private final AtomicInteger lemmas = new AtomicInteger();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicInteger errors = new AtomicInteger();
+        private final AtomicInteger queued = new AtomicInteger();
+        private volatile boolean dirty;
+
+        SiteCounters(int siteId) {
+            this.siteId = siteId;
+        }
+
+        void update(Site site) {
+            url = site.getUrl();
+            name = site.getName();
+            status = site.getStatus() != null ? site.getStatus().toString() : null;
+            statusTime = site.getStatusTime();
+            lastError = site.getLastError();
+            if (site.getStatus() != Status.INDEXING) {
+                // Задачи остановленной индексации из очереди уже не выполнятся
+                queued.set(0);
+            }
+        }
+
+        public int getSiteId() {
+            return siteId;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public LocalDateTime getStatusTime() {
+            return statusTime;
+        }
+
+        public String getLastError() {
+            return lastError;
+        }
+
+        public int getPages() {
+            return pages.get();
+        }
+
+        public int getLemmas() {
+            return lemmas.get();
+        }
+
+        public long getBytes() {
+            return bytes.get();
+        }
+
+        public int getErrors() {
+            return errors.get();
+        }
+
+        public int getQueued() {
+            return Math.max(0, queued.get());
+        }
+    }
+}
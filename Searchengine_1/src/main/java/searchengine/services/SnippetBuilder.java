@@ -0,0 +1,100 @@
+package searchengine.services;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Сниппет результата поиска: фрагменты текста страницы вокруг слов, леммы которых есть
+ * в запросе, с выделением найденных словоформ.
+ */
+@Component
+@RequiredArgsConstructor
+public class SnippetBuilder {
+
+    private final Lemmatizer lemmatizer;
+
+    /**
+     * @param content текст страницы без разметки
+     */
+    String createSnippet(String content, List<String> queryLemmas) {
+        List<WordInfo> foundWords = new ArrayList<>();
+        Map<String, Set<String>> lemmaFormsMap = new HashMap<>();
+
+        queryLemmas.forEach(lemma -> lemmaFormsMap.put(lemma, new HashSet<>()));
+
+        List<String> words = new ArrayList<>();
+        List<String> cleanWords = new ArrayList<>();
+        new TextTokenizer().tokenize(content, (buffer, length, start, end) -> {
+            words.add(content.substring(start, end));
+            cleanWords.add(new String(buffer, 0, length));
+        });
+
+        for (int i = 0; i < cleanWords.size(); i++) {
+            String word = cleanWords.get(i);
+            if (word.isEmpty()) continue;
+
+            List<String> wordLemmas = lemmatizer.getWordLemmas(word);
+            for (String lemma : wordLemmas) {
+                if (lemmaFormsMap.containsKey(lemma)) {
+                    lemmaFormsMap.get(lemma).add(word);
+                    foundWords.add(new WordInfo(i, word, lemma));
+                }
+            }
+        }
+
+        foundWords.sort(Comparator.comparingInt(w -> w.position));
+
+        Set<String> matchedForms = new HashSet<>();
+        lemmaFormsMap.values().forEach(matchedForms::addAll);
+        return buildSnippet(words, cleanWords, foundWords, matchedForms);
+    }
+
+    static String buildSnippet(List<String> words, List<String> cleanWords, List<WordInfo> foundWords, Set<String> matchedForms) {
+        StringBuilder snippet = new StringBuilder();
+        int lastAddedPos = -2;
+        int snippetLength = 0;
+        final int MAX_SNIPPET_LENGTH = 300;
+
+        for (WordInfo wordInfo : foundWords) {
+            if (snippetLength >= MAX_SNIPPET_LENGTH) break;
+            if (wordInfo.position <= lastAddedPos) continue;
+
+            int start = Math.max(0, wordInfo.position - 5);
+            int end = Math.min(words.size(), wordInfo.position + 5);
+            lastAddedPos = end;
+
+            StringBuilder fragment = new StringBuilder();
+            for (int i = start; i < end; i++) {
+                String word = words.get(i);
+                boolean isMatch = matchedForms.contains(cleanWords.get(i));
+
+                fragment.append(isMatch ? "<b>" + word + "</b>" : word)
+                        .append(" ");
+            }
+
+            String fragText = fragment.toString().trim() + "... ";
+            if (snippetLength + fragText.length() > MAX_SNIPPET_LENGTH) {
+                fragText = fragText.substring(0, MAX_SNIPPET_LENGTH - snippetLength) + "... ";
+            }
+
+            snippet.append(fragText);
+            snippetLength += fragText.length();
+        }
+
+        return snippet.toString().trim();
+    }
+
+    static class WordInfo {
+        int position;
+        String originalWord;
+        String lemma;
+
+        WordInfo(int position, String originalWord, String lemma) {
+            this.position = position;
+            this.originalWord = originalWord;
+            this.lemma = lemma;
+        }
+    }
+}
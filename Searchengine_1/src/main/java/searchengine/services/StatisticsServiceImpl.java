@@ -7,44 +7,50 @@ import searchengine.dto.statistics.StatisticsResponse;
 import searchengine.dto.statistics.StatisticsData;
 import searchengine.dto.statistics.TotalStatistics;
 import searchengine.model.Status;
-import searchengine.repository.SiteRepository;
-import searchengine.repository.PageRepository;
-import searchengine.repository.LemmaRepository;
 
 import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 @RequiredArgsConstructor
 @Service
 public class StatisticsServiceImpl implements StatisticsService {
 
-    private final SiteRepository siteRepository;
-    private final PageRepository pageRepository;
-    private final LemmaRepository lemmaRepository;
+    private final SiteStatisticsService siteStatisticsService;
 
     @Override
     public StatisticsResponse getStatistics() {
+        List<SiteStatisticsService.SiteCounters> sites = siteStatisticsService.snapshot();
+
         TotalStatistics totalStatistics = new TotalStatistics();
-        totalStatistics.setSites((int) siteRepository.count());
-        totalStatistics.setPages((int) pageRepository.count());
-        totalStatistics.setLemmas((int) lemmaRepository.count());
-        totalStatistics.setIndexing(!siteRepository.findByStatus(Status.INDEXED).isEmpty());
-
-        List<DetailedStatisticsItem> detailed = siteRepository.findAll().stream()
-                .map(site -> {
-                    DetailedStatisticsItem item = new DetailedStatisticsItem();
-                    item.setUrl(site.getUrl());
-                    item.setName(site.getName());
-                    item.setStatus(site.getStatus().toString());
-                    item.setStatusTime(site.getStatusTime() != null
-                            ? site.getStatusTime().toEpochSecond(ZoneOffset.UTC) * 1000
-                            : 0);
-                    item.setError(site.getLastError());
-                    item.setPages(pageRepository.countBySite(site));
-                    item.setLemmas(lemmaRepository.countBySite(site));
-                    return item;
-                })
-                .collect(Collectors.toList());
+        List<DetailedStatisticsItem> detailed = new ArrayList<>(sites.size());
+        boolean indexing = false;
+        int pages = 0;
+        int lemmas = 0;
+
+        for (SiteStatisticsService.SiteCounters site : sites) {
+            DetailedStatisticsItem item = new DetailedStatisticsItem();
+            item.setUrl(site.getUrl());
+            item.setName(site.getName());
+            item.setStatus(site.getStatus());
+            item.setStatusTime(site.getStatusTime() != null
+                    ? site.getStatusTime().toEpochSecond(ZoneOffset.UTC) * 1000
+                    : 0);
+            item.setError(site.getLastError());
+            item.setPages(site.getPages());
+            item.setLemmas(site.getLemmas());
+            item.setBytes(site.getBytes());
+            item.setErrors(site.getErrors());
+            detailed.add(item);
+
+            pages += site.getPages();
+            lemmas += site.getLemmas();
+            indexing |= Status.INDEXING.toString().equals(site.getStatus());
+        }
+
+        totalStatistics.setSites(sites.size());
+        totalStatistics.setPages(pages);
+        totalStatistics.setLemmas(lemmas);
+        totalStatistics.setIndexing(indexing);
 
         StatisticsData statisticsData = new StatisticsData();
         statisticsData.setTotal(totalStatistics);
@@ -0,0 +1,119 @@
+package searchengine.services;
+
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import searchengine.config.IndexingSettings;
+import searchengine.config.SearchSettings;
+import searchengine.model.Lemma;
+import searchengine.model.Page;
+import searchengine.model.SearchIndex;
+import searchengine.model.Site;
+import searchengine.repository.LemmaRepository;
+
+import java.util.*;
+
+/**
+ * Определяет стоп-леммы по статистике корпуса: лемма считается стоп-леммой, если доля страниц
+ * сайта, на которых она встречается, выше {@link IndexingSettings#getStopLemmaRatio()}.
+ * <p>
+ * Во время обхода записи индекса пишутся для всех лемм: частоты ещё не окончательные. После
+ * обхода {@link #moveToColdTier} переносит записи стоп-лемм из search_index в search_index_cold,
+ * и запросы с обычными леммами их не читают; к ним обращается только запрос из одних стоп-лемм
+ * (см. {@link #ranks}). Частота леммы по-прежнему равна числу её записей в обоих слоях.
+ */
+@Service
+@RequiredArgsConstructor
+public class StopLemmaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StopLemmaService.class);
+
+    private static final String SITE = "l.site_id = ? AND ";
+    /** То же условие, что в {@link #isStopLemma}; параметры - хватает ли страниц, число страниц и доля. */
+    private static final String STOP = "? AND l.frequency::float8 / ? > ?";
+    private static final String MOVE_TO_COLD =
+            "WITH moved AS (DELETE FROM search_index si USING lemma l WHERE si.lemma_id = l.id AND " + SITE + STOP +
+            " RETURNING si.lemma_id, si.page_id, si.ranking) " +
+            "INSERT INTO search_index_cold (lemma_id, page_id, ranking) SELECT lemma_id, page_id, ranking FROM moved " +
+            "ON CONFLICT DO NOTHING";
+    private static final String MOVE_TO_HOT =
+            "WITH moved AS (DELETE FROM search_index_cold c USING lemma l WHERE c.lemma_id = l.id AND " + SITE + "NOT (" + STOP +
+            ") RETURNING c.lemma_id, c.page_id, c.ranking) " +
+            "INSERT INTO search_index (lemma_id, page_id, ranking) SELECT lemma_id, page_id, ranking FROM moved";
+
+    private final IndexingSettings indexingSettings;
+    private final SearchSettings searchSettings;
+    private final JdbcTemplate jdbcTemplate;
+    private final LemmaRepository lemmaRepository;
+
+    public boolean isStopLemma(int documentFrequency, long totalPages) {
+        return totalPages >= indexingSettings.getStopLemmaMinPages()
+                && (double) documentFrequency / totalPages > indexingSettings.getStopLemmaRatio();
+    }
+
+    /**
+     * Раскладывает записи индекса сайта по слоям по окончательным частотам: записи стоп-лемм
+     * уходят в холодный слой, записи лемм, переставших быть стоп-леммами, возвращаются.
+     * Вызывается после обхода сайта до {@link SearchBackend#siteIndexed}.
+     */
+    @Transactional
+    public void moveToColdTier(Site site) {
+        if (!searchSettings.writesSearchIndex()) return;
+
+        long start = System.nanoTime();
+        Object[] args = stopLemmaArgs(site);
+        int cold = jdbcTemplate.update(MOVE_TO_COLD, args);
+        int hot = jdbcTemplate.update(MOVE_TO_HOT, args);
+        logger.info("Записи стоп-лемм сайта {}: в холодный слой {}, обратно {} за {} мс",
+                site.getUrl(), cold, hot, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /** Стоп-леммы сайта по текущим частотам. */
+    public List<Integer> stopLemmaIds(Site site) {
+        return jdbcTemplate.queryForList("SELECT l.id FROM lemma l WHERE " + SITE + STOP, Integer.class, stopLemmaArgs(site));
+    }
+
+    /** Ранги леммы на страницах сайта из обоих слоёв. */
+    public Map<Integer, Float> ranks(Lemma lemma) {
+        Map<Integer, Float> ranks = new HashMap<>();
+        jdbcTemplate.query("SELECT page_id, ranking FROM search_index WHERE lemma_id = ? " +
+                        "UNION ALL SELECT page_id, ranking FROM search_index_cold WHERE lemma_id = ?",
+                rs -> {
+                    ranks.put(rs.getInt(1), rs.getFloat(2));
+                }, lemma.getId(), lemma.getId());
+        return ranks;
+    }
+
+    /**
+     * Записи страницы в холодном слое. Удаляются они вместе со страницей, а частоты их лемм
+     * уменьшает {@link PageProcessor#deletePageInfo}.
+     */
+    public List<SearchIndex> coldEntries(Page page) {
+        Map<Integer, Float> ranks = new HashMap<>();
+        jdbcTemplate.query("SELECT lemma_id, ranking FROM search_index_cold WHERE page_id = ?",
+                rs -> {
+                    ranks.put(rs.getInt(1), rs.getFloat(2));
+                }, page.getId());
+        if (ranks.isEmpty()) return List.of();
+
+        List<SearchIndex> entries = new ArrayList<>();
+        for (Lemma lemma : lemmaRepository.findAllByIdIn(ranks.keySet())) {
+            SearchIndex entry = new SearchIndex();
+            entry.setPage(page);
+            entry.setLemma(lemma);
+            entry.setRanking(ranks.get(lemma.getId()));
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    private Object[] stopLemmaArgs(Site site) {
+        Integer pages = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM page WHERE site_id = ?", Integer.class, site.getId());
+        long totalPages = pages == null ? 0 : pages;
+        return new Object[]{site.getId(), totalPages >= indexingSettings.getStopLemmaMinPages(),
+                Math.max(totalPages, 1), indexingSettings.getStopLemmaRatio()};
+    }
+}
@@ -0,0 +1,120 @@
+package searchengine.services;
+
+import java.util.*;
+
+/**
+ * Словарь подсказок одного сайта: слова по алфавиту и их веса. Слова с нужным префиксом
+ * занимают непрерывный отрезок массива и находятся двоичным поиском, а лучшие по весу
+ * достаются из отрезка деревом отрезков с номером самого тяжёлого слова в каждом узле:
+ * из очереди берётся отрезок с наибольшим весом, его слово попадает в ответ, остаток
+ * делится на две части. На {@code n} подсказок уходит O(n log n) без просмотра всего отрезка.
+ * <p>
+ * Компактнее слова хранил бы FST из lucene-core ({@code org.apache.lucene.util.fst}, на нём
+ * построены подсказчики Lucene); массивы выбраны ради простоты сборки и выборки по весу.
+ */
+final class SuggestDictionary {
+
+    static final SuggestDictionary EMPTY = new SuggestDictionary(new String[0], new int[0]);
+
+    private final String[] terms;
+    private final int[] weights;
+    /** Дерево отрезков: в узле - номер слова с наибольшим весом (при равенстве - первого по алфавиту). */
+    private final int[] tree;
+    private final int leaves;
+
+    private SuggestDictionary(String[] terms, int[] weights) {
+        this.terms = terms;
+        this.weights = weights;
+        int size = 1;
+        while (size < Math.max(1, terms.length)) size <<= 1;
+        leaves = size;
+        tree = new int[2 * size];
+        Arrays.fill(tree, -1);
+        for (int i = 0; i < terms.length; i++) {
+            tree[size + i] = i;
+        }
+        for (int node = size - 1; node > 0; node--) {
+            tree[node] = heavier(tree[2 * node], tree[2 * node + 1]);
+        }
+    }
+
+    /** Словарь из слов с весами; вес слова, встреченного несколько раз, - наибольший. */
+    static SuggestDictionary build(Map<String, Integer> weightedTerms) {
+        String[] terms = weightedTerms.keySet().toArray(new String[0]);
+        Arrays.sort(terms);
+        int[] weights = new int[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            weights[i] = weightedTerms.get(terms[i]);
+        }
+        return new SuggestDictionary(terms, weights);
+    }
+
+    int size() {
+        return terms.length;
+    }
+
+    /**
+     * До {@code limit} слов с префиксом {@code prefix} по убыванию веса.
+     */
+    List<Suggestion> top(String prefix, int limit) {
+        int from = lowerBound(prefix);
+        int to = lowerBound(prefix + Character.MAX_VALUE);
+        List<Suggestion> result = new ArrayList<>(Math.min(limit, Math.max(0, to - from)));
+        if (from >= to || limit <= 0) return result;
+
+        // Отрезки [from, to) в очереди по весу их самого тяжёлого слова
+        PriorityQueue<int[]> ranges = new PriorityQueue<>((a, b) -> weights[a[2]] != weights[b[2]]
+                ? Integer.compare(weights[b[2]], weights[a[2]])
+                : Integer.compare(a[2], b[2]));
+        ranges.add(new int[]{from, to, argMax(from, to)});
+        while (!ranges.isEmpty() && result.size() < limit) {
+            int[] range = ranges.poll();
+            int best = range[2];
+            result.add(new Suggestion(terms[best], weights[best]));
+            if (range[0] < best) ranges.add(new int[]{range[0], best, argMax(range[0], best)});
+            if (best + 1 < range[1]) ranges.add(new int[]{best + 1, range[1], argMax(best + 1, range[1])});
+        }
+        return result;
+    }
+
+    /** Номер самого тяжёлого слова на отрезке [from, to). */
+    private int argMax(int from, int to) {
+        int best = -1;
+        for (int left = from + leaves, right = to + leaves; left < right; left >>= 1, right >>= 1) {
+            if ((left & 1) == 1) best = heavier(best, tree[left++]);
+            if ((right & 1) == 1) best = heavier(best, tree[--right]);
+        }
+        return best;
+    }
+
+    private int heavier(int a, int b) {
+        if (a < 0) return b;
+        if (b < 0) return a;
+        if (weights[a] != weights[b]) return weights[a] > weights[b] ? a : b;
+        return Math.min(a, b);
+    }
+
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = terms.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (terms[middle].compareTo(key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    static final class Suggestion {
+        final String term;
+        final int weight;
+
+        Suggestion(String term, int weight) {
+            this.term = term;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package searchengine.services;
+
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import searchengine.config.SearchSettings;
+import searchengine.dto.response.SuggestResponse;
+import searchengine.model.Site;
+import searchengine.repository.SiteRepository;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Подсказки по началу слова для строки поиска. Для каждого сайта в памяти держится
+ * {@link SuggestDictionary} из лемм сайта и словоформ, встреченных при индексации;
+ * вес слова - число страниц, на которых оно встречается. Запрос подсказок к базе
+ * не обращается: словари пересобираются при запуске и после каждой индексации.
+ * <p>
+ * Словоформы копятся только во время индексации и в базе не хранятся, поэтому после
+ * перезапуска приложения подсказки строятся по одним леммам до следующей индексации.
+ */
+@Service
+@RequiredArgsConstructor
+public class SuggestService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SuggestService.class);
+    private static final int MIN_WORD_LENGTH = 2;
+    private static final int MAX_WORD_LENGTH = 40;
+    private static final int MAX_LIMIT = 50;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SiteRepository siteRepository;
+    private final SearchSettings searchSettings;
+
+    /** Словари по адресу сайта. */
+    private final Map<String, SuggestDictionary> dictionaries = new ConcurrentHashMap<>();
+    /** Словоформы текущей индексации: сайт - слово - число страниц. */
+    private final Map<Integer, Map<String, AtomicInteger>> surfaceForms = new ConcurrentHashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        rebuild();
+    }
+
+    /**
+     * Учитывает словоформы проиндексированной страницы, каждую один раз на страницу.
+     */
+    public void pageIndexed(Site site, String text) {
+        Set<String> words = new HashSet<>();
+        new TextTokenizer().tokenizeWords(text, (buffer, length, script, start, end) -> {
+            if (length >= MIN_WORD_LENGTH && length <= MAX_WORD_LENGTH) {
+                words.add(new String(buffer, 0, length));
+            }
+        });
+        Map<String, AtomicInteger> forms = surfaceForms.computeIfAbsent(site.getId(), id -> new ConcurrentHashMap<>());
+        for (String word : words) {
+            forms.computeIfAbsent(word, key -> new AtomicInteger()).incrementAndGet();
+        }
+    }
+
+    /**
+     * Сбрасывает словоформы перед полной переиндексацией.
+     */
+    public void clear() {
+        surfaceForms.clear();
+    }
+
+    /**
+     * Пересобирает словари всех сайтов из базы; словари удалённых сайтов выбрасываются.
+     */
+    public void rebuild() {
+        Set<String> urls = new HashSet<>();
+        for (Site site : siteRepository.findAll()) {
+            urls.add(site.getUrl());
+            rebuild(site);
+        }
+        dictionaries.keySet().retainAll(urls);
+    }
+
+    /**
+     * Пересобирает словарь сайта: леммы с частотами из таблицы {@code lemma}
+     * и словоформы, накопленные при индексации.
+     */
+    public void rebuild(Site site) {
+        long start = System.nanoTime();
+        Map<String, Integer> weights = new HashMap<>();
+        jdbcTemplate.query("SELECT lemma, frequency FROM lemma WHERE site_id = ?", rs -> {
+            String lemma = rs.getString(1);
+            if (lemma.length() >= MIN_WORD_LENGTH && lemma.length() <= MAX_WORD_LENGTH) {
+                weights.merge(lemma, rs.getInt(2), Math::max);
+            }
+        }, site.getId());
+        Map<String, AtomicInteger> forms = surfaceForms.getOrDefault(site.getId(), Map.of());
+        forms.forEach((word, pages) -> weights.merge(word, pages.get(), Math::max));
+
+        SuggestDictionary dictionary = SuggestDictionary.build(weights);
+        dictionaries.put(site.getUrl(), dictionary);
+        logger.info("Словарь подсказок сайта {} собран за {} мс: {} слов",
+                site.getUrl(), (System.nanoTime() - start) / 1_000_000, dictionary.size());
+    }
+
+    /**
+     * Подсказки для начала запроса: последнее слово дополняется словами словаря, предыдущие
+     * слова запроса сохраняются. Без сайта веса слов по всем сайтам складываются.
+     */
+    public SuggestResponse suggest(String prefix, String siteUrl, Integer limit) {
+        SuggestResponse response = new SuggestResponse();
+        int count = Math.min(limit == null ? searchSettings.getSuggestLimit() : limit, MAX_LIMIT);
+        String query = prefix == null ? "" : prefix.toLowerCase(Locale.ROOT).stripLeading();
+        int split = query.lastIndexOf(' ') + 1;
+        String head = query.substring(0, split);
+        String word = query.substring(split);
+
+        List<SuggestDictionary> sources;
+        if (siteUrl != null && !siteUrl.isEmpty()) {
+            SuggestDictionary dictionary = dictionaries.get(siteUrl);
+            if (dictionary == null) {
+                response.setResult(false);
+                response.setError("Указанный сайт не проиндексирован");
+                return response;
+            }
+            sources = List.of(dictionary);
+        } else {
+            sources = new ArrayList<>(dictionaries.values());
+        }
+
+        response.setResult(true);
+        if (word.isEmpty() || count <= 0) {
+            response.setSuggestions(List.of());
+            return response;
+        }
+        response.setSuggestions(top(sources, word, count).stream()
+                .map(term -> head + term)
+                .collect(Collectors.toList()));
+        return response;
+    }
+
+    private static List<String> top(List<SuggestDictionary> sources, String word, int limit) {
+        if (sources.size() == 1) {
+            return sources.get(0).top(word, limit).stream()
+                    .map(suggestion -> suggestion.term)
+                    .collect(Collectors.toList());
+        }
+        Map<String, Integer> merged = new HashMap<>();
+        for (SuggestDictionary dictionary : sources) {
+            for (SuggestDictionary.Suggestion suggestion : dictionary.top(word, limit)) {
+                merged.merge(suggestion.term, suggestion.weight, Integer::sum);
+            }
+        }
+        return merged.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,156 @@
+package searchengine.services;
+
+/**
+ * Однопроходный токенизатор текста без регулярных выражений.
+ * <p>
+ * Поддерживает два режима:
+ * <ul>
+ *     <li>{@link #tokenize} делит текст на слова по пробельным символам (тот же набор, что и
+ *     {@code \s} в регулярных выражениях) и оставляет в каждом слове только буквы и цифры;</li>
+ *     <li>{@link #tokenizeWords} выделяет непрерывные последовательности букв одной
+ *     письменности (кириллица или латиница) для морфологического анализа.</li>
+ * </ul>
+ * Символы приводятся к нижнему регистру и складываются в переиспользуемый буфер, который вместе
+ * с границами слова в исходном тексте передаётся обработчику. Экземпляр не потокобезопасен.
+ */
+public final class TextTokenizer {
+
+    private static final int INITIAL_BUFFER_SIZE = 32;
+    private static final char SOFT_HYPHEN = '\u00AD';
+
+    /**
+     * Получатель слов, разделённых пробелами. Буфер действителен только во время вызова.
+     */
+    @FunctionalInterface
+    public interface TokenHandler {
+        /**
+         * @param buffer очищенное слово в нижнем регистре
+         * @param length длина очищенного слова (может быть 0)
+         * @param start  начало слова в исходном тексте
+         * @param end    конец слова в исходном тексте (не включительно)
+         */
+        void onToken(char[] buffer, int length, int start, int end);
+    }
+
+    /**
+     * Получатель буквенных токенов с определённой письменностью. Буфер действителен только во время вызова.
+     */
+    @FunctionalInterface
+    public interface WordHandler {
+        void onWord(char[] buffer, int length, Script script, int start, int end);
+    }
+
+    public enum Script {
+        CYRILLIC,
+        LATIN
+    }
+
+    private char[] buffer = new char[INITIAL_BUFFER_SIZE];
+
+    /**
+     * Делит текст по пробелам; в буфер попадают только буквы и цифры 0-9.
+     */
+    public void tokenize(CharSequence text, TokenHandler handler) {
+        int textLength = text.length();
+        int pos = 0;
+        while (pos < textLength) {
+            while (pos < textLength && isSeparator(text.charAt(pos))) {
+                pos++;
+            }
+            if (pos == textLength) {
+                break;
+            }
+
+            int start = pos;
+            int length = 0;
+            while (pos < textLength) {
+                char c = text.charAt(pos);
+                if (isSeparator(c)) {
+                    break;
+                }
+                char lower = Character.toLowerCase(c);
+                if (Character.isLetter(lower) || (lower >= '0' && lower <= '9')) {
+                    append(length++, lower);
+                }
+                pos++;
+            }
+            handler.onToken(buffer, length, start, pos);
+        }
+    }
+
+    /**
+     * Выделяет последовательности букв одной письменности. Любой другой символ, как и смена
+     * письменности, завершает токен; мягкий перенос внутри слова пропускается.
+     */
+    public void tokenizeWords(CharSequence text, WordHandler handler) {
+        tokenizeWords(text, 0, text.length(), handler);
+    }
+
+    /**
+     * То же, что {@link #tokenizeWords(CharSequence, WordHandler)}, для диапазона {@code [from, to)}.
+     * Границы диапазона должны приходиться на {@link #isWordBoundary границы слов}.
+     */
+    public void tokenizeWords(CharSequence text, int from, int to, WordHandler handler) {
+        int length = 0;
+        int start = from;
+        Script current = null;
+
+        for (int pos = from; pos < to; pos++) {
+            char c = text.charAt(pos);
+            if (c == SOFT_HYPHEN && current != null) {
+                continue;
+            }
+            char lower = Character.toLowerCase(c);
+            Script script = scriptOf(lower);
+            if (script != current && current != null) {
+                handler.onWord(buffer, length, current, start, pos);
+                length = 0;
+            }
+            if (script != null) {
+                if (length == 0) {
+                    start = pos;
+                }
+                append(length++, lower);
+            }
+            current = script;
+        }
+        if (current != null) {
+            handler.onWord(buffer, length, current, start, to);
+        }
+    }
+
+    /**
+     * Проверяет, что символ гарантированно разделяет токены в {@link #tokenizeWords}, то есть
+     * текст можно разрезать перед ним без изменения результата.
+     */
+    public static boolean isWordBoundary(char c) {
+        return c != SOFT_HYPHEN && scriptOf(Character.toLowerCase(c)) == null;
+    }
+
+    /**
+     * Письменность строчного символа или {@code null}, если символ не является буквой русского
+     * или латинского алфавита.
+     */
+    public static Script scriptOf(char c) {
+        if ((c >= 'а' && c <= 'я') || c == 'ё') {
+            return Script.CYRILLIC;
+        }
+        if (c >= 'a' && c <= 'z') {
+            return Script.LATIN;
+        }
+        return null;
+    }
+
+    private void append(int index, char c) {
+        if (index == buffer.length) {
+            char[] grown = new char[buffer.length * 2];
+            System.arraycopy(buffer, 0, grown, 0, index);
+            buffer = grown;
+        }
+        buffer[index] = c;
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
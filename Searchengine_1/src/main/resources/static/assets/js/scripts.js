@@ -1607,7 +1607,7 @@ var API = function(){
                             '<option value="' + site.url + '">' +
                                 site.url +
                             '</option>')
-                        $blockSiteExample.removeClass('Statistics-example');
+                        $blockSiteExample.removeClass('Statistics-example').data('url', site.url);
                         $blockSiteExample.find('.Statistics-status')
                             .addClass(statusClass)
                             .text(site.status)
@@ -1621,8 +1621,9 @@ var API = function(){
                                 time.getHours() + ':' +
                                 time.getMinutes() + ':' +
                                 time.getSeconds() +
-                                '</div><div class="Statistics-option"><strong>Pages:</strong> ' + site.pages +
-                                '</div><div class="Statistics-option"><strong>Lemmas:</strong> ' + site.lemmas +
+                                '</div><div class="Statistics-option Statistics-option_pages"><strong>Pages:</strong> ' + site.pages +
+                                '</div><div class="Statistics-option Statistics-option_progress"></div>' +
+                                '<div class="Statistics-option"><strong>Lemmas:</strong> ' + site.lemmas +
                                 '</div><div class="Statistics-option Statistics-option_error"><strong>Error:</strong> ' + site.error + '</div>'+
                                 '')
     
@@ -1648,9 +1649,9 @@ var API = function(){
                             $this.removeClass('Tabs-block_update')
                         });
                     });
-                    if (result.statistics.total.isIndexing) {
-                        var $btnIndex = $('.btn[data-send="startIndexing"]'),
-                            text = $btnIndex.find('.btn-content').text();
+                    var $btnIndex = $('.btn[data-send="startIndexing"]');
+                    if (result.statistics.total.isIndexing && !$btnIndex.data('check')) {
+                        var text = $btnIndex.find('.btn-content').text();
                         $btnIndex.find('.btn-content').text($btnIndex.data('alttext'));
                         $btnIndex
                             .data('check', true)
@@ -1659,6 +1660,9 @@ var API = function(){
                             .data('alttext', text)
                             .addClass('btn_check')
                         $('.UpdatePageBlock').hide(0)
+                    } else if (!result.statistics.total.isIndexing && $btnIndex.data('check')) {
+                        // Индексация закончилась, пока страница была открыта
+                        shiftCheck($btnIndex, true);
                     }
     
                 } else {
@@ -1723,13 +1727,17 @@ var API = function(){
                     });
                 }
             });
-            sendData(
-                send['statistics'].address,
-                send['statistics'].type,
-                '',
-                send['statistics'].action,
-                $('.Statistics')
-            )
+            var $statistics = $('.Statistics');
+            $statistics.on('statisticsRefresh', function(){
+                sendData(
+                    send['statistics'].address,
+                    send['statistics'].type,
+                    '',
+                    send['statistics'].action,
+                    $statistics
+                )
+            });
+            $statistics.trigger('statisticsRefresh');
             var $send = $('[data-send]');
             $send.on('submit click', function(e){
                 var $this = $(this);
@@ -1865,13 +1873,123 @@ var Spoiler = function(){
 Spoiler().init();
 
 var Statistics = function(){
+    var $statistics = $('.Statistics');
+    var statusClasses = {
+        INDEXED: 'Statistics-status_checked',
+        FAILED: 'Statistics-status_cancel',
+        INDEXING: 'Statistics-status_pause'
+    };
+    var pages = {};
+    var statuses = {};
+    var poller = null;
+
+    function formatEta(seconds) {
+        var minutes = Math.floor(seconds / 60);
+        return minutes > 0 ? minutes + ' min ' + seconds % 60 + ' s' : seconds + ' s';
+    }
+
+    // Обновляет блок сайта по событию прогресса; true, если индексация сайта закончилась
+    function update(site) {
+        var finished = statuses[site.url] === 'INDEXING' && site.status !== 'INDEXING';
+        statuses[site.url] = site.status;
+        pages[site.url] = site.pages;
+
+        var $block = $statistics.find('.HideBlock').not('.Statistics-example').filter(function(){
+            return $(this).data('url') === site.url;
+        });
+        if (!$block.length) return finished;
+        $block.find('.Statistics-status')
+            .removeClass('Statistics-status_checked Statistics-status_cancel Statistics-status_pause')
+            .addClass(statusClasses[site.status] || '')
+            .text(site.status);
+        $block.find('.Statistics-option_pages').html('<strong>Pages:</strong> ' + site.pages);
+        var progress = '';
+        if (site.status === 'INDEXING') {
+            progress = '<strong>Queued:</strong> ' + site.queued +
+                ', <strong>Speed:</strong> ' + site.pagesPerSecond + ' pages/s' +
+                (site.etaSeconds != null ? ', <strong>ETA:</strong> ' + formatEta(site.etaSeconds) : '');
+        }
+        $block.find('.Statistics-option_progress').html(progress);
+        var $description = $block.find('.Statistics-description');
+        if ($description.is(':visible')) {
+            $block.find('.HideBlock-content').css('height', $description.outerHeight() + 40);
+        }
+        return finished;
+    }
+
+    function onProgress(event) {
+        var progress = JSON.parse(event.data);
+        var refresh = false;
+        progress.sites.forEach(function(site){
+            refresh = update(site) || refresh;
+        });
+        var total = 0;
+        $.each(pages, function(url, count){
+            total += count;
+        });
+        $('#totalPages').text(total);
+        // Число лемм и ошибки в событиях не передаются: после индексации статистика читается целиком
+        if (refresh) {
+            $statistics.trigger('statisticsRefresh');
+        }
+    }
+
+    // Запасной вариант без Server-Sent Events: статистика запрашивается периодически
+    function poll() {
+        if (poller) return;
+        poller = setInterval(function(){
+            $statistics.trigger('statisticsRefresh');
+        }, 5000);
+    }
+
     return {
         init: function(){
+            if (!$statistics.length) return;
+            if (!window.EventSource) {
+                poll();
+                return;
+            }
+            var source = new EventSource(backendApiUrl + '/indexing/progress');
+            source.addEventListener('progress', onProgress);
+            source.onerror = function(){
+                // Временный обрыв браузер переподключает сам; закрытый поток не вернётся
+                if (source.readyState === EventSource.CLOSED) {
+                    poll();
+                }
+            };
         }
     };
 };
 Statistics().init();
 
+var Suggest = function(){
+    var $query = $('#query');
+    var $list = $('#query-suggestions');
+    var pending = null;
+    return {
+        init: function(){
+            $query.on('input', function(){
+                var prefix = $(this).val();
+                if (pending) pending.abort();
+                if (!prefix.trim()) {
+                    $list.empty();
+                    return;
+                }
+                pending = $.get(backendApiUrl + '/suggest', {
+                    prefix: prefix,
+                    site: $('select[name="site"]').val()
+                }, function(response){
+                    $list.empty();
+                    $.each(response.suggestions || [], function(i, suggestion){
+                        $list.append($('<option>').attr('value', suggestion));
+                    });
+                });
+            });
+        }
+    };
+};
+Suggest().init();
+
 var Tabs = function(){
     var $tabs = $('.Tabs');
     var $tabsLink = $('.Tabs-link');
@@ -0,0 +1,89 @@
+package searchengine;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Приложение поднимается на встроенном PostgreSQL, а {@code /actuator/prometheus} отдаёт
+ * метрики обхода, индексации и поиска в текстовом формате Prometheus. В тестах Spring Boot
+ * экспорт метрик по умолчанию выключен, его включает {@link AutoConfigureMetrics}.
+ */
+@AutoConfigureMetrics
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.jpa.show-sql=false",
+        "logging.level.root=WARN",
+        "logging.level.org.hibernate=WARN",
+        "logging.level.searchengine=WARN",
+        "logging.file.name=target/test.log",
+        "indexing-settings.morphology-cache-path="
+})
+class PrometheusEndpointTest {
+
+    private static final EmbeddedPostgres POSTGRES = startPostgres();
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> POSTGRES.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "");
+    }
+
+    @AfterAll
+    static void stopPostgres() throws IOException {
+        POSTGRES.close();
+    }
+
+    @Test
+    void scrapeContainsEngineMeters() {
+        ResponseEntity<String> response = restTemplate.getForEntity("/actuator/prometheus", String.class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getHeaders().getContentType()).isNotNull();
+        assertThat(response.getHeaders().getContentType().isCompatibleWith(MediaType.TEXT_PLAIN)).isTrue();
+
+        String body = response.getBody();
+        assertThat(body).isNotNull();
+        List<String> meters = List.of(
+                "crawler_pages_total",
+                "crawler_fetch_errors_total",
+                "crawler_parse_seconds_count",
+                "indexing_lemmatization_seconds_count",
+                "indexing_db_write_seconds_count",
+                "search_request_seconds_count",
+                "search_timeouts_total",
+                "search_concurrency_limit",
+                "search_concurrency_inflight",
+                "search_queue_size");
+        for (String meter : meters) {
+            assertThat(body).as("метрика %s", meter)
+                    .containsPattern("(?m)^" + meter + "\\{[^}]*application=\"searchengine\"[^}]*} ");
+        }
+    }
+
+    private static EmbeddedPostgres startPostgres() {
+        try {
+            return EmbeddedPostgres.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
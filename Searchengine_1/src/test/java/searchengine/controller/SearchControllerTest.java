@@ -0,0 +1,77 @@
+package searchengine.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import searchengine.config.SearchSettings;
+import searchengine.dto.response.SearchResponse;
+import searchengine.services.SearchService;
+import searchengine.services.SuggestService;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Проверка параметров постраничной выдачи {@code /api/search}.
+ */
+class SearchControllerTest {
+
+    private SearchService searchService;
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setUp() {
+        searchService = mock(SearchService.class);
+        SearchSettings settings = new SearchSettings();
+        settings.setMaxLimit(50);
+        mvc = MockMvcBuilders.standaloneSetup(new SearchController(searchService, settings, mock(SuggestService.class)))
+                .build();
+    }
+
+    @Test
+    void negativeOffsetIsBadRequest() throws Exception {
+        perform("/api/search?query=кот&offset=-1");
+
+        verifyNoInteractions(searchService);
+    }
+
+    @Test
+    void nonPositiveLimitIsBadRequest() throws Exception {
+        perform("/api/search?query=кот&limit=0");
+        perform("/api/search?query=кот&limit=-10");
+
+        verifyNoInteractions(searchService);
+    }
+
+    @Test
+    void limitIsCappedByMaxLimit() throws Exception {
+        SearchResponse response = new SearchResponse();
+        response.setResult(true);
+        when(searchService.search(anyString(), any(), anyInt(), anyInt(), anyBoolean(), any()))
+                .thenReturn(CompletableFuture.completedFuture(response));
+
+        MvcResult result = mvc.perform(get("/api/search?query=кот&offset=20&limit=1000"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+
+        verify(searchService).search("кот", null, 20, 50, false, null);
+    }
+
+    private void perform(String url) throws Exception {
+        MvcResult result = mvc.perform(get(url)).andReturn();
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.result").value(false))
+                .andExpect(jsonPath("$.error").isNotEmpty());
+    }
+}
@@ -0,0 +1,99 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Поиск ближайшей леммы с опечатками в словаре {@link FuzzyLemmaIndex}.
+ */
+class FuzzyLemmaIndexTest {
+
+    private static final Map<String, Integer> LEMMAS = Map.of(
+            "машина", 10,
+            "малина", 3,
+            "картина", 5,
+            "дом", 7,
+            "лес", 4,
+            "объём", 2,
+            "ёж", 6,
+            "достопримечательность", 8);
+
+    private final FuzzyLemmaIndex index = FuzzyLemmaIndex.build(LEMMAS, 2, 7);
+
+    @Test
+    void findsLemmaAtDistanceOne() {
+        assertThat(closest("машна")).isEqualTo("машина");
+        assertThat(closest("мошина")).isEqualTo("машина");
+        assertThat(closest("картинна")).isEqualTo("картина");
+        // Перестановка соседних букв - одна правка
+        assertThat(closest("катрина")).isEqualTo("картина");
+    }
+
+    @Test
+    void findsLemmaAtDistanceTwo() {
+        assertThat(closest("мошна")).isEqualTo("машина");
+        assertThat(closest("кратинна")).isEqualTo("картина");
+    }
+
+    @Test
+    void indexWithDistanceOneSkipsFartherLemmas() {
+        FuzzyLemmaIndex strict = FuzzyLemmaIndex.build(LEMMAS, 1, 7);
+
+        assertThat(strict.closest("машна", 1)).isNotNegative();
+        assertThat(strict.closest("мошна", 1)).isNegative();
+    }
+
+    @Test
+    void prefersSmallerDistanceThenMoreFrequentLemma() {
+        // До "машина" и "малина" по одной замене, "машина" встречается чаще
+        assertThat(closest("мадина")).isEqualTo("машина");
+        // До "малина" одна правка, до "машина" две
+        assertThat(closest("мална")).isEqualTo("малина");
+    }
+
+    @Test
+    void skipsRareCandidates() {
+        int id = index.closest("мална", 5);
+
+        assertThat(index.lemma(id)).isEqualTo("машина");
+        assertThat(index.closest("мална", 11)).isNegative();
+    }
+
+    @Test
+    void handlesWholeCyrillicAlphabet() {
+        assertThat(closest("обьём")).isEqualTo("объём");
+        assertThat(closest("объем")).isEqualTo("объём");
+        assertThat(closest("еж")).isEqualTo("ёж");
+        assertThat(index.frequency("объём")).isEqualTo(2);
+        assertThat(index.frequency("объем")).isZero();
+    }
+
+    @Test
+    void matchesLongWordsByPrefix() {
+        assertThat(closest("достопримечательнось")).isEqualTo("достопримечательность");
+    }
+
+    @Test
+    void returnsNothingWithoutCandidates() {
+        assertThat(index.closest("трактор", 1)).isNegative();
+        // Сама лемма не предлагается, а других в пределах двух правок нет
+        assertThat(index.closest("лес", 1)).isNegative();
+        assertThat(FuzzyLemmaIndex.EMPTY.closest("машина", 1)).isNegative();
+        assertThat(FuzzyLemmaIndex.EMPTY.size()).isZero();
+    }
+
+    @Test
+    void exposesFrequencies() {
+        assertThat(index.size()).isEqualTo(LEMMAS.size());
+        assertThat(index.frequency("машина")).isEqualTo(10);
+        assertThat(index.frequency("самолёт")).isZero();
+    }
+
+    private String closest(String word) {
+        int id = index.closest(word, 1);
+        return id < 0 ? null : index.lemma(id);
+    }
+}
@@ -0,0 +1,110 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Счётчик лемм {@link LemmaCounter} на открытой адресации.
+ */
+class LemmaCounterTest {
+
+    @Test
+    void countsAndAddsDeltas() {
+        LemmaCounter counter = new LemmaCounter();
+        counter.increment("дом");
+        counter.increment("дом");
+        counter.add("сад", 5);
+        counter.add("дом", 3);
+
+        assertThat(counter.get("дом")).isEqualTo(5);
+        assertThat(counter.get("сад")).isEqualTo(5);
+        assertThat(counter.get("лес")).isZero();
+        assertThat(counter.size()).isEqualTo(2);
+    }
+
+    @Test
+    void collidingKeysAreCountedSeparately() {
+        // У всех четырёх строк одинаковый hashCode
+        String[] keys = {"AaAa", "AaBB", "BBAa", "BBBB"};
+        assertThat(keys[0].hashCode()).isEqualTo(keys[3].hashCode());
+
+        LemmaCounter counter = new LemmaCounter();
+        for (int i = 0; i < keys.length; i++) {
+            counter.add(keys[i], i + 1);
+        }
+        counter.increment("BBAa");
+
+        assertThat(counter.size()).isEqualTo(4);
+        assertThat(counter.toMap()).containsOnly(
+                Map.entry("AaAa", 1), Map.entry("AaBB", 2), Map.entry("BBAa", 4), Map.entry("BBBB", 4));
+    }
+
+    @Test
+    void resizeKeepsAllCounts() {
+        LemmaCounter counter = new LemmaCounter(1);
+        Map<String, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 10_000; i++) {
+            String key = "лемма" + i % 3_000;
+            counter.increment(key);
+            expected.merge(key, 1, Integer::sum);
+        }
+
+        assertThat(counter.size()).isEqualTo(3_000);
+        assertThat(counter.toMap()).isEqualTo(expected);
+        assertThat(counter.get("лемма2999")).isEqualTo(3);
+        assertThat(counter.get("лемма0")).isEqualTo(4);
+    }
+
+    @Test
+    void resizeKeepsCollidingKeys() {
+        LemmaCounter counter = new LemmaCounter();
+        // 2^7 строк с одним hashCode: цепочка переживает несколько увеличений таблицы
+        String[] keys = {""};
+        for (int i = 0; i < 7; i++) {
+            String[] next = new String[keys.length * 2];
+            for (int j = 0; j < keys.length; j++) {
+                next[2 * j] = keys[j] + "Aa";
+                next[2 * j + 1] = keys[j] + "BB";
+            }
+            keys = next;
+        }
+        for (String key : keys) {
+            counter.add(key, key.length());
+        }
+
+        assertThat(counter.size()).isEqualTo(128);
+        for (String key : keys) {
+            assertThat(counter.get(key)).isEqualTo(14);
+        }
+    }
+
+    @Test
+    void addAllMergesCounters() {
+        LemmaCounter first = new LemmaCounter();
+        first.add("дом", 2);
+        first.add("сад", 1);
+        LemmaCounter second = new LemmaCounter(1_000);
+        second.add("сад", 4);
+        second.add("лес", 3);
+
+        first.addAll(second);
+
+        assertThat(first.toMap()).containsOnly(Map.entry("дом", 2), Map.entry("сад", 5), Map.entry("лес", 3));
+        assertThat(second.toMap()).containsOnly(Map.entry("сад", 4), Map.entry("лес", 3));
+    }
+
+    @Test
+    void emptyCounter() {
+        LemmaCounter counter = new LemmaCounter(0);
+
+        assertThat(counter.size()).isZero();
+        assertThat(counter.toMap()).isEmpty();
+        counter.forEach((key, count) -> {
+            throw new AssertionError(key);
+        });
+    }
+}
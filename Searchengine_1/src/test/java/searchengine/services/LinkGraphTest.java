@@ -0,0 +1,111 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * PageRank по графу ссылок сайта {@link LinkGraph#compute} на маленьких графах с известным ответом.
+ */
+class LinkGraphTest {
+
+    private static final double DAMPING = 0.85;
+
+    @Test
+    void cycleGivesEqualRanks() {
+        LinkGraph graph = new LinkGraph();
+        graph.addPage("/a", 1, List.of("/b"));
+        graph.addPage("/b", 2, List.of("/c"));
+        graph.addPage("/c", 3, List.of("/a"));
+
+        LinkGraph.Scores scores = graph.compute(DAMPING, 100);
+
+        assertThat(scores.pageIds).containsExactly(1, 2, 3);
+        for (float pageRank : scores.pageRanks) {
+            assertThat((double) pageRank).isCloseTo(1.0, within(1e-5));
+        }
+        assertThat(scores.inLinks).containsExactly(1, 1, 1);
+    }
+
+    @Test
+    void danglingPageSharesItsRankWithAllPages() {
+        // У /b нет исходящих ссылок: r_a = (1 - d) / 2 + d * r_b / 2 и r_a + r_b = 1
+        LinkGraph graph = new LinkGraph();
+        graph.addPage("/a", 1, List.of("/b"));
+        graph.addPage("/b", 2, List.of());
+
+        LinkGraph.Scores scores = graph.compute(DAMPING, 100);
+
+        double rankA = 0.5 / (1 + DAMPING / 2);
+        assertThat((double) scores.pageRank(1)).isCloseTo(2 * rankA, within(1e-4));
+        assertThat((double) scores.pageRank(2)).isCloseTo(2 * (1 - rankA), within(1e-4));
+    }
+
+    @Test
+    void ranksAverageToOne() {
+        LinkGraph graph = new LinkGraph();
+        graph.addPage("/", 10, List.of("/a", "/b", "/c"));
+        graph.addPage("/a", 11, List.of("/"));
+        graph.addPage("/b", 12, List.of("/", "/a"));
+        graph.addPage("/c", 13, List.of());
+
+        LinkGraph.Scores scores = graph.compute(DAMPING, 100);
+
+        double sum = 0;
+        for (float pageRank : scores.pageRanks) sum += pageRank;
+        assertThat(sum).isCloseTo(4.0, within(1e-4));
+        assertThat(scores.pageRank(10)).isEqualTo(scores.maxPageRank);
+        assertThat(scores.inLinks).containsExactly(2, 2, 1, 1);
+    }
+
+    @Test
+    void stopsWhenConverged() {
+        LinkGraph.Scores converged = star().compute(DAMPING, 100);
+        LinkGraph.Scores longer = star().compute(DAMPING, 10_000);
+        LinkGraph.Scores single = star().compute(DAMPING, 1);
+
+        for (int i = 0; i < converged.pageIds.length; i++) {
+            assertThat(longer.pageRanks[i]).isCloseTo(converged.pageRanks[i], within(1e-5f));
+        }
+        assertThat(Math.abs(single.pageRanks[0] - converged.pageRanks[0])).isGreaterThan(0.1f);
+    }
+
+    @Test
+    void dropsLinksToMissingPagesSelfLinksAndRepeats() {
+        LinkGraph graph = new LinkGraph();
+        graph.addPage("/a", 2, List.of("/b", "/b", "/a", "/missing"));
+        graph.addPage("/b", 1, List.of("/a"));
+        graph.addPage("/b", 1, List.of("/a"));
+
+        // Ссылка страницы на себя не сохраняется, остальные отбрасываются при расчёте
+        assertThat(graph.edgeCount()).isEqualTo(5);
+
+        LinkGraph.Scores scores = graph.compute(DAMPING, 100);
+
+        assertThat(scores.edges).isEqualTo(2);
+        assertThat(scores.pageIds).containsExactly(1, 2);
+        assertThat(scores.inLinks).containsExactly(1, 1);
+        assertThat(scores.pageRank(3)).isEqualTo(1f);
+    }
+
+    @Test
+    void emptyGraphHasNoPages() {
+        LinkGraph.Scores scores = new LinkGraph().compute(DAMPING, 100);
+
+        assertThat(scores.pageIds).isEmpty();
+        assertThat(scores.maxPageRank).isEqualTo(1f);
+    }
+
+    /** Главная страница и пять страниц, ссылающихся только на неё. */
+    private static LinkGraph star() {
+        LinkGraph graph = new LinkGraph();
+        graph.addPage("/", 1, List.of("/1", "/2", "/3", "/4", "/5"));
+        for (int i = 1; i <= 5; i++) {
+            graph.addPage("/" + i, i + 1, List.of("/"));
+        }
+        return graph;
+    }
+}
@@ -0,0 +1,97 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.Test;
+import searchengine.model.PostingDelta;
+import searchengine.services.SearchBackend.ScoredPage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static searchengine.services.PostingsTest.postings;
+
+/**
+ * Пересечение сжатых списков лемм запроса {@link PostingSearchBackend#intersect}.
+ */
+class PostingSearchBackendIntersectTest {
+
+    @Test
+    void keepsPagesContainingAllLemmasAndSumsRanks() {
+        List<Postings> lists = lists(
+                postings(new int[]{1, 2, 3, 4, 5, 6}, new int[]{1, 1, 1, 1, 1, 1}),
+                postings(new int[]{2, 4, 6}, new int[]{5, 2, 1}),
+                postings(new int[]{1, 2, 4, 6, 7}, new int[]{9, 1, 5, 1, 9}));
+
+        PostingSearchBackend.Intersection result = PostingSearchBackend.intersect(lists, 10, pageId -> 1.0);
+
+        assertThat(result.total).isEqualTo(3);
+        assertThat(ids(result.top)).containsExactly(4, 2, 6);
+        assertThat(relevance(result.top)).containsExactly(8.0, 7.0, 3.0);
+    }
+
+    @Test
+    void ranksByBoostedRelevanceAndLimitsToTopK() {
+        List<Postings> lists = lists(
+                postings(new int[]{1, 2, 3, 4}, new int[]{4, 3, 2, 1}),
+                postings(new int[]{1, 2, 3, 4}, new int[]{4, 3, 2, 1}));
+
+        PostingSearchBackend.Intersection result = PostingSearchBackend.intersect(lists, 2, pageId -> pageId == 4 ? 10.0 : 1.0);
+
+        assertThat(result.total).isEqualTo(4);
+        assertThat(ids(result.top)).containsExactly(4, 1);
+        assertThat(relevance(result.top)).containsExactly(20.0, 8.0);
+    }
+
+    @Test
+    void countsPagesWithoutTopK() {
+        List<Postings> lists = lists(
+                postings(new int[]{1, 3, 5}, new int[]{1, 1, 1}),
+                postings(new int[]{3, 5, 7}, new int[]{1, 1, 1}));
+
+        PostingSearchBackend.Intersection result = PostingSearchBackend.intersect(lists, 0, pageId -> 1.0);
+
+        assertThat(result.total).isEqualTo(2);
+        assertThat(result.top).isEmpty();
+    }
+
+    @Test
+    void emptyListGivesNoPages() {
+        List<Postings> lists = lists(postings(new int[]{1, 2}, new int[]{1, 1}), Postings.EMPTY);
+
+        PostingSearchBackend.Intersection result = PostingSearchBackend.intersect(lists, 10, pageId -> 1.0);
+
+        assertThat(result.total).isZero();
+        assertThat(result.top).isEmpty();
+    }
+
+    @Test
+    void appliedDeltasTakePartInIntersection() {
+        Postings base = postings(new int[]{1, 2, 3}, new int[]{1, 1, 1});
+        Postings other = postings(new int[]{2, 3, 4}, new int[]{2, 2, 2});
+        PostingDelta removed = new PostingDelta();
+        removed.setPageId(3);
+        removed.setRanking(0);
+        PostingDelta added = new PostingDelta();
+        added.setPageId(4);
+        added.setRanking(3);
+
+        PostingSearchBackend.Intersection result = PostingSearchBackend.intersect(
+                lists(base.apply(List.of(removed, added)), other), 10, pageId -> 1.0);
+
+        assertThat(ids(result.top)).containsExactly(4, 2);
+        assertThat(relevance(result.top)).containsExactly(5.0, 3.0);
+    }
+
+    private static List<Postings> lists(Postings... postings) {
+        return new ArrayList<>(List.of(postings));
+    }
+
+    private static List<Integer> ids(List<ScoredPage> pages) {
+        return pages.stream().map(page -> page.pageId).collect(Collectors.toList());
+    }
+
+    private static List<Double> relevance(List<ScoredPage> pages) {
+        return pages.stream().map(page -> page.relevance).collect(Collectors.toList());
+    }
+}
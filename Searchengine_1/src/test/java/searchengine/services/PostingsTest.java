@@ -0,0 +1,151 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.Test;
+import searchengine.model.PostingDelta;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Сжатый список страниц леммы {@link Postings}: формат, применение изменений и горячая часть.
+ */
+class PostingsTest {
+
+    @Test
+    void encodeDecodeRoundTrip() {
+        Random random = new Random(42);
+        int size = 1000;
+        int[] pageIds = new int[size];
+        int[] ranks = new int[size];
+        int pageId = 0;
+        for (int i = 0; i < size; i++) {
+            // Разрывы разной длины дают varint в 1-3 байта
+            pageId += 1 + (i % 100 == 0 ? random.nextInt(100_000) : random.nextInt(5));
+            pageIds[i] = pageId;
+            ranks[i] = 1 + random.nextInt(i % 10 == 0 ? 1_000 : 3);
+        }
+
+        Postings decoded = Postings.decode(Postings.of(pageIds, ranks, size).encode());
+
+        assertThat(decoded.size()).isEqualTo(size);
+        for (int i = 0; i < size; i++) {
+            assertThat(decoded.pageId(i)).isEqualTo(pageIds[i]);
+            assertThat(decoded.rank(i)).isEqualTo(ranks[i]);
+        }
+    }
+
+    @Test
+    void encodesLargeValuesAndEmptyList() {
+        Postings postings = postings(new int[]{0, 127, 128, 16_384, Integer.MAX_VALUE}, new int[]{1, 127, 128, 300, 1});
+
+        assertThat(ids(Postings.decode(postings.encode()))).containsExactly(0, 127, 128, 16_384, Integer.MAX_VALUE);
+        assertThat(ranks(Postings.decode(postings.encode()))).containsExactly(1, 127, 128, 300, 1);
+        assertThat(Postings.EMPTY.encode()).containsExactly(0);
+        assertThat(Postings.decode(Postings.EMPTY.encode()).size()).isZero();
+    }
+
+    @Test
+    void smallGapsTakeOneByteEach() {
+        Postings postings = postings(new int[]{1, 2, 3, 5, 8}, new int[]{1, 1, 2, 1, 3});
+
+        // Число страниц, пять разностей и пять рангов
+        assertThat(postings.encode()).hasSize(11);
+    }
+
+    @Test
+    void applyKeepsLatestDeltaForSamePage() {
+        Postings base = postings(new int[]{1, 5, 9}, new int[]{2, 2, 2});
+
+        Postings applied = base.apply(List.of(delta(5, 7), delta(3, 1), delta(5, 4), delta(12, 6), delta(3, 8)));
+
+        assertThat(ids(applied)).containsExactly(1, 3, 5, 9, 12);
+        assertThat(ranks(applied)).containsExactly(2, 8, 4, 2, 6);
+    }
+
+    @Test
+    void applyRankZeroDeletesPage() {
+        Postings base = postings(new int[]{1, 5, 9}, new int[]{2, 3, 4});
+
+        Postings applied = base.apply(List.of(delta(5, 0), delta(9, 1), delta(9, 0), delta(20, 0)));
+
+        assertThat(ids(applied)).containsExactly(1);
+        assertThat(ranks(applied)).containsExactly(2);
+    }
+
+    @Test
+    void applyReaddsDeletedPageAndIsIdempotent() {
+        Postings base = postings(new int[]{1, 5}, new int[]{2, 3});
+        List<PostingDelta> deltas = List.of(delta(5, 0), delta(5, 6), delta(7, 1));
+
+        Postings once = base.apply(deltas);
+        Postings twice = once.apply(deltas);
+
+        assertThat(ids(once)).containsExactly(1, 5, 7);
+        assertThat(ranks(once)).containsExactly(2, 6, 1);
+        assertThat(ids(twice)).containsExactly(1, 5, 7);
+        assertThat(ranks(twice)).containsExactly(2, 6, 1);
+    }
+
+    @Test
+    void applyToEmptyListAndWithoutDeltas() {
+        Postings base = postings(new int[]{4}, new int[]{1});
+
+        assertThat(base.apply(List.of())).isSameAs(base);
+        assertThat(ids(Postings.EMPTY.apply(List.of(delta(8, 1), delta(2, 3))))).containsExactly(2, 8);
+    }
+
+    @Test
+    void topPrefersHigherRanksThenHigherBoost() {
+        Postings postings = postings(new int[]{1, 2, 3, 4, 5}, new int[]{5, 3, 3, 3, 1});
+
+        Postings top = postings.top(3, pageId -> pageId == 4 ? 2.0 : 1.0);
+
+        assertThat(ids(top)).containsExactly(1, 2, 4);
+        assertThat(ranks(top)).containsExactly(5, 3, 3);
+    }
+
+    @Test
+    void topOfShortListIsWholeList() {
+        Postings postings = postings(new int[]{1, 2}, new int[]{1, 2});
+
+        assertThat(postings.top(2, pageId -> 1.0)).isSameAs(postings);
+        assertThat(postings.top(5, pageId -> 1.0)).isSameAs(postings);
+    }
+
+    @Test
+    void maxRankExceptIgnoresPagesOfPart() {
+        Postings postings = postings(new int[]{1, 2, 3, 4, 5}, new int[]{9, 3, 7, 4, 1});
+        Postings hot = postings.top(2, pageId -> 1.0);
+
+        assertThat(ids(hot)).containsExactly(1, 3);
+        assertThat(postings.maxRankExcept(hot)).isEqualTo(4);
+        assertThat(postings.maxRankExcept(postings)).isZero();
+        assertThat(postings.maxRankExcept(Postings.EMPTY)).isEqualTo(9);
+    }
+
+    static Postings postings(int[] pageIds, int[] ranks) {
+        return Postings.of(pageIds, ranks, pageIds.length);
+    }
+
+    private static PostingDelta delta(int pageId, int ranking) {
+        PostingDelta delta = new PostingDelta();
+        delta.setPageId(pageId);
+        delta.setRanking(ranking);
+        return delta;
+    }
+
+    static List<Integer> ids(Postings postings) {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < postings.size(); i++) ids.add(postings.pageId(i));
+        return ids;
+    }
+
+    private static List<Integer> ranks(Postings postings) {
+        List<Integer> ranks = new ArrayList<>();
+        for (int i = 0; i < postings.size(); i++) ranks.add(postings.rank(i));
+        return ranks;
+    }
+}
@@ -0,0 +1,197 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import searchengine.config.SearchSettings;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Предел одновременных поисковых запросов {@link SearchConcurrencyLimiter} на ручных часах:
+ * задержки запросов и истечение ожидания в очереди задаются тестом.
+ */
+class SearchConcurrencyLimiterTest {
+
+    private final ManualClock clock = new ManualClock();
+    private final EngineMetrics engineMetrics = mock(EngineMetrics.class);
+    private final SearchSettings settings = new SearchSettings();
+
+    @BeforeEach
+    void setUp() {
+        settings.setInitialConcurrency(4);
+        settings.setMinConcurrency(1);
+        settings.setMaxConcurrency(8);
+        settings.setQueueSize(2);
+        settings.setQueueTimeout(500);
+        settings.setLatencyTolerance(2.0);
+    }
+
+    @Test
+    void growsOnlyWhileHalfOfSlotsAreBusy() {
+        settings.setInitialConcurrency(1);
+        SearchConcurrencyLimiter limiter = limiter();
+
+        // Запросы идут по одному: предел растёт на 0.2 за запрос, пока одно место - не меньше половины
+        for (int i = 0; i < 20; i++) {
+            SearchConcurrencyLimiter.Permit permit = limiter.acquire().join();
+            clock.advance(10);
+            permit.release(false);
+        }
+
+        assertThat(limiter.getLimit()).isEqualTo(2);
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    @Test
+    void shrinksWhenLatencyExceedsTolerance() {
+        SearchConcurrencyLimiter limiter = limiter();
+        SearchConcurrencyLimiter.Permit first = limiter.acquire().join();
+        SearchConcurrencyLimiter.Permit second = limiter.acquire().join();
+
+        // Первый замер задаёт оба средних: 10 мс
+        clock.advance(10);
+        first.release(false);
+        // Заняты два места из четырёх - половина, поэтому следующий замер меняет предел
+        limiter.acquire().join();
+        // Короткое среднее 110 мс, длинное 12 мс: отношение ниже 0.5, и предел идёт к 4 * 0.5 + 1
+        clock.advance(1000);
+        second.release(false);
+
+        assertThat(limiter.getLimit()).isEqualTo(3);
+    }
+
+    @Test
+    void timeoutCutsLimitByQuarterDownToMinimum() {
+        SearchConcurrencyLimiter limiter = limiter();
+
+        limiter.acquire().join().release(true);
+        assertThat(limiter.getLimit()).isEqualTo(3);
+
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire().join().release(true);
+        }
+        assertThat(limiter.getLimit()).isEqualTo(1);
+    }
+
+    @Test
+    void queuedRequestExpiresAfterQueueTimeout() {
+        settings.setInitialConcurrency(1);
+        SearchConcurrencyLimiter limiter = limiter();
+        SearchConcurrencyLimiter.Permit running = limiter.acquire().join();
+
+        CompletableFuture<SearchConcurrencyLimiter.Permit> waiting = limiter.acquire();
+        clock.advance(499);
+        assertThat(waiting).isNotDone();
+        assertThat(limiter.getWaiting()).isEqualTo(1);
+
+        clock.advance(1);
+        assertThatThrownBy(waiting::join)
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(SearchOverloadedException.class);
+        assertThat(limiter.getWaiting()).isZero();
+        verify(engineMetrics).recordSearchRejected("queue_timeout");
+
+        // Место, освободившееся после истечения, достаётся следующему запросу
+        running.release(false);
+        assertThat(limiter.acquire()).isDone();
+    }
+
+    @Test
+    void releaseGrantsWaitersInOrderBeforeTimeout() {
+        settings.setInitialConcurrency(1);
+        SearchConcurrencyLimiter limiter = limiter();
+        SearchConcurrencyLimiter.Permit running = limiter.acquire().join();
+        CompletableFuture<SearchConcurrencyLimiter.Permit> firstWaiter = limiter.acquire();
+        CompletableFuture<SearchConcurrencyLimiter.Permit> secondWaiter = limiter.acquire();
+
+        clock.advance(100);
+        running.cancel();
+
+        assertThat(firstWaiter).isDone();
+        assertThat(secondWaiter).isNotDone();
+        assertThat(limiter.getInFlight()).isEqualTo(1);
+
+        // Истечение выданного разрешения ничего не меняет, а второй запрос выбывает по сроку
+        clock.advance(400);
+        assertThat(firstWaiter).isCompletedWithValueMatching(permit -> permit != null);
+        assertThat(secondWaiter).isCompletedExceptionally();
+        assertThat(limiter.getInFlight()).isEqualTo(1);
+    }
+
+    @Test
+    void rejectsWhenQueueIsFull() {
+        settings.setInitialConcurrency(1);
+        SearchConcurrencyLimiter limiter = limiter();
+        limiter.acquire().join();
+        limiter.acquire();
+        limiter.acquire();
+
+        CompletableFuture<SearchConcurrencyLimiter.Permit> rejected = limiter.acquire();
+
+        assertThat(rejected).isCompletedExceptionally();
+        assertThat(limiter.getWaiting()).isEqualTo(2);
+        verify(engineMetrics).recordSearchRejected("queue_full");
+        verify(engineMetrics, never()).recordSearchRejected("queue_timeout");
+    }
+
+    @Test
+    void cancelledWaiterLeavesQueue() {
+        settings.setInitialConcurrency(1);
+        SearchConcurrencyLimiter limiter = limiter();
+        limiter.acquire().join();
+
+        limiter.acquire().cancel(false);
+
+        assertThat(limiter.getWaiting()).isZero();
+    }
+
+    private SearchConcurrencyLimiter limiter() {
+        return new SearchConcurrencyLimiter(settings, engineMetrics, clock);
+    }
+
+    /** Часы, которые идут только по {@link #advance}; отложенные задачи выполняются в этом же потоке. */
+    private static final class ManualClock implements SearchConcurrencyLimiter.Clock {
+        private long now;
+        private final List<long[]> deadlines = new ArrayList<>();
+        private final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public long nanoTime() {
+            return now;
+        }
+
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            deadlines.add(new long[]{now + TimeUnit.MILLISECONDS.toNanos(delayMillis)});
+            tasks.add(task);
+        }
+
+        void advance(long millis) {
+            now += TimeUnit.MILLISECONDS.toNanos(millis);
+            List<Runnable> due = new ArrayList<>();
+            Iterator<long[]> deadline = deadlines.iterator();
+            Iterator<Runnable> task = tasks.iterator();
+            while (deadline.hasNext()) {
+                long[] at = deadline.next();
+                Runnable next = task.next();
+                if (at[0] <= now) {
+                    due.add(next);
+                    deadline.remove();
+                    task.remove();
+                }
+            }
+            due.forEach(Runnable::run);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.Test;
+import searchengine.services.SearchBackend.ScoredPage;
+import searchengine.services.SearchBackend.SiteHits;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Слияние лучших страниц сайтов в общую выдачу {@link SearchService#mergeTopK}.
+ */
+class SearchServiceMergeTopKTest {
+
+    @Test
+    void equalRelevanceKeepsSiteOrder() {
+        List<SiteHits> hits = List.of(
+                site(page(1, 0.9), page(2, 0.5)),
+                site(page(10, 0.9), page(11, 0.5)),
+                site(page(20, 0.7)));
+
+        assertThat(ids(SearchService.mergeTopK(hits, 10))).containsExactly(1, 10, 20, 2, 11);
+    }
+
+    @Test
+    void takesOnlyKBestPages() {
+        List<SiteHits> hits = List.of(
+                site(page(1, 0.4), page(2, 0.1)),
+                site(page(10, 0.8), page(11, 0.4)));
+
+        assertThat(ids(SearchService.mergeTopK(hits, 3))).containsExactly(10, 1, 11);
+    }
+
+    @Test
+    void skipsSitesWithoutPages() {
+        List<SiteHits> hits = List.of(SiteHits.EMPTY, site(page(5, 1.0)), SiteHits.EMPTY);
+
+        assertThat(ids(SearchService.mergeTopK(hits, 10))).containsExactly(5);
+    }
+
+    @Test
+    void nonPositiveKGivesEmptyResult() {
+        List<SiteHits> hits = List.of(site(page(1, 1.0)));
+
+        assertThat(SearchService.mergeTopK(hits, 0)).isEmpty();
+        assertThat(SearchService.mergeTopK(hits, -5)).isEmpty();
+    }
+
+    private static SiteHits site(ScoredPage... pages) {
+        return new SiteHits(List.of(pages), pages.length, pages.length == 0 ? 0 : pages[0].relevance);
+    }
+
+    private static ScoredPage page(int pageId, double relevance) {
+        return new ScoredPage(pageId, relevance);
+    }
+
+    private static List<Integer> ids(List<ScoredPage> pages) {
+        return pages.stream().map(page -> page.pageId).collect(Collectors.toList());
+    }
+}
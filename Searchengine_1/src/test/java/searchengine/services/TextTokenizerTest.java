@@ -0,0 +1,101 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Разбиение текста {@link TextTokenizer} на слова и буквенные токены.
+ */
+class TextTokenizerTest {
+
+    private final TextTokenizer tokenizer = new TextTokenizer();
+
+    @Test
+    void softHyphenInsideWordIsSkipped() {
+        assertThat(words("Ин\u00ADдек\u00ADсация")).containsExactly("индексация CYRILLIC 0-12");
+        assertThat(words("in\u00ADdex")).containsExactly("index LATIN 0-6");
+    }
+
+    @Test
+    void softHyphenOutsideWordIsNotPartOfToken() {
+        assertThat(words("\u00ADслово \u00ADещё")).containsExactly("слово CYRILLIC 1-6", "ещё CYRILLIC 8-11");
+        // Мягкий перенос не склеивает слова разных письменностей
+        assertThat(words("web\u00ADсайт")).containsExactly("web LATIN 0-4", "сайт CYRILLIC 4-8");
+    }
+
+    @Test
+    void scriptChangeSplitsMixedRuns() {
+        assertThat(words("JavaСкрипт и SQLзапрос"))
+                .containsExactly("java LATIN 0-4", "скрипт CYRILLIC 4-10", "и CYRILLIC 11-12",
+                        "sql LATIN 13-16", "запрос CYRILLIC 16-22");
+        // Латинская "c" внутри кириллического слова
+        assertThat(words("поиcк")).containsExactly("пои CYRILLIC 0-3", "c LATIN 3-4", "к CYRILLIC 4-5");
+    }
+
+    @Test
+    void digitsAndPunctuationEndWords() {
+        assertThat(words("abc123где, Ёж-2000!"))
+                .containsExactly("abc LATIN 0-3", "где CYRILLIC 6-9", "ёж CYRILLIC 11-13");
+        assertThat(words("2024 - 15% ...")).isEmpty();
+        assertThat(words("")).isEmpty();
+    }
+
+    @Test
+    void tokenizeWordsInRange() {
+        String text = "первое second третье";
+        List<String> words = new ArrayList<>();
+        tokenizer.tokenizeWords(text, 7, 13, (buffer, length, script, start, end) ->
+                words.add(new String(buffer, 0, length) + " " + script + " " + start + "-" + end));
+
+        assertThat(words).containsExactly("second LATIN 7-13");
+    }
+
+    @Test
+    void wordBoundaries() {
+        assertThat(TextTokenizer.isWordBoundary(' ')).isTrue();
+        assertThat(TextTokenizer.isWordBoundary('7')).isTrue();
+        assertThat(TextTokenizer.isWordBoundary('-')).isTrue();
+        assertThat(TextTokenizer.isWordBoundary('Я')).isFalse();
+        assertThat(TextTokenizer.isWordBoundary('Q')).isFalse();
+        assertThat(TextTokenizer.isWordBoundary('\u00AD')).isFalse();
+    }
+
+    @Test
+    void tokenizeKeepsLettersAndDigits() {
+        assertThat(tokens("Windows-10  вышла\tв\n2015-м году"))
+                .containsExactly("windows10 0-10", "вышла 12-17", "в 18-19", "2015м 20-26", "году 27-31");
+    }
+
+    @Test
+    void tokenizeReportsEmptyTokensAndNonBreakingSpace() {
+        // Неразрывный пробел не разделитель, а просто отбрасываемый символ
+        assertThat(tokens("--- a\u00A0b")).containsExactly(" 0-3", "ab 4-7");
+        assertThat(tokens(" \r\n\f\u000B ")).isEmpty();
+    }
+
+    @Test
+    void longWordGrowsBuffer() {
+        String word = "а".repeat(100) + "b".repeat(100);
+
+        assertThat(words(word)).containsExactly("а".repeat(100) + " CYRILLIC 0-100", "b".repeat(100) + " LATIN 100-200");
+        assertThat(tokens(word + " x")).containsExactly(word + " 0-200", "x 201-202");
+    }
+
+    private List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        tokenizer.tokenizeWords(text, (buffer, length, script, start, end) ->
+                words.add(new String(buffer, 0, length) + " " + script + " " + start + "-" + end));
+        return words;
+    }
+
+    private List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        tokenizer.tokenize(text, (buffer, length, start, end) ->
+                tokens.add(new String(buffer, 0, length) + " " + start + "-" + end));
+        return tokens;
+    }
+}